@@ -5,8 +5,16 @@ module IntOmics {
     requires java.xml.bind;
     requires jcommander;
     requires com.google.gson;
+    requires java.net.http;
+    requires jdk.httpserver;
 
     opens org.pmoi;
+    opens org.pmoi.business;
+    opens org.pmoi.business.pathway;
+    opens org.pmoi.business.ppi;
+    opens org.pmoi.database;
+    opens org.pmoi.model;
     opens org.pmoi.model.vis;
+    opens org.pmoi.util;
     exports org.pmoi.validator;
 }
\ No newline at end of file
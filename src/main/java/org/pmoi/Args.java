@@ -3,9 +3,14 @@ package org.pmoi;
 import com.beust.jcommander.Parameter;
 import org.pmoi.database.SupportedSpecies;
 import org.pmoi.model.OutputMode;
+import org.pmoi.model.AnalysisMode;
+import org.pmoi.model.GSEAMethod;
 import org.pmoi.model.PathwayMode;
 import org.pmoi.validator.*;
 
+import java.util.ArrayList;
+import java.util.List;
+
 public class Args {
 
     private static Args instance;
@@ -64,9 +69,55 @@ public class Args {
     @Parameter(names = {"--no-cached-ppi"}, description = "Force use StringDB's online service", order = 14)
     private boolean useOnlinePPI = false;
 
-    @Parameter(names = {"-h", "--help"}, description = "Print help screen", help = true, order = 15)
+    @Parameter(names = {"--refresh-gene-info"}, description = "Rebuild the gene info snapshot", order = 15)
+    private boolean refreshGeneInfo = false;
+
+    @Parameter(names = {"--http-record"}, description = "Record the responses of remote services to a directory",
+            order = 16)
+    private String httpRecord;
+
+    @Parameter(names = {"--http-replay"}, description = "Replay the responses recorded in a directory instead of " +
+            "querying remote services", order = 17)
+    private String httpReplay;
+
+    @Parameter(names = {"--replay-latency"}, description = "Delay added to replayed responses, in milliseconds",
+            validateWith = NonNegativeValidator.class, order = 18)
+    private int replayLatency = 0;
+
+    @Parameter(names = {"--replay-error-rate"}, description = "Share of replayed requests answered with an error",
+            validateWith = PvalueValidator.class, order = 19)
+    private double replayErrorRate = 0;
+
+    @Parameter(names = {"--seed"}, description = "Seed of the GSEA permutations, for reproducible results", order = 20)
+    private Long seed;
+
+    @Parameter(names = {"--max-permutations"}, description = "Maximum number of GSEA permutations per gene set",
+            validateWith = PermutationsValidator.class, order = 21)
+    private int maxPermutations = 1000;
+
+    @Parameter(names = {"--gsea-method"}, description = "GSEA p-value estimation: PERMUTATION, or MULTILEVEL to refine " +
+            "p-values below the permutation resolution", validateWith = GSEAMethodValidator.class, order = 22)
+    private GSEAMethod gseaMethod = GSEAMethod.PERMUTATION;
+
+    @Parameter(names = {"--null-cache-bucket"}, description = "Share a GSEA null distribution between gene sets " +
+            "of sizes within this width, 0 to permute every set", validateWith = NonNegativeValidator.class, order = 23)
+    private int nullCacheBucket = 0;
+
+    @Parameter(names = {"--analysis"}, description = "Enrichment analysis: GSEA, or ORA for a fast over-representation " +
+            "test", validateWith = AnalysisValidator.class, order = 24)
+    private AnalysisMode analysis = AnalysisMode.GSEA;
+
+    @Parameter(names = {"--rate-limit"}, description = "Request limits of a remote host, as " +
+            "host=permitsPerSecond[/maxConcurrency]. Can be repeated", validateWith = RateLimitValidator.class, order = 25)
+    private List<String> rateLimits = new ArrayList<>();
+
+    @Parameter(names = {"-h", "--help"}, description = "Print help screen", help = true, order = 26)
     private boolean help;
 
+    public List<String> getRateLimits() {
+        return rateLimits;
+    }
+
     public String getSecretome() {
         return secretome;
     }
@@ -123,6 +174,49 @@ public class Args {
         return useOnlinePPI;
     }
 
+    public boolean refreshGeneInfo() {
+        return refreshGeneInfo;
+    }
+
+    public String getHttpRecord() {
+        return httpRecord;
+    }
+
+    public String getHttpReplay() {
+        return httpReplay;
+    }
+
+    public int getReplayLatency() {
+        return replayLatency;
+    }
+
+    public double getReplayErrorRate() {
+        return replayErrorRate;
+    }
+
+    /**
+     * @return seed of the GSEA permutations, null if not set
+     */
+    public Long getSeed() {
+        return seed;
+    }
+
+    public int getMaxPermutations() {
+        return maxPermutations;
+    }
+
+    public GSEAMethod getGseaMethod() {
+        return gseaMethod;
+    }
+
+    public int getNullCacheBucket() {
+        return nullCacheBucket;
+    }
+
+    public AnalysisMode getAnalysis() {
+        return analysis;
+    }
+
     public SupportedSpecies getSpecies() {
         return species;
     }
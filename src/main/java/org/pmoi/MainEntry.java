@@ -2,7 +2,15 @@ package org.pmoi;
 
 import com.beust.jcommander.JCommander;
 import com.beust.jcommander.ParameterException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
 import org.pmoi.database.SpeciesHelper;
+import org.pmoi.util.HttpArchive;
+import org.pmoi.util.HttpClientTransport;
+import org.pmoi.util.HttpConnector;
+import org.pmoi.util.RecordingTransport;
+import org.pmoi.util.ReplayServer;
+import org.pmoi.util.RequestScheduler;
 import org.pmoi.util.io.HtmlFormatter;
 import org.pmoi.util.io.TSVFormatter;
 import org.pmoi.util.io.TextFormatter;
@@ -10,10 +18,13 @@ import org.pmoi.util.io.TextFormatter;
 import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.time.Duration;
 
 
 public class MainEntry {
 
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
     public static final String OUT_DIR = "output/";
 
     public MainEntry(String[] args) {
@@ -31,6 +42,7 @@ public class MainEntry {
             System.out.println(e.getMessage());
             System.exit(1);
         }
+        ReplayServer replayServer = setupTransport(params);
         OperationDispatcher operationDispatcher = new OperationDispatcher();
         try {
             Files.createDirectory(Path.of(OUT_DIR));
@@ -47,7 +59,35 @@ public class MainEntry {
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
             e.printStackTrace();
+        } finally {
+            if (replayServer != null)
+                replayServer.close();
+        }
+    }
+
+    /**
+     * Record or replay the responses of remote services if requested
+     * @return the replay server, null if not replaying
+     */
+    private static ReplayServer setupTransport(Args params) {
+        params.getRateLimits().forEach(RequestScheduler::configure);
+        try {
+            if (params.getHttpReplay() != null) {
+                ReplayServer server = new ReplayServer(HttpArchive.open(Path.of(params.getHttpReplay())),
+                        Duration.ofMillis(params.getReplayLatency()), params.getReplayErrorRate(), System.nanoTime());
+                HttpConnector.setTransport(new HttpClientTransport(server.getURI()));
+                return server;
+            }
+            if (params.getHttpRecord() != null) {
+                HttpConnector.setTransport(new RecordingTransport(new HttpClientTransport(),
+                        HttpArchive.open(Path.of(params.getHttpRecord()))));
+                LOGGER.info("Recording remote responses to {}", params.getHttpRecord());
+            }
+        } catch (IOException e) {
+            LOGGER.error("Unable to open the HTTP archive: {}", e.getMessage());
+            System.exit(1);
         }
+        return null;
     }
 
 
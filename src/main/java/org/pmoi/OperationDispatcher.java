@@ -4,14 +4,17 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pmoi.business.GraphVisualizer;
 import org.pmoi.business.SecretomeManager;
+import org.pmoi.business.TranscriptomeIndex;
 import org.pmoi.business.TranscriptomeManager;
 import org.pmoi.business.pathway.PathwayMapper;
 import org.pmoi.business.pathway.PathwayMapperFactory;
 import org.pmoi.business.ppi.CachedInteractionQueryClient;
 import org.pmoi.business.ppi.InteractionQueryClient;
+import org.pmoi.business.ppi.InteractionQueryException;
+import org.pmoi.business.ppi.PersistentCacheQueryClient;
 import org.pmoi.business.ppi.StringdbQueryClient;
 import org.pmoi.database.GeneMapper;
-import org.pmoi.database.SupportedSpecies;
+import org.pmoi.model.AnalysisMode;
 import org.pmoi.model.Gene;
 import org.pmoi.model.GeneSet;
 import org.pmoi.model.Protein;
@@ -20,7 +23,8 @@ import org.pmoi.model.vis.VisEdge;
 import org.pmoi.model.vis.VisGraph;
 import org.pmoi.model.vis.VisNode;
 import org.pmoi.util.CSVValidator;
-import org.pmoi.util.GSEA;
+import org.pmoi.util.GSEACache;
+import org.pmoi.util.ORA;
 import org.pmoi.util.io.OutputFormatter;
 
 import java.io.BufferedWriter;
@@ -28,9 +32,7 @@ import java.io.IOException;
 import java.nio.file.Files;
 import java.nio.file.Paths;
 import java.util.*;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.concurrent.*;
 import java.util.stream.Collectors;
 
 public class OperationDispatcher {
@@ -55,10 +57,17 @@ public class OperationDispatcher {
 
         LOGGER.info("Initializing ...");
 
-        ppiQueryClient = Args.getInstance().getStringDBScore() > 700
-                && Args.getInstance().getSpecies().equals(SupportedSpecies.HUMAN)
-                && !Args.getInstance().useOnlinePPI() ?
-                CachedInteractionQueryClient.getInstance() : new StringdbQueryClient();
+        if (!Args.getInstance().useOnlinePPI() && CachedInteractionQueryClient.isAvailable()) {
+            try {
+                ppiQueryClient = CachedInteractionQueryClient.getInstance();
+            } catch (IOException e) {
+                LOGGER.warn("Unable to load the offline PPI network: {}", e.getMessage());
+            }
+        }
+        if (ppiQueryClient == null) {
+            LOGGER.info("No offline PPI network for {}. Using StringDB's online service", Args.getInstance().getSpecies());
+            ppiQueryClient = new PersistentCacheQueryClient(new StringdbQueryClient());
+        }
 
         TranscriptomeManager transcriptomeManager = TranscriptomeManager.getInstance();
         SecretomeManager secretomeManager = SecretomeManager.getInstance();
@@ -79,13 +88,53 @@ public class OperationDispatcher {
         return new Runner(secretome, membranome, transcriptome, output);
     }
 
+    /**
+     * Join the interactors of each secreted protein with the membranome. Membrane genes are indexed once by upper case
+     * name, and each protein is processed by a task filling its own result list
+     * @param secretome secreted proteins
+     * @param membranome membrane genes
+     * @param networks interactors and scores of each secreted protein
+     * @param executor executor running the tasks
+     * @return a record per interacting (protein, membrane gene) pair, in secretome order
+     * @throws InterruptedException interrupted while waiting for the tasks
+     */
+    static List<ResultRecord> matchInteractors(List<Protein> secretome, List<Gene> membranome,
+                                               Map<String, Map<String, String>> networks, ExecutorService executor)
+            throws InterruptedException {
+        Map<String, Gene> membraneIndex = new HashMap<>(membranome.size() * 2);
+        membranome.forEach(g -> membraneIndex.putIfAbsent(g.getName().toUpperCase(Locale.ROOT), g));
+        List<Callable<List<ResultRecord>>> tasks = new ArrayList<>(secretome.size());
+        for (Protein protein : secretome) {
+            tasks.add(() -> {
+                List<ResultRecord> records = new ArrayList<>();
+                // the map contains <interactor, score>
+                networks.getOrDefault(protein.getName(), Map.of()).forEach((interactor, score) -> {
+                    Gene gene = membraneIndex.get(interactor.toUpperCase(Locale.ROOT));
+                    // make a deep copy of the gene otherwise you will get unexpected results with pathways
+                    if (gene != null)
+                        records.add(new ResultRecord(protein, new Gene(gene), score));
+                });
+                return records;
+            });
+        }
+        List<ResultRecord> results = new ArrayList<>();
+        for (Future<List<ResultRecord>> future : executor.invokeAll(tasks)) {
+            try {
+                results.addAll(future.get());
+            } catch (ExecutionException e) {
+                throw new IllegalStateException(e.getCause());
+            }
+        }
+        return results;
+    }
+
     class Runner {
         private final List<Protein> secretome;
         private final List<Gene> membranome;
         private final List<Gene> transcriptome;
         private final String outputFileName;
 
-        private final List<ResultRecord> resultSet = Collections.synchronizedList(new ArrayList<>());
+        private final List<ResultRecord> resultSet = new ArrayList<>();
         private final ExecutorService executorService = Executors.newFixedThreadPool(Args.getInstance().getThreads());
         private List<Gene> filteredTranscriptome;
         private final GeneMapper mapper = GeneMapper.getInstance();
@@ -102,26 +151,14 @@ public class OperationDispatcher {
             LOGGER.info("Filtering transcriptome");
             filteredTranscriptome = transcriptome.parallelStream().filter(e -> pathwayMapper.isInAnyPathway(e.getName())).collect(Collectors.toList());
             LOGGER.info("Getting PPI network ...");
-            var membraneGenes = membranome.stream().map(f -> f.getName().toUpperCase()).collect(Collectors.toSet());
-            secretome.forEach(e -> executorService.submit(() -> {
-                // Adding StringDB interactors
-                // the map contains <interactor, score>
-                Map<String, String> interactors = ppiQueryClient.getProteinNetwork(e.getName());
-                // Add gene from the pathway to the map
-                var interactorsNames = interactors.keySet().parallelStream()
-                        .filter(i -> membraneGenes.stream().anyMatch(i::equalsIgnoreCase))
-                        .collect(Collectors.toList());
-                if (!interactorsNames.isEmpty()) {
-                    interactorsNames.forEach(interactor -> {
-                        Gene gene = membranome.stream().filter(g -> g.getName().equalsIgnoreCase(interactor))
-                                .findFirst().orElse(null);
-                        // make a deep copy of the gene otherwise you will get unexpected results with pathways
-                        assert gene != null;
-                        resultSet.add(new ResultRecord(e, new Gene(gene), interactors.get(interactor)));
-                    });
-                }
-            }));
-
+            Map<String, Map<String, String>> networks = null;
+            try {
+                networks = ppiQueryClient.getProteinNetworks(secretome.stream().map(Protein::getName).collect(Collectors.toList()));
+            } catch (InteractionQueryException e) {
+                LOGGER.error(e.getMessage());
+                System.exit(1);
+            }
+            resultSet.addAll(matchInteractors(secretome, membranome, networks, executorService));
             executorService.shutdown();
             executorService.awaitTermination(1, TimeUnit.HOURS);
             return this;
@@ -129,6 +166,7 @@ public class OperationDispatcher {
 
         private Runner getPathways() {
             LOGGER.info("Looking for pathway interactions ...");
+            TranscriptomeIndex transcriptomeIndex = new TranscriptomeIndex(transcriptome);
             var resultMap = resultSet.stream().collect(Collectors.groupingBy(ResultRecord::getProtein));
             resultMap.forEach((key, value) -> {
                 // get a list of pathways where the protein is involved
@@ -140,13 +178,14 @@ public class OperationDispatcher {
                 value.forEach(resultRecord -> {
                     LOGGER.debug("Processing [P: {} # G: {}]", key.getName(), resultRecord.getGene().getName());
                     resultRecord.getProtein().getPathways().forEach(p -> {
-                        if (p.getGenes().contains(resultRecord.getGene()))
+                        if (p.contains(resultRecord.getGeneId()))
                             resultRecord.getGene().setInteractors(p.getPathwayID(), p.getName(),
-                                    transcriptome.stream().filter(e -> p.getGenes().contains(e)).collect(Collectors.toList()));
+                                    p.getGeneBits().cardinality(), transcriptomeIndex.intersect(p));
                     });
                 });
 
             });
+            LOGGER.debug("Pathway intersections computed: {}", transcriptomeIndex.size());
             return this;
         }
 
@@ -154,18 +193,46 @@ public class OperationDispatcher {
             LOGGER.info("Running GSEA ...");
             // Calculate pathway pvalue using GSEA
             ExecutorService service = Executors.newFixedThreadPool(Args.getInstance().getThreads());
+            // the same gene set shows up under many records, GSEA runs once per distinct set
+            long seed = Args.getInstance().getSeed() != null ? Args.getInstance().getSeed() : new SplittableRandom().nextLong();
+            LOGGER.info("GSEA permutation seed: {}", seed);
+            GSEACache gseaCache = new GSEACache(filteredTranscriptome, seed, Args.getInstance().getGseaPvalue(),
+                    Args.getInstance().getMaxPermutations(), Args.getInstance().getGseaMethod(),
+                    Args.getInstance().getNullCacheBucket());
             resultSet.parallelStream()
                     .collect(Collectors.groupingBy(ResultRecord::getProtein))
                     .forEach((k, v) -> v.forEach(e -> e.getGene().getGeneSets()
                             .forEach(en ->
                                     service.submit(() -> {
-                                        GSEA gsea = new GSEA();
-                                        en.setPvalue(gsea.run(en.getGenes(), filteredTranscriptome));
-                                        en.setScore(gsea.getNormalizedScore());
+                                        GSEACache.Result result = gseaCache.run(en);
+                                        en.setPvalue(result.getPvalue());
+                                        en.setScore(result.getScore());
                                     })
                             )));
             service.shutdown();
             service.awaitTermination(1, TimeUnit.HOURS);
+            LOGGER.info("GSEA run for {} distinct gene sets out of {}. Computations saved: {}",
+                    gseaCache.getComputationCount(), gseaCache.getRequestCount(),
+                    gseaCache.getRequestCount() - gseaCache.getComputationCount());
+            LOGGER.info("GSEA permutations: {}", gseaCache.getPermutationCount());
+            if (gseaCache.getNullDistributionCount() > 0)
+                LOGGER.info("GSEA null distributions: {}", gseaCache.getNullDistributionCount());
+            resultSet.parallelStream()
+                    .forEach(e -> e.getGene().getGeneSets().removeIf(geneSet -> geneSet.getPvalue() > Args.getInstance().getGseaPvalue()));
+            return this;
+        }
+
+        /**
+         * Over-representation analysis, a closed form alternative to GSEA: p-values of the hypergeometric test and
+         * fold enrichments as scores
+         */
+        private Runner runORA() {
+            LOGGER.info("Running over-representation analysis ...");
+            ORA ora = new ORA(pathwayMapper.getGeneCount(), filteredTranscriptome.size());
+            resultSet.forEach(e -> e.getGene().getGeneSets().forEach(geneSet -> {
+                geneSet.setPvalue(ora.pvalue(geneSet.getGenes().size(), geneSet.getPathwaySize()));
+                geneSet.setScore(ora.foldEnrichment(geneSet.getGenes().size(), geneSet.getPathwaySize()));
+            }));
             resultSet.parallelStream()
                     .forEach(e -> e.getGene().getGeneSets().removeIf(geneSet -> geneSet.getPvalue() > Args.getInstance().getGseaPvalue()));
             return this;
@@ -204,10 +271,12 @@ public class OperationDispatcher {
         }
 
         public void run() throws InterruptedException {
-            this.setInteractions()
-                    .getPathways()
-                    .runGSEA()
-                    .writeResults();
+            Runner runner = this.setInteractions()
+                    .getPathways();
+            if (Args.getInstance().getAnalysis() == AnalysisMode.ORA)
+                runner.runORA().writeResults();
+            else
+                runner.runGSEA().writeResults();
             // making html graph
             VisGraph graph = new VisGraph();
             Map<String, VisNode> map = new HashMap<>();
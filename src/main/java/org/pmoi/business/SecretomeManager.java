@@ -2,8 +2,8 @@ package org.pmoi.business;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.pmoi.Args;
 import org.pmoi.database.GeneMapper;
+import org.pmoi.database.GeneResolution;
 import org.pmoi.model.Protein;
 
 import java.io.IOException;
@@ -11,9 +11,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -47,14 +46,17 @@ public class SecretomeManager {
                     .collect(Collectors.toList());
 
             // convert id <=> name in order to have them both
-            ExecutorService executor = Executors.newFixedThreadPool(Args.getInstance().getThreads());
             if (data.get(0).getNcbiID() != null) {
-                data.forEach(e -> executor.submit(() -> e.setName(mapper.getSymbol(e.getNcbiID()).orElse(""))));
+                Map<String, GeneResolution> table = mapper.resolveIds(data.stream().map(Protein::getNcbiID)
+                        .collect(Collectors.toList()));
+                data.forEach(e -> e.setName(Optional.ofNullable(table.get(e.getNcbiID()))
+                        .map(GeneResolution::getSymbol).orElse("")));
             } else {
-                data.forEach(e -> executor.submit(() -> e.setNcbiID(mapper.getId(e.getName()).orElse(""))));
+                Map<String, GeneResolution> table = mapper.resolveSymbols(data.stream().map(Protein::getName)
+                        .collect(Collectors.toList()));
+                data.forEach(e -> e.setNcbiID(Optional.ofNullable(table.get(e.getName()))
+                        .map(GeneResolution::getId).orElse("")));
             }
-            executor.shutdown();
-            executor.awaitTermination(1, TimeUnit.DAYS);
 
             return data.stream()
                     .filter(e -> e.getName() != null)
@@ -70,9 +72,6 @@ public class SecretomeManager {
                     .collect(Collectors.toList());
         } catch (IOException e) {
             LOGGER.error(e);
-        } catch (InterruptedException e) {
-            LOGGER.error(e);
-            Thread.currentThread().interrupt();
         }
         return Collections.emptyList();
     }
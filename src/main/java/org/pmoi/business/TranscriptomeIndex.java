@@ -0,0 +1,67 @@
+package org.pmoi.business;
+
+import org.pmoi.model.Gene;
+import org.pmoi.model.Pathway;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Transcriptome genes indexed by their ID in the gene dictionary, to intersect pathways with the transcriptome
+ * using bitsets. Each intersection is computed once and shared by all the callers.
+ */
+public class TranscriptomeIndex {
+
+    private final List<Gene> transcriptome;
+    private final BitSet genes = new BitSet();
+    // positions of each symbol ID in the transcriptome, usually one
+    private final Map<Integer, int[]> positions = new HashMap<>();
+    private final Map<Pathway, List<Gene>> intersections = new ConcurrentHashMap<>();
+
+    public TranscriptomeIndex(List<Gene> transcriptome) {
+        this.transcriptome = transcriptome;
+        for (int i = 0; i < transcriptome.size(); i++) {
+            int id = transcriptome.get(i).getSymbolId();
+            if (id < 0)
+                continue;
+            genes.set(id);
+            int position = i;
+            positions.merge(id, new int[]{position}, (a, b) -> {
+                int[] merged = Arrays.copyOf(a, a.length + 1);
+                merged[a.length] = position;
+                return merged;
+            });
+        }
+    }
+
+    /**
+     * @param pathway pathway
+     * @return transcriptome genes that are in the pathway, in transcriptome order. Shared, must not be modified
+     */
+    public List<Gene> intersect(Pathway pathway) {
+        return intersections.computeIfAbsent(pathway, this::computeIntersection);
+    }
+
+    private List<Gene> computeIntersection(Pathway pathway) {
+        BitSet common = (BitSet) pathway.getGeneBits().clone();
+        common.and(genes);
+        if (common.isEmpty())
+            return Collections.emptyList();
+        BitSet matches = new BitSet(transcriptome.size());
+        for (int id = common.nextSetBit(0); id >= 0; id = common.nextSetBit(id + 1)) {
+            for (int position : positions.get(id))
+                matches.set(position);
+        }
+        List<Gene> result = new ArrayList<>(matches.cardinality());
+        for (int i = matches.nextSetBit(0); i >= 0; i = matches.nextSetBit(i + 1))
+            result.add(transcriptome.get(i));
+        return Collections.unmodifiableList(result);
+    }
+
+    /**
+     * @return number of intersections computed so far
+     */
+    public int size() {
+        return intersections.size();
+    }
+}
@@ -4,6 +4,7 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pmoi.Args;
 import org.pmoi.database.GeneMapper;
+import org.pmoi.database.GeneResolution;
 import org.pmoi.model.Gene;
 
 import java.io.IOException;
@@ -11,9 +12,8 @@ import java.nio.file.Files;
 import java.nio.file.Path;
 import java.util.Collections;
 import java.util.List;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
-import java.util.concurrent.TimeUnit;
+import java.util.Map;
+import java.util.Optional;
 import java.util.function.Predicate;
 import java.util.stream.Collectors;
 
@@ -42,16 +42,10 @@ public class TranscriptomeManager {
                     .distinct()
                     .map(l -> new Gene(l, ""))
                     .collect(Collectors.toList());
-            ExecutorService executor = Executors.newFixedThreadPool(Args.getInstance().getThreads());
-            inputGenes.forEach(g -> executor.submit(() -> g.setNcbiID(mapper.getId(g.getName()).orElse(""))));
-            executor.shutdown();
-            executor.awaitTermination(10, TimeUnit.DAYS);
         } catch (IOException e) {
             LOGGER.error(e);
-        } catch (InterruptedException e) {
-            LOGGER.error(e);
-            Thread.currentThread().interrupt();
         }
+        setIds(inputGenes, mapper);
 
         // if a gene has no EntrezID it will also get removed here
         return inputGenes.parallelStream()
@@ -68,15 +62,7 @@ public class TranscriptomeManager {
     public List<Gene> getDEGenes(String fileName) {
         var mapper = GeneMapper.getInstance();
         List<Gene> inputGenes = readDEGeneFile(fileName).stream().distinct().collect(Collectors.toList());
-        ExecutorService executor = Executors.newFixedThreadPool(Args.getInstance().getThreads());
-        inputGenes.forEach(g -> executor.submit(() -> g.setNcbiID(mapper.getId(g.getName()).orElse(""))));
-        executor.shutdown();
-        try {
-            executor.awaitTermination(10, TimeUnit.DAYS);
-        } catch (InterruptedException e) {
-            LOGGER.error(e);
-            Thread.currentThread().interrupt();
-        }
+        setIds(inputGenes, mapper);
         // if a gene has no EntrezID it will also get removed here
         return inputGenes.parallelStream()
                 .filter(g -> g.getNcbiID() != null && !g.getNcbiID().isEmpty())
@@ -85,6 +71,17 @@ public class TranscriptomeManager {
                 .collect(Collectors.toList());
     }
 
+    /**
+     * Resolve all gene names at once and set the corresponding Entrez IDs. Unknown genes get an empty ID
+     * @param genes list of genes
+     * @param mapper gene mapper
+     */
+    private void setIds(List<Gene> genes, GeneMapper mapper) {
+        Map<String, GeneResolution> table = mapper.resolveSymbols(genes.stream().map(Gene::getName)
+                .collect(Collectors.toList()));
+        genes.forEach(g -> g.setNcbiID(Optional.ofNullable(table.get(g.getName())).map(GeneResolution::getId).orElse("")));
+    }
+
     /**
      * Helper function to load genes from a file and map them to Gene objects
      * @param filePath file path
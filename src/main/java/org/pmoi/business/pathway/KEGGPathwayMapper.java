@@ -5,10 +5,10 @@ import org.apache.logging.log4j.Logger;
 import org.pmoi.Args;
 import org.pmoi.database.SpeciesHelper;
 import org.pmoi.database.SupportedSpecies;
-import org.pmoi.model.Feature;
 import org.pmoi.model.Gene;
 import org.pmoi.model.Pathway;
 import org.pmoi.util.HttpConnector;
+import org.pmoi.util.HttpException;
 
 import java.io.*;
 import java.net.MalformedURLException;
@@ -23,7 +23,6 @@ import java.util.concurrent.Executors;
 import java.util.concurrent.TimeUnit;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
-import java.util.stream.Collectors;
 
 public class KEGGPathwayMapper implements PathwayMapper{
 
@@ -33,6 +32,8 @@ public class KEGGPathwayMapper implements PathwayMapper{
     private static final String DB_KEGG_OBJ = "pathwayDB_KEGG." + Args.getInstance().getSpecies() + ".obj";
     public static final String DB_PATH = "sets/";
     private int initialSize = 0;
+    private PathwayIndex index;
+    private final HttpConnector connector = new HttpConnector();
 
     KEGGPathwayMapper() {
         LOGGER.debug("Loading KEGGG pathways DB");
@@ -51,8 +52,7 @@ public class KEGGPathwayMapper implements PathwayMapper{
 
     @Override
     public List<Pathway> getPathways(String gene) {
-        return pathwayDB.parallelStream().filter(e -> e.getGenes().stream().map(Feature::getName).anyMatch(gene::equalsIgnoreCase))
-                .collect(Collectors.toList());
+        return index.get(gene);
     }
 
     /**
@@ -62,8 +62,12 @@ public class KEGGPathwayMapper implements PathwayMapper{
      */
     @Override
     public boolean isInAnyPathway(String gene) {
-        return pathwayDB.parallelStream().anyMatch(e -> e.getGenes().stream().map(Feature::getName)
-                .anyMatch(gene::equalsIgnoreCase));
+        return index.contains(gene);
+    }
+
+    @Override
+    public int getGeneCount() {
+        return index.size();
     }
 
     private void init() throws IOException, URISyntaxException {
@@ -88,12 +92,17 @@ public class KEGGPathwayMapper implements PathwayMapper{
             SupportedSpecies species = (SupportedSpecies) ois.readObject();
             if (!Args.getInstance().getSpecies().equals(species))
                 throw new IOException("Wrong species found in file");
+            index = PathwayIndex.read(ois, pathwayDB);
             LOGGER.debug("Object loaded into memory. Number of pathways: {}. Initial size = {}", pathwayDB.size(), initialSize);
         } catch (ClassNotFoundException e) {
             LOGGER.error(e);
         } catch (EOFException e) {
             // do nothing
         }
+        if (index == null && pathwayDB != null) {
+            LOGGER.warn("Incomplete pathway snapshot {}. Indexing its pathways", DB_KEGG_OBJ);
+            index = new PathwayIndex(pathwayDB);
+        }
         if (Args.getInstance().useOnlineDB()) {
             initKEGGPathways();
         }
@@ -132,7 +141,8 @@ public class KEGGPathwayMapper implements PathwayMapper{
         } catch (InterruptedException e) {
             Thread.currentThread().interrupt();
         }
-        LOGGER.debug("Internal DB initialized with {} pathways", pathwayDB.size());
+        index = new PathwayIndex(pathwayDB);
+        LOGGER.debug("Internal DB initialized with {} pathways and {} genes", pathwayDB.size(), index.size());
         LOGGER.debug("Writing updated version to sets folder");
         if (Files.isDirectory(Path.of(DB_PATH))) {
             LOGGER.warn("Directory '{}' already exists! Writing file ...", DB_PATH);
@@ -148,6 +158,7 @@ public class KEGGPathwayMapper implements PathwayMapper{
             oos.writeObject(pathwayDB);
             oos.writeInt(initialSize);
             oos.writeObject(Args.getInstance().getSpecies());
+            oos.writeObject(index);
         } catch (IOException e) {
             LOGGER.error(e);
         }
@@ -161,8 +172,7 @@ public class KEGGPathwayMapper implements PathwayMapper{
     private Map<String, String> listKEGG() {
         try {
             String keggOrgId = SpeciesHelper.get().getKeggOrgId();
-            HttpConnector httpConnector = new HttpConnector();
-            String result = httpConnector.getContent(new URL("http://rest.kegg.jp/list/pathway/" + keggOrgId));
+            String result = connector.getContent(new URL("http://rest.kegg.jp/list/pathway/" + keggOrgId));
             Pattern pattern = Pattern.compile(String.format("path:(%s\\d+)\\t(.+) -", keggOrgId));
             Matcher matcher = pattern.matcher(result);
             Map<String, String> resultMap = new HashMap<>();
@@ -182,24 +192,18 @@ public class KEGGPathwayMapper implements PathwayMapper{
      * @return list of matching results
      */
     private List<Gene> getListResults(URL url) {
-        int counter = 0;
-        while (true) {
-            try {
-                HttpConnector httpConnector = new HttpConnector();
-                String result = httpConnector.getContent(url);
-                Pattern pattern = Pattern.compile("[0-9]+ {2}(.+)(?=;)");
-                Matcher matcher = pattern.matcher(result);
-                List<Gene> resultList = new ArrayList<>();
-                while (matcher.find()) {
-                    resultList.add(new Gene(matcher.group(1).trim(), ""));
-                }
-                return resultList;
-            } catch (IOException e) {
-                if (++counter == HttpConnector.MAX_TRIES) {
-                    LOGGER.error(String.format("Error getting KEGG results. URL: [%s]. Aborting!", url));
-                    return Collections.emptyList();
-                }
+        try {
+            String result = connector.getContent(url);
+            Pattern pattern = Pattern.compile("[0-9]+ {2}(.+)(?=;)");
+            Matcher matcher = pattern.matcher(result);
+            List<Gene> resultList = new ArrayList<>();
+            while (matcher.find()) {
+                resultList.add(new Gene(matcher.group(1).trim(), ""));
             }
+            return resultList;
+        } catch (IOException | HttpException e) {
+            LOGGER.error(String.format("Error getting KEGG results. URL: [%s]. Aborting!", url));
+            return Collections.emptyList();
         }
     }
 
@@ -0,0 +1,87 @@
+package org.pmoi.business.pathway;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pmoi.model.Gene;
+import org.pmoi.model.Pathway;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.Serializable;
+import java.util.*;
+
+/**
+ * Inverted index from gene name (case insensitive) to the pathways containing the gene.
+ * Written to the pathway snapshots right after the pathways, so that both share the same {@link Pathway} instances
+ * once read back. Snapshots written before the index existed end after the species, the index is then built when
+ * they are loaded. Keys are upper-cased with the root locale, like the former {@code equalsIgnoreCase} scans.
+ */
+class PathwayIndex implements Serializable {
+
+    private static final long serialVersionUID = 4325810796245337196L;
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    private final HashMap<String, List<Pathway>> index;
+
+    /**
+     * @param pathways pathways to index. The pathways of a gene are kept in this order
+     */
+    PathwayIndex(Collection<Pathway> pathways) {
+        index = new HashMap<>(1 << 15);
+        for (Pathway pathway : pathways) {
+            for (Gene gene : pathway.getGenes()) {
+                if (gene.getName() == null)
+                    continue;
+                List<Pathway> list = index.computeIfAbsent(gene.getName().toUpperCase(Locale.ROOT), k -> new ArrayList<>(4));
+                // a gene may be listed twice in a pathway
+                if (list.isEmpty() || list.get(list.size() - 1) != pathway)
+                    list.add(pathway);
+            }
+        }
+    }
+
+    /**
+     * Read the index following the pathways of a snapshot
+     * @param ois snapshot stream, positioned after the species
+     * @param pathways pathways read from the snapshot, indexed if the snapshot has no index
+     * @return index of the pathways
+     * @throws IOException the snapshot can't be read
+     * @throws ClassNotFoundException the snapshot holds an unknown class
+     */
+    static PathwayIndex read(ObjectInputStream ois, Collection<Pathway> pathways) throws IOException,
+            ClassNotFoundException {
+        try {
+            return (PathwayIndex) ois.readObject();
+        } catch (EOFException e) {
+            LOGGER.debug("Pathway snapshot without gene index. Indexing {} pathways", pathways.size());
+            return new PathwayIndex(pathways);
+        }
+    }
+
+    /**
+     * @param gene gene name
+     * @return pathways containing the gene, in pathway DB order
+     */
+    List<Pathway> get(String gene) {
+        if (gene == null)
+            return Collections.emptyList();
+        return Collections.unmodifiableList(index.getOrDefault(gene.toUpperCase(Locale.ROOT), Collections.emptyList()));
+    }
+
+    /**
+     * @param gene gene name
+     * @return true if the gene is in at least one pathway
+     */
+    boolean contains(String gene) {
+        return gene != null && index.containsKey(gene.toUpperCase(Locale.ROOT));
+    }
+
+    /**
+     * @return number of indexed genes
+     */
+    int size() {
+        return index.size();
+    }
+}
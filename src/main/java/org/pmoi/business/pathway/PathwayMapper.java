@@ -7,4 +7,9 @@ import java.util.List;
 public interface PathwayMapper {
     List<Pathway> getPathways(String gene);
     boolean isInAnyPathway(String gene);
+
+    /**
+     * @return number of distinct genes in the pathway DB, the background of over-representation analysis
+     */
+    int getGeneCount();
 }
@@ -1,8 +1,6 @@
 package org.pmoi.business.pathway;
 
-import com.google.gson.JsonElement;
-import com.google.gson.JsonObject;
-import com.google.gson.JsonParser;
+import com.google.gson.stream.JsonReader;
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pmoi.Args;
@@ -16,6 +14,7 @@ import org.pmoi.util.HttpConnector;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.nio.charset.StandardCharsets;
 import java.util.*;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
@@ -25,7 +24,6 @@ import java.util.function.Function;
 import java.util.stream.Collectors;
 import java.util.stream.IntStream;
 import java.util.stream.Stream;
-import java.util.stream.StreamSupport;
 
 public class ReactomePathwayMapper implements PathwayMapper{
 
@@ -70,19 +68,20 @@ public class ReactomePathwayMapper implements PathwayMapper{
         return geneSet.contains(gene);
     }
 
+    @Override
+    public int getGeneCount() {
+        return geneSet.size();
+    }
+
     private void listAll() throws IOException, InterruptedException {
         int pages = (int) Math.ceil(pathwayCount() / 25.);
         List<String> pathwaysID = Collections.synchronizedList(new ArrayList<>());
         Species species = SpeciesHelper.get();
-        Function<Integer, Stream<JsonElement>> mapper = i -> {
+        Function<Integer, Stream<String>> mapper = i -> {
             try {
                 URL url = new URL(String.format("https://reactome.org/ContentService/data/schema/Pathway?species=%d&page=%d&offset=25",
                         species.getTaxonomyId(), i));
-                String content = connector.getContent(url);
-                var objectArray = JsonParser.parseString(content).getAsJsonArray();
-                return StreamSupport.stream(
-                        Spliterators.spliteratorUnknownSize(objectArray.iterator(), Spliterator.ORDERED),
-                        false);
+                return connector.get(url, ReactomePathwayMapper::readStIds).stream();
             } catch (IOException e) {
                 LOGGER.error(e);
             }
@@ -90,8 +89,6 @@ public class ReactomePathwayMapper implements PathwayMapper{
         };
 
         IntStream.rangeClosed(1, pages).parallel().boxed().flatMap(mapper)
-                .map(JsonElement::getAsJsonObject)
-                .map(e -> e.get("stId").getAsString())
                 .forEach(pathwaysID::add);
 
         LOGGER.debug("Number of pathway IDs loaded: {}", pathwaysID.size());
@@ -140,14 +137,7 @@ public class ReactomePathwayMapper implements PathwayMapper{
             // find any pathway containing that protein
             URL url = new URL(String.format("https://reactome.org/ContentService/search/query?query=%s" +
                     "&species=%s&types=Pathway&cluster=true", query, species.getName().replace(" ", "%20")));
-            String result = connector.getContent(url);
-            JsonObject jsonObject = JsonParser.parseString(result).getAsJsonObject();
-            var entries = jsonObject.getAsJsonArray("results").get(0).getAsJsonObject().get("entries").getAsJsonArray();
-            List<String> idList = new ArrayList<>();
-            for (var entry : entries) {
-                idList.add(entry.getAsJsonObject().get("id").getAsString());
-            }
-            return idList;
+            return connector.get(url, ReactomePathwayMapper::readSearchIds);
         } catch (FileNotFoundException e) {
             // no entity of type pathway. looking for proteins
             LOGGER.debug("Term [{}] not found in Reactome with type 'pathway'. Looking for a protein", query);
@@ -165,21 +155,12 @@ public class ReactomePathwayMapper implements PathwayMapper{
             Species species = SpeciesHelper.get();
             URL url = new URL(String.format("https://reactome.org/ContentService/search/query?query=%s" +
                     "&species=%s&types=Protein&cluster=true", query, species.getName().replace(" ", "%20")));
-            String result = connector.getContent(url);
-            JsonObject jsonObject = JsonParser.parseString(result).getAsJsonObject();
-            var entries = jsonObject.getAsJsonArray("results").get(0).getAsJsonObject().get("entries").getAsJsonArray();
-
-            Optional<String> id = Optional.ofNullable(entries.get(0).getAsJsonObject().get("id").getAsString());
+            Optional<String> id = connector.get(url, ReactomePathwayMapper::readSearchIds).stream().findFirst();
             if (id.isEmpty())
                 return Collections.emptyList();
             url = new URL("https://reactome.org/ContentService/data/pathways/low/entity/" + id.get() +
                     "?species=" + species.getTaxonomyId());
-            result = connector.getContent(url);
-            var objectArray = JsonParser.parseString(result).getAsJsonArray();
-            var stream = StreamSupport.stream(
-                    Spliterators.spliteratorUnknownSize(objectArray.iterator(), Spliterator.ORDERED),
-                    false);
-            return stream.map(JsonElement::getAsJsonObject).map(e -> e.get("stId").getAsString()).collect(Collectors.toList());
+            return connector.get(url, ReactomePathwayMapper::readStIds);
 
         } catch (FileNotFoundException e) {
             // no entity of type pathway. looking for proteins
@@ -230,18 +211,18 @@ public class ReactomePathwayMapper implements PathwayMapper{
      * @return list of gene names
      */
     private List<String> getParticipants(String id, String urlTemplate, ClassType type) {
-        Function<JsonObject, String> mapperFunction = switch (type) {
+        Function<Participant, String> mapperFunction = switch (type) {
             case PROTEIN, TRANSCRIPT -> e -> {
                 GeneMapper geneMapper = GeneMapper.getInstance();
                 assert e != null;
-                String name = e.get("displayName").getAsString().split(" ")[0];
+                String name = e.displayName.split(" ")[0];
                 if (geneMapper.getSymbolFromAlias(name).isPresent()){
                     return name;
                 } else {
-                    for (var n : e.get("name").getAsJsonArray()){
-                        if (n.getAsString().contains("_"))
-                            return n.getAsString().substring(0, n.getAsString().indexOf("_"));
-                        var gene = geneMapper.getSymbolFromAlias(n.getAsString(), name);
+                    for (var n : e.names){
+                        if (n.contains("_"))
+                            return n.substring(0, n.indexOf("_"));
+                        var gene = geneMapper.getSymbolFromAlias(n, name);
                         if (gene.isPresent()) {
                             return gene.get();
                         }
@@ -251,7 +232,7 @@ public class ReactomePathwayMapper implements PathwayMapper{
             };
             case COMPLEX -> e -> {
                 assert e != null;
-                return e.get("stId").getAsString();
+                return e.stId;
             };
         };
         try {
@@ -261,13 +242,8 @@ public class ReactomePathwayMapper implements PathwayMapper{
             };
 
             URL url = new URL(urlTemplate.replace("#", id));
-            String result = connector.getContent(url);
-            var objectArray = JsonParser.parseString(result).getAsJsonArray();
-            var stream = StreamSupport.stream(
-                    Spliterators.spliteratorUnknownSize(objectArray.iterator(), Spliterator.ORDERED),
-                    false);
-
-            return stream.map(JsonElement::getAsJsonObject).filter(e -> names.contains(e.get("className").getAsString()))
+            return connector.get(url, ReactomePathwayMapper::readParticipants).stream()
+                    .filter(e -> names.contains(e.className))
                     .map(mapperFunction)
                     .filter(Objects::nonNull)
                     .distinct()
@@ -282,6 +258,131 @@ public class ReactomePathwayMapper implements PathwayMapper{
         return Collections.emptyList();
     }
 
+    /**
+     * Stream an array of objects, keeping their stId
+     * @param in JSON response
+     * @return stable IDs
+     * @throws IOException malformed response
+     */
+    static List<String> readStIds(InputStream in) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    if (reader.nextName().equals("stId"))
+                        ids.add(reader.nextString());
+                    else
+                        reader.skipValue();
+                }
+                reader.endObject();
+            }
+            reader.endArray();
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        }
+        return ids;
+    }
+
+    /**
+     * Stream a search response, keeping the IDs of the entries of the first result group
+     * @param in JSON response
+     * @return entry IDs
+     * @throws IOException malformed response
+     */
+    static List<String> readSearchIds(InputStream in) throws IOException {
+        List<String> ids = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginObject();
+            while (reader.hasNext()) {
+                if (!reader.nextName().equals("results")) {
+                    reader.skipValue();
+                    continue;
+                }
+                reader.beginArray();
+                boolean first = true;
+                while (reader.hasNext()) {
+                    if (!first) {
+                        reader.skipValue();
+                        continue;
+                    }
+                    first = false;
+                    reader.beginObject();
+                    while (reader.hasNext()) {
+                        if (!reader.nextName().equals("entries")) {
+                            reader.skipValue();
+                            continue;
+                        }
+                        reader.beginArray();
+                        while (reader.hasNext()) {
+                            reader.beginObject();
+                            while (reader.hasNext()) {
+                                if (reader.nextName().equals("id"))
+                                    ids.add(reader.nextString());
+                                else
+                                    reader.skipValue();
+                            }
+                            reader.endObject();
+                        }
+                        reader.endArray();
+                    }
+                    reader.endObject();
+                }
+                reader.endArray();
+            }
+            reader.endObject();
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        }
+        return ids;
+    }
+
+    /**
+     * Stream an array of physical entities, keeping the fields in use
+     * @param in JSON response
+     * @return participants
+     * @throws IOException malformed response
+     */
+    static List<Participant> readParticipants(InputStream in) throws IOException {
+        List<Participant> participants = new ArrayList<>();
+        try (JsonReader reader = new JsonReader(new InputStreamReader(in, StandardCharsets.UTF_8))) {
+            reader.beginArray();
+            while (reader.hasNext()) {
+                Participant participant = new Participant();
+                reader.beginObject();
+                while (reader.hasNext()) {
+                    switch (reader.nextName()) {
+                        case "className" -> participant.className = reader.nextString();
+                        case "displayName" -> participant.displayName = reader.nextString();
+                        case "stId" -> participant.stId = reader.nextString();
+                        case "name" -> {
+                            reader.beginArray();
+                            while (reader.hasNext()) {
+                                participant.names.add(reader.nextString());
+                            }
+                            reader.endArray();
+                        }
+                        default -> reader.skipValue();
+                    }
+                }
+                reader.endObject();
+                participants.add(participant);
+            }
+            reader.endArray();
+        } catch (IllegalStateException e) {
+            throw new IOException(e);
+        }
+        return participants;
+    }
+
+    static class Participant {
+        String className;
+        String displayName;
+        String stId;
+        final List<String> names = new ArrayList<>();
+    }
+
     private enum ClassType {
         PROTEIN("Protein"),
         COMPLEX("Complex"),
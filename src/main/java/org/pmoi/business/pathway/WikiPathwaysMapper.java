@@ -2,24 +2,25 @@ package org.pmoi.business.pathway;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 import org.pmoi.Args;
 import org.pmoi.database.Species;
 import org.pmoi.database.SpeciesHelper;
 import org.pmoi.database.SupportedSpecies;
-import org.pmoi.model.Feature;
 import org.pmoi.model.Gene;
 import org.pmoi.model.Pathway;
 import org.pmoi.model.PathwayResponse;
+import org.pmoi.util.HttpConnector;
+import org.pmoi.util.HttpException;
 import org.pmoi.util.PathwayResponceHandler;
+import org.pmoi.util.XMLStreams;
 import org.xml.sax.SAXException;
 
 import javax.xml.XMLConstants;
 import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.parsers.SAXParser;
 import javax.xml.parsers.SAXParserFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.*;
 import java.net.URISyntaxException;
 import java.net.URL;
@@ -38,7 +39,11 @@ public class WikiPathwaysMapper implements PathwayMapper{
     private Map<String, Pathway> pathwayDB;
     private static final String DB_WP_OBJ = "pathwayDB_WP." + Args.getInstance().getSpecies() + ".obj";
     private static final String DB_PATH = "sets/";
+    private static final Pattern ENZYME_PATTERN = Pattern.compile("(?:\\d*\\.){3}\\d+");
+    private static final Pattern NAME_PATTERN = Pattern.compile("(^[\\w-]+)");
+    private final HttpConnector connector = new HttpConnector();
     private int initialSize = 0;
+    private PathwayIndex index;
 
     WikiPathwaysMapper() {
         LOGGER.debug("Loadling WikiPathways DB");
@@ -57,16 +62,22 @@ public class WikiPathwaysMapper implements PathwayMapper{
 
     @Override
     public List<Pathway> getPathways(String gene) {
-        return pathwayDB.entrySet().parallelStream()
-                .map(Map.Entry::getValue)
-                .filter(pathway -> pathway.getGenes().stream().map(Feature::getName).anyMatch(gene::equalsIgnoreCase))
-                .collect(Collectors.toList());
+        return index.get(gene);
     }
 
+    /**
+     * Checks if a gene is present in a pathway
+     * @param gene gene symbol
+     * @return true if the gene is in a pathway
+     */
     @Override
     public boolean isInAnyPathway(String gene) {
-        return pathwayDB.values().parallelStream()
-                .anyMatch(e -> e.getGenes().stream().map(Feature::getName).anyMatch(gene::equalsIgnoreCase));
+        return index.contains(gene);
+    }
+
+    @Override
+    public int getGeneCount() {
+        return index.size();
     }
 
     private void init() throws IOException, URISyntaxException {
@@ -90,12 +101,17 @@ public class WikiPathwaysMapper implements PathwayMapper{
             SupportedSpecies species = (SupportedSpecies) ois.readObject();
             if (!Args.getInstance().getSpecies().equals(species))
                 throw new IOException("Wrong species found in file");
+            index = PathwayIndex.read(ois, pathwayDB.values());
             LOGGER.debug("Object loaded into memory. Number of pathways: {}. Initial size = {}", pathwayDB.size(), initialSize);
         } catch (ClassNotFoundException e) {
             LOGGER.error(e);
         } catch (EOFException e) {
             // do nothing
         }
+        if (index == null && pathwayDB != null) {
+            LOGGER.warn("Incomplete pathway snapshot {}. Indexing its pathways", DB_WP_OBJ);
+            index = new PathwayIndex(pathwayDB.values());
+        }
         if (Args.getInstance().useOnlineDB()) {
             initWikiPathways();
         }
@@ -114,7 +130,14 @@ public class WikiPathwaysMapper implements PathwayMapper{
             saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
             saxParser.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
             PathwayResponceHandler pathwayResponceHandler = new PathwayResponceHandler();
-            saxParser.parse(url, pathwayResponceHandler);
+            connector.get(new URL(url), in -> {
+                try {
+                    saxParser.parse(in, pathwayResponceHandler);
+                    return pathwayResponceHandler;
+                } catch (SAXException e) {
+                    throw new IOException(e);
+                }
+            });
             List<PathwayResponse> result = pathwayResponceHandler.getPathwayResponses();
             if (result.isEmpty()) {
                 LOGGER.error("Unable to get WikiPathways results");
@@ -136,13 +159,11 @@ public class WikiPathwaysMapper implements PathwayMapper{
                         try {
                             var urlP = new URL(String.format("http://webservice.wikipathways.org/getPathwayAs?" +
                                     "fileType=gpml&pwId=%s&revision=0", e.getId()));
-                            var saxBuilder = new SAXBuilder();
-                            var document = saxBuilder.build(urlP);
-                            var genes = gpmlBase64Decoder(document.getRootElement().getChildren().stream()
-                                    .findFirst()
-                                    .orElseThrow().getText());
+                            var genes = connector.get(urlP, WikiPathwaysMapper::readPathwayGenes).stream()
+                                    .map(g -> new Gene(g, ""))
+                                    .collect(Collectors.toList());
                             return new Pathway(e.getId(), e.getName(), genes);
-                        } catch (JDOMException | IOException ex) {
+                        } catch (IOException | HttpException ex) {
                             LOGGER.error(ex);
                         }
                         return null;
@@ -165,7 +186,8 @@ public class WikiPathwaysMapper implements PathwayMapper{
         } catch (SAXException | ParserConfigurationException e) {
             LOGGER.error(e);
         }
-        LOGGER.debug("Internal DB initialized with {} pathways", pathwayDB.size());
+        index = new PathwayIndex(pathwayDB.values());
+        LOGGER.debug("Internal DB initialized with {} pathways and {} genes", pathwayDB.size(), index.size());
         LOGGER.debug("Writing updated version to sets folder");
         if (Files.isDirectory(Path.of(DB_PATH))) {
             LOGGER.warn("Directory '{}' already exists! Writing file ...", DB_PATH);
@@ -181,63 +203,82 @@ public class WikiPathwaysMapper implements PathwayMapper{
             oos.writeObject(pathwayDB);
             oos.writeInt(initialSize);
             oos.writeObject(Args.getInstance().getSpecies());
+            oos.writeObject(index);
         } catch (IOException e) {
             LOGGER.error(e);
         }
     }
 
     /**
-     * Decodes a base64 text to a gpml document and extracts a list of genes
-     * @param message base64 encoded text
-     * @return list of genes
+     * Stream a getPathwayAs response: the base64 gpml document is decoded on the fly while being parsed
+     * @param in response body
+     * @return set containing gene names
+     * @throws IOException malformed response
      */
-    private List<Gene> gpmlBase64Decoder(String message) {
+    static Set<String> readPathwayGenes(InputStream in) throws IOException {
+        XMLStreamReader reader = XMLStreams.createReader(in);
         try {
-            return gpmlToGeneNames(new String(Base64.getDecoder().decode(message))).stream()
-                    .map(e -> new Gene(e, ""))
-                    .collect(Collectors.toList());
-        } catch (JDOMException | IOException e) {
-            LOGGER.error(e);
+            // the document is the text of the first child of the root
+            int depth = 0;
+            while (reader.hasNext()) {
+                if (reader.next() == XMLStreamReader.START_ELEMENT && ++depth == 2) {
+                    try (InputStream gpml = Base64.getMimeDecoder().wrap(XMLStreams.textStream(reader))) {
+                        return gpmlToGeneNames(gpml);
+                    }
+                }
+            }
+            throw new IOException("No gpml document in response");
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
         }
-        return Collections.emptyList();
     }
 
     /**
      * Extracts gene names from a gpml file
      * @param gpml gpml document
      * @return set containing gene names
-     * @throws JDOMException something wrong happened
      * @throws IOException definitely something wrong happened
      */
-    private Set<String> gpmlToGeneNames(String gpml) throws JDOMException, IOException {
-        Pattern enzymPatter = Pattern.compile("(?:\\d*\\.){3}\\d+");
-        Pattern namePattern = Pattern.compile("(^[\\w-]+)");
-        String attribute = "TextLabel";
-        SAXBuilder saxBuilder = new SAXBuilder();
-        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-        Document document = saxBuilder.build(new StringReader(gpml));
-        var childrenList = document.getRootElement().getChildren().stream()
-                .filter(c -> c.getName().equals("DataNode")).collect(Collectors.toList());
-        childrenList = childrenList.stream().filter(c -> c.getAttribute("Type") != null)
-                .filter(c -> c.getAttribute("Type").getValue().equals("Protein") ||
-                        c.getAttribute("Type").getValue().equals("GeneProduct"))
-                .filter(c -> !c.getAttribute(attribute).getValue().equals(" "))
-                .filter(c -> {
-                    var matcher = enzymPatter.matcher(c.getAttribute(attribute).getValue());
-                    return !matcher.find();
-                })
-                .collect(Collectors.toList());
-        return childrenList.stream().map(c -> c.getAttribute(attribute).getValue())
-                .map(c -> c.contains("_") ? c.split("_")[0] : c)
-                .map(c -> {
-                    Matcher m = namePattern.matcher(c);
-                    return m.find() ? m.group(1) : c;
-                })
-                .map(c -> c.startsWith("p-") ? c.substring(c.indexOf('-') + 1) : c)
-                .map(c -> c.startsWith("Y-") ? c.substring(c.indexOf('-') + 1) : c)
-                .map(String::trim)
-                .collect(Collectors.toSet());
+    static Set<String> gpmlToGeneNames(InputStream gpml) throws IOException {
+        XMLStreamReader reader = XMLStreams.createReader(gpml);
+        Set<String> names = new HashSet<>();
+        try {
+            int depth = 0;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamReader.END_ELEMENT) {
+                    depth--;
+                } else if (event == XMLStreamReader.START_ELEMENT && ++depth == 2
+                        && reader.getLocalName().equals("DataNode")) {
+                    String name = geneName(reader.getAttributeValue(null, "Type"),
+                            reader.getAttributeValue(null, "TextLabel"));
+                    if (name != null)
+                        names.add(name);
+                }
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return names;
+    }
+
+    /**
+     * @param type DataNode type
+     * @param label DataNode text label
+     * @return gene name, or null if the node isn't a gene product or the label is an enzyme number
+     */
+    private static String geneName(String type, String label) {
+        if (!"Protein".equals(type) && !"GeneProduct".equals(type))
+            return null;
+        if (label == null || label.equals(" ") || ENZYME_PATTERN.matcher(label).find())
+            return null;
+        String name = label.contains("_") ? label.split("_")[0] : label;
+        Matcher m = NAME_PATTERN.matcher(name);
+        name = m.find() ? m.group(1) : name;
+        name = name.startsWith("p-") ? name.substring(name.indexOf('-') + 1) : name;
+        name = name.startsWith("Y-") ? name.substring(name.indexOf('-') + 1) : name;
+        return name.trim();
     }
 
 }
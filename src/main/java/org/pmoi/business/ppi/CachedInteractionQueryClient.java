@@ -4,46 +4,140 @@ import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
 import org.pmoi.Args;
 import org.pmoi.database.GeneMapper;
+import org.pmoi.database.SpeciesHelper;
+import org.pmoi.database.SupportedSpecies;
 
 import java.io.*;
 import java.nio.file.Files;
 import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.Map;
-import java.util.stream.Collectors;
 import java.util.stream.Stream;
 
 public class CachedInteractionQueryClient implements InteractionQueryClient{
 
     private static final Logger LOGGER = LogManager.getRootLogger();
 
+    private static final String DB_PATH = "sets/";
+    // serialized network of former versions, human only
+    private static final String LEGACY_DB = "ppi.obj";
+
     private static CachedInteractionQueryClient instance;
 
-    private Map<String, Map<String, Double>> internalDB;
+    private final InteractionStore internalDB;
+
+    private CachedInteractionQueryClient(InteractionStore internalDB) {
+        this.internalDB = internalDB;
+    }
+
+    /**
+     * @param species species
+     * @return location of the PPI store of a species in the sets folder
+     */
+    public static Path storeFile(SupportedSpecies species) {
+        return Path.of(DB_PATH + "ppi." + species + ".bin");
+    }
 
-    private CachedInteractionQueryClient() {
-        LOGGER.debug("Loading PPI database");
+    /**
+     * Checks if a PPI store exists for the current species, either in the sets folder or bundled with the tool, or
+     * if a network of former versions can be converted to one
+     * @return true if the offline network can be used
+     */
+    public static boolean isAvailable() {
+        SupportedSpecies species = Args.getInstance().getSpecies();
+        return Files.exists(storeFile(species))
+                || CachedInteractionQueryClient.class.getResource("/" + storeFile(species).getFileName()) != null
+                || legacyNetwork(species) != null;
+    }
+
+    /**
+     * @return the serialized network of former versions, in the sets folder or bundled, or null
+     */
+    private static InputStream legacyNetwork(SupportedSpecies species) {
+        if (species != SupportedSpecies.HUMAN)
+            return null;
         try {
-            load();
+            Path file = Path.of(DB_PATH + LEGACY_DB);
+            if (Files.exists(file))
+                return Files.newInputStream(file);
         } catch (IOException e) {
-            LOGGER.error(e);
+            LOGGER.warn("Unable to read {}: {}", LEGACY_DB, e.getMessage());
+        }
+        return CachedInteractionQueryClient.class.getResourceAsStream("/" + LEGACY_DB);
+    }
+
+    /**
+     * Map the PPI store into memory. A store in the sets folder takes precedence over the bundled one, which is
+     * extracted there first as resources can't be memory mapped
+     * @return store of the current species
+     * @throws IOException no valid store found
+     */
+    private static InteractionStore load() throws IOException {
+        Path file = storeFile(Args.getInstance().getSpecies());
+        if (!Files.exists(file)) {
+            try (InputStream in = CachedInteractionQueryClient.class.getResourceAsStream("/" + file.getFileName())) {
+                if (in != null) {
+                    Files.createDirectories(file.getParent());
+                    Files.copy(in, file, StandardCopyOption.REPLACE_EXISTING);
+                }
+            }
+        }
+        if (!Files.exists(file)) {
+            try (InputStream in = legacyNetwork(Args.getInstance().getSpecies())) {
+                if (in == null)
+                    throw new IOException("File not found");
+                LOGGER.info("Converting {} to {}", LEGACY_DB, file);
+                Files.createDirectories(file.getParent());
+                convertLegacy(in, file, SpeciesHelper.get().getTaxonomyId());
+            }
         }
-        LOGGER.debug("PPI database loaded");
+        return open(file, SpeciesHelper.get().getTaxonomyId());
     }
 
-    private void load() throws IOException{
-        try (InputStream in = getClass().getResourceAsStream("/ppi.obj")){
-            ObjectInputStream ois = new ObjectInputStream(in);
-            this.internalDB = (Map<String, Map<String, Double>>) ois.readObject();
-        } catch (ClassNotFoundException e) {
-            LOGGER.error(e);
+    /**
+     * Write a PPI store from the serialized network of former versions: a map of [protein : [interactor : score]],
+     * scores from 0 to 1. That network only has the interactions used with the default score threshold, so lower
+     * thresholds need a store built by {@link InteractionStoreBuilder}
+     * @param in serialized network
+     * @param target store file
+     * @param taxonomyId species taxonomy ID
+     * @throws IOException the network can't be read or the store can't be written
+     */
+    @SuppressWarnings("unchecked")
+    static void convertLegacy(InputStream in, Path target, int taxonomyId) throws IOException {
+        Map<String, Map<String, Double>> network;
+        try (ObjectInputStream ois = new ObjectInputStream(new BufferedInputStream(in))) {
+            network = (Map<String, Map<String, Double>>) ois.readObject();
+        } catch (ClassNotFoundException | ClassCastException e) {
+            throw new IOException("Invalid PPI network: " + e.getMessage(), e);
+        }
+        try (InteractionStoreWriter writer = new InteractionStoreWriter()) {
+            network.forEach((protein, partners) -> partners.forEach((partner, score) ->
+                    writer.add(protein, partner, (int) Math.round(score * 1000))));
+            writer.write(target, taxonomyId);
         }
     }
 
+    /**
+     * Map a PPI store, checking its species
+     * @param file store file
+     * @param taxonomyId expected taxonomy ID
+     * @return store
+     * @throws IOException the file isn't a valid store, or is the store of another species
+     */
+    static InteractionStore open(Path file, int taxonomyId) throws IOException {
+        InteractionStore store = InteractionStore.open(file);
+        if (store.getTaxonomyId() != taxonomyId)
+            throw new IOException(String.format("Wrong species found in file %s: %d instead of %d", file,
+                    store.getTaxonomyId(), taxonomyId));
+        return store;
+    }
+
     @Override
     public Map<String, String> getProteinNetwork(String symbol) {
-        if (!internalDB.containsKey(symbol))
+        if (internalDB.find(symbol) < 0)
             return GeneMapper.getInstance().getAliases(symbol)
                     .stream()
                     .map(this::getNetworkHelper)
@@ -55,31 +149,51 @@ public class CachedInteractionQueryClient implements InteractionQueryClient{
     }
 
     public Map<String, String> getNetworkHelper(String symbol) {
-        return internalDB.getOrDefault(symbol, Collections.emptyMap())
-                .entrySet().stream()
-                .filter(e -> e.getValue() >= Args.getInstance().getStringDBScore() / 1000.)
-                .collect(Collectors.toMap(Map.Entry::getKey, e -> String.valueOf(e.getValue())));
+        var neighbors = getNeighbors(symbol, Args.getInstance().getStringDBScore());
+        Map<String, String> network = new HashMap<>(neighbors.size() * 2);
+        for (int i = 0; i < neighbors.size(); i++) {
+            network.put(neighbors.getName(i), String.valueOf(neighbors.getScore(i) / 1000.));
+        }
+        return network;
+    }
+
+    /**
+     * Get interacting proteins without building a map
+     * @param symbol protein name
+     * @param minScore minimum combined score (0 - 1000)
+     * @return neighbors sorted by descending score. Empty if the protein is unknown
+     */
+    public InteractionStore.Neighbors getNeighbors(String symbol, int minScore) {
+        int protein = internalDB.find(symbol);
+        return protein < 0 ? internalDB.noNeighbors() : internalDB.getNeighbors(protein, minScore);
     }
 
+    /**
+     * Build the PPI store from a file where each line is: protein protein score
+     */
     public void createCache() {
-        try (Stream<String> stream = Files.lines(Path.of("PPI.txt"))) {
-            internalDB = stream.map(l -> l.split(" "))
-                    .collect(Collectors.toMap(l -> l[0], l -> new HashMap<>(Map.of(l[1], Double.parseDouble(l[2]) / 1000)), (m1, m2) -> {
-                        m1.putAll(m2);
-                        return m1;
-                    }));
-            ObjectOutputStream oos = new ObjectOutputStream(new FileOutputStream("ppi.obj"));
-            oos.writeObject(internalDB);
-            oos.close();
+        try (InteractionStoreWriter writer = new InteractionStoreWriter();
+             Stream<String> stream = Files.lines(Path.of("PPI.txt"))) {
+            stream.map(l -> l.split(" ")).forEach(l -> writer.add(l[0], l[1], (int) Math.round(Double.parseDouble(l[2]))));
+            writer.write(storeFile(Args.getInstance().getSpecies()).getFileName(), SpeciesHelper.get().getTaxonomyId());
         } catch (IOException e) {
             LOGGER.error(e.getMessage());
             System.exit(1);
         }
     }
 
-    public static synchronized CachedInteractionQueryClient getInstance() {
-        if (instance == null)
-            instance = new CachedInteractionQueryClient();
+    /**
+     * @return the client of the current species
+     * @throws IOException no valid PPI store could be loaded. The next call tries again
+     */
+    public static synchronized CachedInteractionQueryClient getInstance() throws IOException {
+        if (instance == null) {
+            LOGGER.debug("Loading PPI database");
+            InteractionStore store = load();
+            LOGGER.debug("PPI database loaded. Proteins: {}, interactions: {}", store.getProteinCount(),
+                    store.getInteractionCount());
+            instance = new CachedInteractionQueryClient(store);
+        }
         return instance;
     }
 }
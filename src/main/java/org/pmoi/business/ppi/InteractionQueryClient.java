@@ -1,7 +1,36 @@
 package org.pmoi.business.ppi;
 
+import java.io.IOException;
+import java.util.Collection;
+import java.util.LinkedHashMap;
 import java.util.Map;
 
 public interface InteractionQueryClient {
-    Map<String, String> getProteinNetwork(String symbol);
+    /**
+     * @param symbol gene name
+     * @return map of [interactor : score], empty if the protein has no known interactor
+     * @throws IOException the network could not be retrieved
+     */
+    Map<String, String> getProteinNetwork(String symbol) throws IOException;
+
+    /**
+     * Get the PPI networks of several proteins. Clients backed by a remote service should override this method to
+     * send as few requests as possible
+     * @param symbols gene names
+     * @return map of [gene name : [interactor : score]]. Every queried name is a key
+     * @throws InteractionQueryException some networks could not be retrieved
+     */
+    default Map<String, Map<String, String>> getProteinNetworks(Collection<String> symbols) throws InteractionQueryException {
+        Map<String, Map<String, String>> networks = new LinkedHashMap<>();
+        for (String symbol : symbols) {
+            if (networks.containsKey(symbol))
+                continue;
+            try {
+                networks.put(symbol, getProteinNetwork(symbol));
+            } catch (IOException e) {
+                throw new InteractionQueryException("PPI network not retrieved for GENE:" + symbol, networks, e);
+            }
+        }
+        return networks;
+    }
 }
@@ -0,0 +1,25 @@
+package org.pmoi.business.ppi;
+
+import java.io.IOException;
+import java.util.Map;
+
+/**
+ * Thrown when the networks of some proteins could not be retrieved, e.g. the remote service is down. Networks
+ * retrieved before the failure are kept so that they can still be cached
+ */
+public class InteractionQueryException extends IOException {
+
+    private final transient Map<String, Map<String, String>> retrieved;
+
+    public InteractionQueryException(String s, Map<String, Map<String, String>> retrieved, Throwable cause) {
+        super(s, cause);
+        this.retrieved = retrieved;
+    }
+
+    /**
+     * @return networks retrieved before the failure, map of [gene name : [interactor : score]]
+     */
+    public Map<String, Map<String, String>> getRetrieved() {
+        return retrieved;
+    }
+}
@@ -0,0 +1,218 @@
+package org.pmoi.business.ppi;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Read only, memory mapped protein-protein interaction network stored in compressed sparse row format.
+ * <p>
+ * Proteins are identified by an int. The neighbors of protein {@code p} are found in the neighbor and score arrays
+ * between {@code offsets[p]} and {@code offsets[p + 1]}, sorted by descending StringDB combined score (0 - 1000).
+ * See {@link InteractionStoreWriter} for the file layout.
+ */
+public class InteractionStore {
+
+    static final int MAGIC = 0x50504953;
+    // version 2: neighbors sorted by descending score
+    static final int VERSION = 2;
+    static final int HEADER_SIZE = 48;
+    static final int EMPTY = -1;
+
+    private final ByteBuffer buffer;
+    private final int taxonomyId;
+    private final int proteinCount;
+    private final int interactionCount;
+    private final int namesOffset;
+    private final int slotCount;
+    private final int slotsOffset;
+    private final int offsetsOffset;
+    private final int neighborsOffset;
+    private final int scoresOffset;
+    private final int poolOffset;
+
+    private InteractionStore(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not an interaction store");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported interaction store version " + buffer.getInt(4));
+        this.taxonomyId = buffer.getInt(8);
+        this.proteinCount = buffer.getInt(12);
+        this.interactionCount = buffer.getInt(16);
+        this.slotCount = buffer.getInt(20);
+        this.namesOffset = buffer.getInt(24);
+        this.slotsOffset = buffer.getInt(28);
+        this.offsetsOffset = buffer.getInt(32);
+        this.neighborsOffset = buffer.getInt(36);
+        this.scoresOffset = buffer.getInt(40);
+        this.poolOffset = buffer.getInt(44);
+    }
+
+    /**
+     * Map a store file into memory
+     * @param path store file
+     * @return interaction store
+     * @throws IOException the file can't be read or isn't a valid store
+     */
+    public static InteractionStore open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new InteractionStore(buffer);
+        }
+    }
+
+    public int getTaxonomyId() {
+        return taxonomyId;
+    }
+
+    public int getProteinCount() {
+        return proteinCount;
+    }
+
+    public int getInteractionCount() {
+        return interactionCount;
+    }
+
+    /**
+     * Look for a protein by name (case sensitive)
+     * @param name protein name
+     * @return protein ID or -1
+     */
+    public int find(String name) {
+        int mask = slotCount - 1;
+        for (int slot = hash(name) & mask; ; slot = (slot + 1) & mask) {
+            int protein = buffer.getInt(slotsOffset + slot * Integer.BYTES);
+            if (protein == EMPTY)
+                return EMPTY;
+            if (getName(protein).equals(name))
+                return protein;
+        }
+    }
+
+    /**
+     * @param protein protein ID
+     * @return protein name
+     */
+    public String getName(int protein) {
+        int position = poolOffset + buffer.getInt(namesOffset + protein * Integer.BYTES);
+        byte[] bytes = new byte[Short.toUnsignedInt(buffer.getShort(position))];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    /**
+     * @param protein protein ID
+     * @return index of the first neighbor of the protein
+     */
+    public int firstNeighbor(int protein) {
+        return buffer.getInt(offsetsOffset + protein * Integer.BYTES);
+    }
+
+    /**
+     * @param protein protein ID
+     * @return index after the last neighbor of the protein
+     */
+    public int lastNeighbor(int protein) {
+        return buffer.getInt(offsetsOffset + (protein + 1) * Integer.BYTES);
+    }
+
+    /**
+     * @param index neighbor index, between {@link #firstNeighbor(int)} and {@link #lastNeighbor(int)}
+     * @return protein ID of the neighbor
+     */
+    public int getNeighbor(int index) {
+        return buffer.getInt(neighborsOffset + index * Integer.BYTES);
+    }
+
+    /**
+     * @param index neighbor index, between {@link #firstNeighbor(int)} and {@link #lastNeighbor(int)}
+     * @return combined score of the interaction (0 - 1000)
+     */
+    public int getScore(int index) {
+        return buffer.getShort(scoresOffset + index * Short.BYTES);
+    }
+
+    /**
+     * Get the neighbors of a protein having a score of at least {@code minScore}. As neighbors are sorted by score
+     * the cut point is found by binary search and nothing is copied
+     * @param protein protein ID
+     * @param minScore minimum combined score (0 - 1000)
+     * @return neighbors view
+     */
+    public Neighbors getNeighbors(int protein, int minScore) {
+        int from = firstNeighbor(protein);
+        int low = from;
+        int high = lastNeighbor(protein);
+        // first index with a score below minScore
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (getScore(middle) >= minScore)
+                low = middle + 1;
+            else
+                high = middle;
+        }
+        return new Neighbors(from, low);
+    }
+
+    /**
+     * @return an empty neighbors view
+     */
+    public Neighbors noNeighbors() {
+        return new Neighbors(0, 0);
+    }
+
+    static int hash(String name) {
+        int h = name.hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Range of neighbors backed by the mapped buffer
+     */
+    public class Neighbors {
+        private final int from;
+        private final int to;
+
+        private Neighbors(int from, int to) {
+            this.from = from;
+            this.to = to;
+        }
+
+        public int size() {
+            return to - from;
+        }
+
+        public boolean isEmpty() {
+            return from == to;
+        }
+
+        /**
+         * @param i position in the view
+         * @return protein ID of the neighbor
+         */
+        public int getProtein(int i) {
+            return getNeighbor(from + i);
+        }
+
+        /**
+         * @param i position in the view
+         * @return protein name of the neighbor
+         */
+        public String getName(int i) {
+            return InteractionStore.this.getName(getProtein(i));
+        }
+
+        /**
+         * @param i position in the view
+         * @return combined score of the interaction (0 - 1000)
+         */
+        public int getScore(int i) {
+            return InteractionStore.this.getScore(from + i);
+        }
+    }
+}
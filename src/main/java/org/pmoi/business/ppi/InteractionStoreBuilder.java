@@ -0,0 +1,133 @@
+package org.pmoi.business.ppi;
+
+import com.beust.jcommander.JCommander;
+import com.beust.jcommander.Parameter;
+import com.beust.jcommander.ParameterException;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pmoi.database.SpeciesHelper;
+import org.pmoi.database.SupportedSpecies;
+import org.pmoi.util.GZIPFile;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.stream.Stream;
+
+/**
+ * Builds the offline PPI store of a species from a local StringDB dump:
+ * <ul>
+ *     <li>{@code <taxon>.protein.links.<version>.txt[.gz]}: protein1 protein2 combined_score</li>
+ *     <li>{@code <taxon>.protein.info.<version>.txt[.gz]}: string_protein_id preferred_name ...</li>
+ * </ul>
+ * Every interaction is kept, whatever its score, so the store serves any threshold. Links are streamed and sorted
+ * on disk by {@link InteractionStoreWriter}, so memory use doesn't depend on the size of the dump.
+ * Stores are built per species, from the per-species dumps of StringDB, as a store is limited to 2^24 proteins and
+ * 2 GB.
+ * <pre>
+ * java -cp intOmics.jar org.pmoi.business.ppi.InteractionStoreBuilder --species mouse --links links.txt.gz --info info.txt.gz
+ * </pre>
+ */
+public class InteractionStoreBuilder {
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    private final Map<String, String> preferredNames = new HashMap<>(40_000);
+
+    /**
+     * Load the StringDB ID to preferred name mapping
+     * @param info protein.info file
+     * @throws IOException unable to read the file
+     */
+    public void loadInfo(Path info) throws IOException {
+        try (Stream<String> stream = lines(info)) {
+            stream.filter(l -> !l.startsWith("#"))
+                    .map(l -> l.split("\t"))
+                    .filter(l -> l.length > 1)
+                    .forEach(l -> preferredNames.put(l[0], l[1]));
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        LOGGER.info("Loaded {} protein names", preferredNames.size());
+    }
+
+    /**
+     * Stream a protein.links file into a store
+     * @param links protein.links file
+     * @param target store file
+     * @param taxonomyId species taxonomy ID
+     * @throws IOException unable to read or write a file
+     */
+    public void build(Path links, Path target, int taxonomyId) throws IOException {
+        try (InteractionStoreWriter writer = new InteractionStoreWriter();
+             Stream<String> stream = lines(links)) {
+            stream.filter(l -> !l.startsWith("protein1"))
+                    .forEach(l -> {
+                        int first = l.indexOf(' ');
+                        int second = l.indexOf(' ', first + 1);
+                        writer.add(name(l.substring(0, first)), name(l.substring(first + 1, second)),
+                                Integer.parseInt(l.substring(second + 1).trim()));
+                    });
+            writer.write(target, taxonomyId);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+    }
+
+    /**
+     * @param stringId StringDB protein ID (e.g. 9606.ENSP00000269305)
+     * @return preferred name, or the ID without the taxon prefix when the protein has no name
+     */
+    private String name(String stringId) {
+        String name = preferredNames.get(stringId);
+        return name != null ? name : stringId.substring(stringId.indexOf('.') + 1);
+    }
+
+    private static Stream<String> lines(Path path) throws IOException {
+        return path.toString().endsWith(".gz") ? GZIPFile.lines(path) : Files.lines(path);
+    }
+
+    private static class Params {
+        @Parameter(names = {"--species"}, description = "Species of the StringDB dump", required = true)
+        private SupportedSpecies species;
+
+        @Parameter(names = {"--links"}, description = "StringDB protein.links file", required = true)
+        private String links;
+
+        @Parameter(names = {"--info"}, description = "StringDB protein.info file", required = true)
+        private String info;
+
+        @Parameter(names = {"-h", "--help"}, description = "Print help screen", help = true)
+        private boolean help;
+    }
+
+    public static void main(String[] args) {
+        Params params = new Params();
+        try {
+            JCommander jc = JCommander.newBuilder().addObject(params).args(args).build();
+            if (params.help) {
+                jc.usage();
+                return;
+            }
+        } catch (ParameterException e) {
+            System.out.println(e.getMessage());
+            System.exit(1);
+        }
+        SpeciesHelper.makeSpecies(params.species);
+        Path target = CachedInteractionQueryClient.storeFile(params.species);
+        try {
+            Files.createDirectories(target.getParent());
+            InteractionStoreBuilder builder = new InteractionStoreBuilder();
+            builder.loadInfo(Path.of(params.info));
+            LOGGER.info("Building PPI store {}", target);
+            builder.build(Path.of(params.links), target, SpeciesHelper.get().getTaxonomyId());
+            LOGGER.info("PPI store written to {}", target);
+        } catch (IOException e) {
+            LOGGER.error(e);
+            System.exit(1);
+        }
+    }
+}
@@ -0,0 +1,346 @@
+package org.pmoi.business.ppi;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.*;
+
+/**
+ * Collects interactions and writes them as an {@link InteractionStore} file using bounded memory.
+ * <p>
+ * Interactions are packed into longs and buffered in fixed size chunks. Full chunks are sorted and spilled to
+ * temporary run files, which are merged when the store is written. Only protein names and offsets are kept for the
+ * whole network, neighbors and scores are streamed to disk.
+ * <p>
+ * File layout (big endian): header, name table (pool offset per protein), open addressing name index,
+ * offsets (protein count + 1 ints), neighbors (ints), scores (shorts), string pool (length prefixed UTF-8).
+ * The neighbors of each protein are sorted by descending score.
+ * <p>
+ * A store holds the network of a single species: at most 2^24 proteins, and offsets are ints, which caps the file at
+ * 2 GB, i.e. about 350 million interactions. The largest STRING species networks fit several times over, the
+ * multi-species network doesn't and is built species by species (see {@link InteractionStoreBuilder}).
+ */
+public class InteractionStoreWriter implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    public static final int DEFAULT_CHUNK_SIZE = 1 << 22;
+    private static final int PROGRESS_STEP = 1_000_000;
+    // packed entry: source (24 bits) | inverted score (11 bits) | target (24 bits)
+    private static final int PROTEIN_BITS = 24;
+    private static final int SCORE_BITS = 11;
+    private static final int MAX_PROTEINS = 1 << PROTEIN_BITS;
+    private static final int MAX_SCORE = (1 << SCORE_BITS) - 1;
+    // int offsets: neighbors (4 bytes) and scores (2 bytes) must end below 2 GB, keeping 256 MB for the names.
+    // Checked while adding to fail before the merge, writeHeader does the exact check
+    static final long MAX_INTERACTIONS = (Integer.MAX_VALUE - (1L << 28)) / (Integer.BYTES + Short.BYTES);
+
+    private final Map<String, Integer> proteinIds = new HashMap<>();
+    private final List<String> names = new ArrayList<>();
+    private final List<Path> runs = new ArrayList<>();
+    private final long[] chunk;
+    private int chunkSize;
+    private long size;
+    private final long startTime = System.nanoTime();
+
+    public InteractionStoreWriter() {
+        this(DEFAULT_CHUNK_SIZE);
+    }
+
+    /**
+     * @param chunkSize number of interactions kept in memory before spilling to disk
+     */
+    public InteractionStoreWriter(int chunkSize) {
+        this.chunk = new long[chunkSize];
+    }
+
+    /**
+     * Add a directed interaction
+     * @param source protein name
+     * @param target interacting protein name
+     * @param score combined score (0 - 1000)
+     * @throws UncheckedIOException unable to spill interactions to disk
+     */
+    public void add(String source, String target, int score) {
+        if (score < 0 || score > MAX_SCORE)
+            throw new IllegalArgumentException("Invalid interaction score: " + score);
+        if (size == MAX_INTERACTIONS)
+            throw new IllegalStateException("Too many interactions for a single store. Build one store per species");
+        if (chunkSize == chunk.length) {
+            try {
+                spill();
+            } catch (IOException e) {
+                throw new UncheckedIOException(e);
+            }
+        }
+        chunk[chunkSize++] = pack(proteinId(source), proteinId(target), score);
+        if (++size % PROGRESS_STEP == 0)
+            LOGGER.info("{} interactions read ({} per second)", size, throughput(size));
+    }
+
+    private int proteinId(String name) {
+        return proteinIds.computeIfAbsent(name, k -> {
+            if (names.size() == MAX_PROTEINS)
+                throw new IllegalStateException("Too many proteins for a single store. Build one store per species");
+            names.add(k);
+            return names.size() - 1;
+        });
+    }
+
+    /**
+     * Pack an interaction into a long so that natural ordering sorts by source, then by descending score,
+     * then by target
+     */
+    static long pack(int source, int target, int score) {
+        return ((long) source << (PROTEIN_BITS + SCORE_BITS)) | ((long) (MAX_SCORE - score) << PROTEIN_BITS) | target;
+    }
+
+    static int source(long entry) {
+        return (int) (entry >>> (PROTEIN_BITS + SCORE_BITS));
+    }
+
+    static int target(long entry) {
+        return (int) (entry & (MAX_PROTEINS - 1));
+    }
+
+    static int score(long entry) {
+        return MAX_SCORE - (int) ((entry >>> PROTEIN_BITS) & MAX_SCORE);
+    }
+
+    /**
+     * Sort the buffered interactions and write them to a new run file
+     */
+    private void spill() throws IOException {
+        Arrays.sort(chunk, 0, chunkSize);
+        Path run = Files.createTempFile("ppi_run", ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(run), 1 << 16))) {
+            for (int i = 0; i < chunkSize; i++) {
+                out.writeLong(chunk[i]);
+            }
+        }
+        runs.add(run);
+        LOGGER.debug("Spilled {} interactions to {}", chunkSize, run);
+        chunkSize = 0;
+    }
+
+    /**
+     * Merge all interactions and write the network. The file is written next to the target then moved in place
+     * @param target store file
+     * @param taxonomyId species taxonomy ID
+     * @throws IOException unable to write the file
+     */
+    public void write(Path target, int taxonomyId) throws IOException {
+        Arrays.sort(chunk, 0, chunkSize);
+        int proteinCount = names.size();
+        int[] offsets = new int[proteinCount + 1];
+        Path dir = target.toAbsolutePath().getParent();
+        Path neighbors = Files.createTempFile(dir, "ppi_neighbors", ".tmp");
+        Path scores = Files.createTempFile(dir, "ppi_scores", ".tmp");
+        Path tmp = Files.createTempFile(dir, "ppi", ".tmp");
+        try {
+            LOGGER.info("Merging {} interactions from {} run(s)", size, runs.size() + 1);
+            try (DataOutputStream neighborsOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(neighbors), 1 << 16));
+                 DataOutputStream scoresOut = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(scores), 1 << 16));
+                 MergeIterator merge = new MergeIterator()) {
+                long count = 0;
+                while (merge.hasNext()) {
+                    long entry = merge.next();
+                    offsets[source(entry) + 1]++;
+                    neighborsOut.writeInt(target(entry));
+                    scoresOut.writeShort(score(entry));
+                    if (++count % PROGRESS_STEP == 0)
+                        LOGGER.info("{} interactions written ({} per second)", count, throughput(count));
+                }
+            }
+            for (int p = 0; p < proteinCount; p++) {
+                offsets[p + 1] += offsets[p];
+            }
+            try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tmp), 1 << 16))) {
+                writeHeader(out, taxonomyId, proteinCount, size);
+                writeNames(out, names);
+                for (int offset : offsets) {
+                    out.writeInt(offset);
+                }
+                Files.copy(neighbors, out);
+                Files.copy(scores, out);
+                writePool(out, names);
+            }
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("{} proteins and {} interactions written in {} s", proteinCount, size,
+                    (System.nanoTime() - startTime) / 1_000_000_000);
+        } finally {
+            Files.deleteIfExists(neighbors);
+            Files.deleteIfExists(scores);
+            Files.deleteIfExists(tmp);
+            close();
+        }
+    }
+
+    /**
+     * Delete the run files
+     */
+    @Override
+    public void close() throws IOException {
+        for (Path run : runs) {
+            Files.deleteIfExists(run);
+        }
+        runs.clear();
+    }
+
+    private long throughput(long count) {
+        long elapsed = Math.max(System.nanoTime() - startTime, 1);
+        return count * 1_000_000_000L / elapsed;
+    }
+
+    static int slotCount(int proteinCount) {
+        // load factor <= 0.5 keeps probe sequences short
+        return Integer.highestOneBit(Math.max(proteinCount, 1) * 2 - 1) << 1;
+    }
+
+    static void writeHeader(DataOutputStream out, int taxonomyId, int proteinCount, long interactionCount) throws IOException {
+        int slotCount = slotCount(proteinCount);
+        long namesOffset = InteractionStore.HEADER_SIZE;
+        long slotsOffset = namesOffset + (long) proteinCount * Integer.BYTES;
+        long offsetsOffset = slotsOffset + (long) slotCount * Integer.BYTES;
+        long neighborsOffset = offsetsOffset + (proteinCount + 1L) * Integer.BYTES;
+        long scoresOffset = neighborsOffset + interactionCount * Integer.BYTES;
+        long poolOffset = scoresOffset + interactionCount * Short.BYTES;
+        if (poolOffset > Integer.MAX_VALUE)
+            throw new IOException("Interaction network too large: " + interactionCount + " interactions");
+        out.writeInt(InteractionStore.MAGIC);
+        out.writeInt(InteractionStore.VERSION);
+        out.writeInt(taxonomyId);
+        out.writeInt(proteinCount);
+        out.writeInt((int) interactionCount);
+        out.writeInt(slotCount);
+        out.writeInt((int) namesOffset);
+        out.writeInt((int) slotsOffset);
+        out.writeInt((int) offsetsOffset);
+        out.writeInt((int) neighborsOffset);
+        out.writeInt((int) scoresOffset);
+        out.writeInt((int) poolOffset);
+    }
+
+    /**
+     * Write the name table followed by the name index
+     */
+    static void writeNames(DataOutputStream out, List<String> names) throws IOException {
+        int ref = 0;
+        for (String name : names) {
+            out.writeInt(ref);
+            ref += Short.BYTES + name.getBytes(StandardCharsets.UTF_8).length;
+        }
+        int slotCount = slotCount(names.size());
+        int mask = slotCount - 1;
+        int[] slots = new int[slotCount];
+        Arrays.fill(slots, InteractionStore.EMPTY);
+        for (int p = 0; p < names.size(); p++) {
+            int slot = InteractionStore.hash(names.get(p)) & mask;
+            while (slots[slot] != InteractionStore.EMPTY) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = p;
+        }
+        for (int slot : slots) {
+            out.writeInt(slot);
+        }
+    }
+
+    static void writePool(DataOutputStream out, List<String> names) throws IOException {
+        for (String name : names) {
+            byte[] bytes = name.getBytes(StandardCharsets.UTF_8);
+            out.writeShort(bytes.length);
+            out.write(bytes);
+        }
+    }
+
+    /**
+     * K-way merge of the sorted run files and the sorted in-memory chunk
+     */
+    private class MergeIterator implements Closeable {
+        private final PriorityQueue<Cursor> queue = new PriorityQueue<>(Comparator.comparingLong(c -> c.current));
+        private final List<Cursor> cursors = new ArrayList<>();
+
+        MergeIterator() throws IOException {
+            for (Path run : runs) {
+                cursors.add(new RunCursor(run));
+            }
+            cursors.add(new ChunkCursor());
+            for (Cursor cursor : cursors) {
+                if (cursor.advance())
+                    queue.add(cursor);
+            }
+        }
+
+        boolean hasNext() {
+            return !queue.isEmpty();
+        }
+
+        long next() throws IOException {
+            Cursor cursor = queue.poll();
+            assert cursor != null;
+            long entry = cursor.current;
+            if (cursor.advance())
+                queue.add(cursor);
+            return entry;
+        }
+
+        @Override
+        public void close() throws IOException {
+            for (Cursor cursor : cursors) {
+                cursor.close();
+            }
+        }
+    }
+
+    private abstract static class Cursor implements Closeable {
+        long current;
+
+        abstract boolean advance() throws IOException;
+
+        @Override
+        public void close() throws IOException {
+        }
+    }
+
+    private static class RunCursor extends Cursor {
+        private final DataInputStream in;
+        private long remaining;
+
+        RunCursor(Path run) throws IOException {
+            this.remaining = Files.size(run) / Long.BYTES;
+            this.in = new DataInputStream(new BufferedInputStream(Files.newInputStream(run), 1 << 16));
+        }
+
+        @Override
+        boolean advance() throws IOException {
+            if (remaining == 0)
+                return false;
+            remaining--;
+            current = in.readLong();
+            return true;
+        }
+
+        @Override
+        public void close() throws IOException {
+            in.close();
+        }
+    }
+
+    private class ChunkCursor extends Cursor {
+        private int position;
+
+        @Override
+        boolean advance() {
+            if (position == chunkSize)
+                return false;
+            current = chunk[position++];
+            return true;
+        }
+    }
+}
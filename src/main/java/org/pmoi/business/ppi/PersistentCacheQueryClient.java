@@ -0,0 +1,210 @@
+package org.pmoi.business.ppi;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+import org.pmoi.Args;
+import org.pmoi.database.SpeciesHelper;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Disk backed cache in front of a remote {@link InteractionQueryClient}.
+ * <p>
+ * Each network is stored in its own file under {@code <cache>/<taxonomy ID>/<score>/}: the first line holds the time
+ * the network was fetched, then one {@code interactor\tscore} per line. Entries older than the TTL are fetched again.
+ * The last modified time of a file is its last access time, so the least recently used entries are evicted first when
+ * the cache grows over its size limit, across runs.
+ * Only answers of the remote service are cached, including empty networks. Networks that could not be retrieved are
+ * fetched again on the next run.
+ */
+public class PersistentCacheQueryClient implements InteractionQueryClient {
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    public static final Path CACHE_PATH = Path.of("sets", "ppi_cache");
+    public static final Duration DEFAULT_TTL = Duration.ofDays(30);
+    public static final long DEFAULT_MAX_SIZE = 100L << 20;
+
+    private final InteractionQueryClient client;
+    private final Path directory;
+    private final Path root;
+    private final Duration ttl;
+    private final long maxSize;
+    // access ordered: least recently used entry first
+    private final LinkedHashMap<Path, Long> entries = new LinkedHashMap<>(1024, 0.75f, true);
+    private long size;
+    private int hits;
+    private int misses;
+
+    public PersistentCacheQueryClient(InteractionQueryClient client) {
+        this(client, CACHE_PATH, DEFAULT_TTL, DEFAULT_MAX_SIZE);
+    }
+
+    /**
+     * @param client client used on cache misses
+     * @param root cache directory, shared by all species and scores
+     * @param ttl time after which a network is fetched again
+     * @param maxSize maximum size of the cache in bytes
+     */
+    public PersistentCacheQueryClient(InteractionQueryClient client, Path root, Duration ttl, long maxSize) {
+        this.client = client;
+        this.root = root;
+        this.directory = root.resolve(String.valueOf(SpeciesHelper.get().getTaxonomyId()))
+                .resolve(String.valueOf(Args.getInstance().getStringDBScore()));
+        this.ttl = ttl;
+        this.maxSize = maxSize;
+        try {
+            Files.createDirectories(directory);
+            index();
+        } catch (IOException e) {
+            LOGGER.warn("Unable to use the PPI cache in {}: {}", root, e.getMessage());
+        }
+    }
+
+    /**
+     * Load the entries of the whole cache, oldest access first
+     */
+    private void index() throws IOException {
+        try (Stream<Path> stream = Files.walk(root)) {
+            List<Path> files = stream.filter(f -> f.toString().endsWith(".tsv")).collect(Collectors.toList());
+            Map<Path, FileTime> accessTimes = new HashMap<>();
+            for (Path file : files) {
+                accessTimes.put(file, Files.getLastModifiedTime(file));
+            }
+            files.sort(Comparator.comparing(accessTimes::get));
+            for (Path file : files) {
+                long length = Files.size(file);
+                entries.put(file, length);
+                size += length;
+            }
+        }
+        LOGGER.debug("PPI cache: {} entries, {} bytes", entries.size(), size);
+    }
+
+    @Override
+    public Map<String, String> getProteinNetwork(String symbol) throws IOException {
+        Map<String, String> network = read(symbol);
+        if (network != null)
+            return network;
+        network = client.getProteinNetwork(symbol);
+        write(symbol, network);
+        return network;
+    }
+
+    @Override
+    public Map<String, Map<String, String>> getProteinNetworks(Collection<String> symbols) throws InteractionQueryException {
+        Map<String, Map<String, String>> networks = new LinkedHashMap<>();
+        List<String> missing = new ArrayList<>();
+        for (String symbol : new LinkedHashSet<>(symbols)) {
+            Map<String, String> network = read(symbol);
+            if (network != null)
+                networks.put(symbol, network);
+            else
+                missing.add(symbol);
+        }
+        if (!missing.isEmpty()) {
+            try {
+                client.getProteinNetworks(missing).forEach((symbol, network) -> {
+                    write(symbol, network);
+                    networks.put(symbol, network);
+                });
+            } catch (InteractionQueryException e) {
+                // keep what was retrieved before the failure, failed networks are never written
+                e.getRetrieved().forEach(this::write);
+                throw e;
+            }
+        }
+        LOGGER.info("PPI cache: {} hits, {} misses", hits, misses);
+        return networks;
+    }
+
+    private Path file(String symbol) {
+        return directory.resolve(URLEncoder.encode(symbol.toUpperCase(), StandardCharsets.UTF_8) + ".tsv");
+    }
+
+    /**
+     * @return the cached network, or null if there is no valid entry
+     */
+    private Map<String, String> read(String symbol) {
+        Path file = file(symbol);
+        synchronized (this) {
+            if (!entries.containsKey(file)) {
+                misses++;
+                return null;
+            }
+        }
+        try {
+            List<String> lines = Files.readAllLines(file);
+            long fetched = Long.parseLong(lines.get(0));
+            if (System.currentTimeMillis() - fetched > ttl.toMillis()) {
+                LOGGER.debug("PPI cache entry expired: {}", symbol);
+                synchronized (this) {
+                    misses++;
+                }
+                return null;
+            }
+            Map<String, String> network = new HashMap<>(lines.size() * 2);
+            lines.stream().skip(1).map(l -> l.split("\t")).forEach(l -> network.put(l[0], l[1]));
+            Files.setLastModifiedTime(file, FileTime.fromMillis(System.currentTimeMillis()));
+            synchronized (this) {
+                entries.get(file);
+                hits++;
+            }
+            return network;
+        } catch (IOException | RuntimeException e) {
+            LOGGER.warn("Invalid PPI cache entry {}: {}", file, e.getMessage());
+            synchronized (this) {
+                misses++;
+            }
+            return null;
+        }
+    }
+
+    private void write(String symbol, Map<String, String> network) {
+        Path file = file(symbol);
+        try {
+            Path tmp = Files.createTempFile(directory, "ppi", ".tmp");
+            try (BufferedWriter bw = Files.newBufferedWriter(tmp)) {
+                bw.write(String.valueOf(System.currentTimeMillis()));
+                bw.newLine();
+                for (var e : network.entrySet()) {
+                    bw.write(e.getKey() + "\t" + e.getValue());
+                    bw.newLine();
+                }
+            }
+            Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            long length = Files.size(file);
+            synchronized (this) {
+                Long previous = entries.put(file, length);
+                size += length - (previous == null ? 0 : previous);
+                evict();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Unable to cache the PPI network of {}: {}", symbol, e.getMessage());
+        }
+    }
+
+    /**
+     * Remove least recently used entries until the cache fits its size limit
+     */
+    private void evict() throws IOException {
+        var iterator = entries.entrySet().iterator();
+        while (size > maxSize && iterator.hasNext()) {
+            var entry = iterator.next();
+            Files.deleteIfExists(entry.getKey());
+            size -= entry.getValue();
+            iterator.remove();
+        }
+    }
+}
@@ -3,22 +3,21 @@ package org.pmoi.business.ppi;
 
 import org.apache.logging.log4j.LogManager;
 import org.apache.logging.log4j.Logger;
-import org.jdom2.Document;
-import org.jdom2.Element;
-import org.jdom2.JDOMException;
-import org.jdom2.input.SAXBuilder;
 import org.pmoi.Args;
 import org.pmoi.database.SpeciesHelper;
 import org.pmoi.util.HttpConnector;
+import org.pmoi.util.HttpException;
+import org.pmoi.util.XMLStreams;
 
-import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
 import java.io.IOException;
-import java.net.HttpURLConnection;
+import java.io.InputStream;
 import java.net.URL;
-import java.net.URLConnection;
-import java.util.HashMap;
-import java.util.List;
-import java.util.Map;
+import java.net.URLEncoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
 
 /**
  * project FunctionalAnalysis
@@ -28,53 +27,227 @@ public class StringdbQueryClient implements InteractionQueryClient{
 
     private static final Logger LOGGER = LogManager.getRootLogger();
     private static final int TAXONOMY_ID = SpeciesHelper.get().getTaxonomyId();
+    private static final String STRINGDB_URL = "https://string-db.org/api";
+    // number of identifiers sent in a single request
+    static final int BATCH_SIZE = 100;
+
+    private final String baseUrl;
+    private final HttpConnector connector = new HttpConnector();
+
+    public StringdbQueryClient() {
+        this(STRINGDB_URL);
+    }
+
+    /**
+     * @param baseUrl StringDB API URL, without the output format
+     */
+    StringdbQueryClient(String baseUrl) {
+        this.baseUrl = baseUrl;
+    }
 
     /**
      * Returns a map representing the PPI network. Keys are gene names, values are interaction score
      * @param symbol gene name
      * @return map of [gene name : score]
+     * @throws IOException StringDB could not be reached, after retries
      */
     @Override
-    public Map<String, String> getProteinNetwork(String symbol) {
+    public Map<String, String> getProteinNetwork(String symbol) throws IOException {
         LOGGER.debug("Searching StringDB for gene {}", symbol);
-        String url = String.format("https://string-db.org/api/xml/interaction_partners?species=%d&required_score=%s&identifiers=%s",
-                TAXONOMY_ID, Args.getInstance().getStringDBScore(), symbol);
         Map<String, String> map = new HashMap<>();
-        // see if there is an entry in StringDB for the gene
-        URLConnection connection;
-        try {
-            connection = new URL(url).openConnection();
-            HttpURLConnection httpConnection = (HttpURLConnection) connection;
-            int responseCode = httpConnection.getResponseCode();
-            if (responseCode == 500) {
-                LOGGER.warn("No entry in StringDB for GENE:{}", symbol);
-                return map;
+        List<Interaction> records = query(List.of(symbol));
+        if (records == null) {
+            LOGGER.warn("No entry in StringDB for GENE:{}", symbol);
+            return map;
+        }
+        records.forEach(l -> map.put(l.target, l.score));
+        return map;
+    }
+
+    /**
+     * Query StringDB for several genes at once. Genes are sent by batches of {@value #BATCH_SIZE} and the response is
+     * split by query protein. Records come under the StringDB preferred name of the protein: when some of them don't
+     * match a queried name (e.g. an alias), the preferred names of the genes left without records are resolved in
+     * a single get_string_ids request
+     * @param symbols gene names
+     * @return map of [gene name : [interactor : score]]
+     * @throws InteractionQueryException StringDB could not be reached, after retries. The networks of the previous
+     * batches are kept in the exception
+     */
+    @Override
+    public Map<String, Map<String, String>> getProteinNetworks(Collection<String> symbols) throws InteractionQueryException {
+        List<String> queries = new ArrayList<>(new LinkedHashSet<>(symbols));
+        Map<String, Map<String, String>> networks = new LinkedHashMap<>();
+        for (int i = 0; i < queries.size(); i += BATCH_SIZE) {
+            List<String> batch = queries.subList(i, Math.min(i + BATCH_SIZE, queries.size()));
+            LOGGER.debug("Searching StringDB for {} genes", batch.size());
+            try {
+                List<Interaction> records = query(batch);
+                Map<String, String> queryNames = batch.stream()
+                        .collect(Collectors.toMap(String::toUpperCase, s -> s, (a, b) -> a));
+                // records of proteins queried under another name, by preferred name
+                Map<String, Map<String, String>> unmatched = new HashMap<>();
+                for (Interaction l : records == null ? List.<Interaction>of() : records) {
+                    String query = queryNames.get(l.source.toUpperCase());
+                    (query == null ? unmatched.computeIfAbsent(l.source.toUpperCase(), k -> new HashMap<>()) :
+                            networks.computeIfAbsent(query, k -> new HashMap<>())).put(l.target, l.score);
+                }
+                if (!unmatched.isEmpty()) {
+                    List<String> missing = batch.stream().filter(s -> !networks.containsKey(s)).collect(Collectors.toList());
+                    resolve(missing).forEach((query, name) -> {
+                        Map<String, String> network = unmatched.get(name.toUpperCase());
+                        if (network != null)
+                            networks.putIfAbsent(query, network);
+                    });
+                }
+            } catch (IOException e) {
+                throw new InteractionQueryException(String.format("StringDB data not retrieved for GENE:%s. %s",
+                        String.join(",", batch), e.getMessage()), networks, e);
             }
-        } catch (IOException ignored) {
-            // no need to handle the exception
+            batch.forEach(s -> networks.putIfAbsent(s, new HashMap<>()));
+        }
+        return networks;
+    }
+
+    /**
+     * Send a get_string_ids request
+     * @param identifiers gene names
+     * @return map of [gene name : StringDB preferred name], without the unknown genes
+     * @throws IOException StringDB could not be reached or answered an error, after retries
+     */
+    private Map<String, String> resolve(List<String> identifiers) throws IOException {
+        String url = String.format("%s/xml/get_string_ids?species=%d&limit=1&identifiers=%s", baseUrl, TAXONOMY_ID,
+                identifiers.stream().map(s -> URLEncoder.encode(s, StandardCharsets.UTF_8)).collect(Collectors.joining("%0d")));
+        Map<Integer, String> names;
+        try {
+            names = connector.get(new URL(url), StringdbQueryClient::parseStringIds);
+        } catch (HttpException e) {
+            // none of the identifiers is known
+            if (e.getStatusCode() == 500)
+                return Map.of();
+            throw new IOException(e.getMessage(), e);
         }
+        Map<String, String> preferredNames = new HashMap<>();
+        names.forEach((index, name) -> {
+            if (index >= 0 && index < identifiers.size())
+                preferredNames.putIfAbsent(identifiers.get(index), name);
+        });
+        return preferredNames;
+    }
 
-        int count = 0;
+    /**
+     * Send an interaction_partners request
+     * @param identifiers gene names
+     * @return interaction records, or null if StringDB has no entry for the genes
+     * @throws IOException StringDB could not be reached or answered an error, after retries
+     */
+    private List<Interaction> query(List<String> identifiers) throws IOException {
+        String url = String.format("%s/xml/interaction_partners?species=%d&required_score=%s&identifiers=%s",
+                baseUrl, TAXONOMY_ID, Args.getInstance().getStringDBScore(),
+                identifiers.stream().map(s -> URLEncoder.encode(s, StandardCharsets.UTF_8)).collect(Collectors.joining("%0d")));
+        try {
+            return connector.get(new URL(url), StringdbQueryClient::parseInteractions);
+        } catch (HttpException e) {
+            // StringDB answers 500 when none of the identifiers is known
+            if (e.getStatusCode() == 500)
+                return null;
+            throw new IOException(e.getMessage(), e);
+        }
+    }
 
-        while (true) {
-            try {
-                SAXBuilder saxBuilder = new SAXBuilder();
-                saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
-                saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
-                Document document = saxBuilder.build(url);
-                List<Element> el = document.getRootElement().getChildren();
-                if (el != null && !el.isEmpty()) {
-                    el.forEach(l -> map.put(l.getChildText("preferredName_B"), l.getChildText("score")));
+    /**
+     * Stream an interaction_partners XML response, keeping only the fields in use
+     * @param in response body
+     * @return interaction records
+     * @throws IOException malformed response
+     */
+    static List<Interaction> parseInteractions(InputStream in) throws IOException {
+        XMLStreamReader reader = XMLStreams.createReader(in);
+        List<Interaction> records = new ArrayList<>();
+        try {
+            int depth = 0;
+            String source = null;
+            String target = null;
+            String score = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    // root > record > field
+                    if (++depth == 3) {
+                        switch (reader.getLocalName()) {
+                            case "preferredName_A" -> source = reader.getElementText();
+                            case "preferredName_B" -> target = reader.getElementText();
+                            case "score" -> score = reader.getElementText();
+                            default -> {
+                                continue;
+                            }
+                        }
+                        depth--;
+                    }
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    if (depth-- == 2) {
+                        records.add(new Interaction(source, target, score));
+                        source = target = score = null;
+                    }
                 }
-                return map;
-            } catch (JDOMException | IOException e) {
-                LOGGER.warn(String.format("Network I/O error while connecting to StringDB. GENE:%s. Retrying ... (%d/%d)",
-                        symbol, ++count, HttpConnector.MAX_TRIES));
-                if (count == HttpConnector.MAX_TRIES) {
-                    LOGGER.error(String.format("StringDB data not retrieved for GENE:%s", symbol));
-                    return map;
+            }
+            reader.close();
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+        return records;
+    }
+
+    /**
+     * Stream a get_string_ids XML response
+     * @param in response body
+     * @return map of [query index : preferred name]
+     * @throws IOException malformed response
+     */
+    static Map<Integer, String> parseStringIds(InputStream in) throws IOException {
+        XMLStreamReader reader = XMLStreams.createReader(in);
+        Map<Integer, String> names = new HashMap<>();
+        try {
+            int depth = 0;
+            String index = null;
+            String name = null;
+            while (reader.hasNext()) {
+                int event = reader.next();
+                if (event == XMLStreamReader.START_ELEMENT) {
+                    if (++depth == 3) {
+                        switch (reader.getLocalName()) {
+                            case "queryIndex" -> index = reader.getElementText();
+                            case "preferredName" -> name = reader.getElementText();
+                            default -> {
+                                continue;
+                            }
+                        }
+                        depth--;
+                    }
+                } else if (event == XMLStreamReader.END_ELEMENT) {
+                    if (depth-- == 2) {
+                        if (index != null && name != null)
+                            names.putIfAbsent(Integer.parseInt(index.trim()), name);
+                        index = name = null;
+                    }
                 }
             }
+            reader.close();
+        } catch (XMLStreamException | NumberFormatException e) {
+            throw new IOException(e);
+        }
+        return names;
+    }
+
+    static class Interaction {
+        final String source;
+        final String target;
+        final String score;
+
+        Interaction(String source, String target, String score) {
+            this.source = source;
+            this.target = target;
+            this.score = score;
         }
     }
 }
@@ -0,0 +1,59 @@
+package org.pmoi.database;
+
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Species wide dictionary assigning a dense int ID to each gene symbol (case insensitive, whatever the locale).
+ * Official symbols are registered first by {@link GeneMapper}, names that are not in gene_info (e.g. from pathway
+ * databases) get the next free ID the first time they are seen. IDs are only valid for the current run.
+ */
+public class GeneDictionary {
+
+    public static final int NO_ID = -1;
+
+    private static GeneDictionary instance;
+
+    private final Map<String, Integer> internalDB = new ConcurrentHashMap<>(1 << 17);
+    private final AtomicInteger nextId = new AtomicInteger();
+
+    private GeneDictionary() {
+    }
+
+    public static synchronized GeneDictionary getInstance() {
+        if (instance == null)
+            instance = new GeneDictionary();
+        return instance;
+    }
+
+    /**
+     * Get the ID of a gene symbol, assigning a new one if needed
+     * @param symbol gene symbol
+     * @return gene ID, or {@link #NO_ID} if the symbol is null
+     */
+    public int intern(String symbol) {
+        if (symbol == null)
+            return NO_ID;
+        return internalDB.computeIfAbsent(symbol.toUpperCase(Locale.ROOT), k -> nextId.getAndIncrement());
+    }
+
+    /**
+     * Get the ID of a gene symbol without registering it
+     * @param symbol gene symbol
+     * @return gene ID, or {@link #NO_ID} if the symbol has never been seen
+     */
+    public int find(String symbol) {
+        if (symbol == null)
+            return NO_ID;
+        return internalDB.getOrDefault(symbol.toUpperCase(Locale.ROOT), NO_ID);
+    }
+
+    /**
+     * @return number of IDs given so far. IDs range from 0 to size - 1
+     */
+    public int size() {
+        return nextId.get();
+    }
+}
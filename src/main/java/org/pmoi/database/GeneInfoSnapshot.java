@@ -0,0 +1,435 @@
+package org.pmoi.database;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.*;
+import java.util.stream.Stream;
+
+/**
+ * Read only, memory mapped view of a gene_info file.
+ * <p>
+ * The snapshot is made of a header, a table of fixed width gene records, a synonym table, three open addressing
+ * hash indexes (gene ID, upper-cased symbol and upper-cased alias) and a pool holding every distinct string once.
+ * All references between sections are int offsets, so nothing has to be parsed or copied when the file is opened.
+ * The header keeps a fingerprint of the gene_info source, so a snapshot built from another release can be detected.
+ */
+public class GeneInfoSnapshot {
+
+    static final int MAGIC = 0x474E4649;
+    static final int VERSION = 2;
+
+    private static final int HEADER_SIZE = 56;
+    // record layout: id, symbol, description, first synonym, synonym count
+    private static final int RECORD_INTS = 5;
+    // index key layout: key string, first posting, posting count
+    private static final int KEY_INTS = 3;
+    private static final int EMPTY = -1;
+
+    private final ByteBuffer buffer;
+    private final int size;
+    private final int recordsOffset;
+    private final int synonymsOffset;
+    private final int poolOffset;
+    private final Index idIndex;
+    private final Index symbolIndex;
+    private final Index aliasIndex;
+
+    private GeneInfoSnapshot(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC)
+            throw new IOException("Not a gene info snapshot");
+        if (buffer.getInt(4) != VERSION)
+            throw new IOException("Unsupported gene info snapshot version " + buffer.getInt(4));
+        this.size = buffer.getInt(16);
+        this.recordsOffset = buffer.getInt(20);
+        this.synonymsOffset = buffer.getInt(24);
+        this.idIndex = new Index(buffer.getInt(28));
+        this.symbolIndex = new Index(buffer.getInt(32));
+        this.aliasIndex = new Index(buffer.getInt(36));
+        this.poolOffset = buffer.getInt(40);
+    }
+
+    /**
+     * Map a snapshot file into memory
+     * @param path snapshot file
+     * @return snapshot
+     * @throws IOException the file can't be read or isn't a valid snapshot
+     */
+    public static GeneInfoSnapshot open(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            MappedByteBuffer buffer = channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size());
+            return new GeneInfoSnapshot(buffer);
+        }
+    }
+
+    /**
+     * Convert gene_info lines into a snapshot file. The file is written next to the target then moved in place
+     * @param lines content of a gene_info file
+     * @param taxonomyId species taxonomy ID, stored for information
+     * @param sourceFingerprint fingerprint of the gene_info source, 0 if unknown
+     * @param target snapshot file
+     * @throws IOException unable to write the file
+     */
+    public static void write(Stream<String> lines, int taxonomyId, long sourceFingerprint, Path target)
+            throws IOException {
+        Builder builder = new Builder();
+        lines.dropWhile(l -> l.startsWith("#")).forEach(builder::add);
+        Path tmp = Files.createTempFile(target.toAbsolutePath().getParent(), "gene_info", ".tmp");
+        try {
+            Files.write(tmp, builder.toBytes(taxonomyId, sourceFingerprint));
+            Files.move(tmp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        } finally {
+            Files.deleteIfExists(tmp);
+        }
+    }
+
+    /**
+     * @return number of genes in the snapshot
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return creation time of the snapshot, in milliseconds since epoch
+     */
+    public long getCreationTime() {
+        return buffer.getLong(8);
+    }
+
+    /**
+     * @return species taxonomy ID
+     */
+    public int getTaxonomyId() {
+        return buffer.getInt(44);
+    }
+
+    /**
+     * @return fingerprint of the gene_info source the snapshot was built from, 0 if unknown
+     */
+    public long getSourceFingerprint() {
+        return buffer.getLong(48);
+    }
+
+    public String getId(int gene) {
+        return string(record(gene, 0));
+    }
+
+    public String getSymbol(int gene) {
+        return string(record(gene, 1));
+    }
+
+    public String getDescription(int gene) {
+        return string(record(gene, 2));
+    }
+
+    public List<String> getSynonyms(int gene) {
+        int first = record(gene, 3);
+        int count = record(gene, 4);
+        if (count == 0)
+            return Collections.emptyList();
+        String[] synonyms = new String[count];
+        for (int i = 0; i < count; i++) {
+            synonyms[i] = string(buffer.getInt(synonymsOffset + (first + i) * Integer.BYTES));
+        }
+        return Arrays.asList(synonyms);
+    }
+
+    /**
+     * @param id gene ID
+     * @return gene index or -1
+     */
+    public int findById(String id) {
+        int[] genes = idIndex.find(id, false);
+        return genes.length == 0 ? EMPTY : genes[0];
+    }
+
+    /**
+     * @param symbol gene symbol, case insensitive
+     * @return gene index or -1
+     */
+    public int findBySymbol(String symbol) {
+        int[] genes = symbolIndex.find(symbol, true);
+        return genes.length == 0 ? EMPTY : genes[0];
+    }
+
+    /**
+     * @param alias gene alias, case insensitive
+     * @return indexes of the genes having this alias, in file order
+     */
+    public int[] findByAlias(String alias) {
+        return aliasIndex.find(alias, true);
+    }
+
+    private int record(int gene, int field) {
+        return buffer.getInt(recordsOffset + (gene * RECORD_INTS + field) * Integer.BYTES);
+    }
+
+    private String string(int ref) {
+        int position = poolOffset + ref;
+        int length = Short.toUnsignedInt(buffer.getShort(position));
+        byte[] bytes = new byte[length];
+        buffer.get(position + Short.BYTES, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    private static int hash(String key, boolean ignoreCase) {
+        int h = (ignoreCase ? key.toUpperCase() : key).hashCode();
+        return h ^ (h >>> 16);
+    }
+
+    /**
+     * Open addressing hash table stored in the mapped buffer. Layout: slot count (power of 2), key count,
+     * posting count, slots, keys, postings
+     */
+    private class Index {
+        private final int slotCount;
+        private final int slotsOffset;
+        private final int keysOffset;
+        private final int postingsOffset;
+
+        Index(int offset) {
+            this.slotCount = buffer.getInt(offset);
+            int keyCount = buffer.getInt(offset + 4);
+            this.slotsOffset = offset + 12;
+            this.keysOffset = slotsOffset + slotCount * Integer.BYTES;
+            this.postingsOffset = keysOffset + keyCount * KEY_INTS * Integer.BYTES;
+        }
+
+        int[] find(String key, boolean ignoreCase) {
+            int mask = slotCount - 1;
+            for (int slot = hash(key, ignoreCase) & mask; ; slot = (slot + 1) & mask) {
+                int entry = buffer.getInt(slotsOffset + slot * Integer.BYTES);
+                if (entry == EMPTY)
+                    return new int[0];
+                int base = keysOffset + entry * KEY_INTS * Integer.BYTES;
+                String candidate = string(buffer.getInt(base));
+                if (ignoreCase ? candidate.equalsIgnoreCase(key) : candidate.equals(key)) {
+                    int first = buffer.getInt(base + Integer.BYTES);
+                    int[] genes = new int[buffer.getInt(base + 2 * Integer.BYTES)];
+                    for (int i = 0; i < genes.length; i++) {
+                        genes[i] = buffer.getInt(postingsOffset + (first + i) * Integer.BYTES);
+                    }
+                    return genes;
+                }
+            }
+        }
+    }
+
+    /**
+     * Accumulates gene_info records and lays them out in the snapshot format
+     */
+    private static class Builder {
+        private final Map<String, Integer> pool = new HashMap<>();
+        private final ByteArrayBuilder poolBytes = new ByteArrayBuilder();
+        private final IntArrayBuilder records = new IntArrayBuilder();
+        private final IntArrayBuilder synonyms = new IntArrayBuilder();
+        private final IndexBuilder idIndex = new IndexBuilder(false, true);
+        private final IndexBuilder symbolIndex = new IndexBuilder(true, true);
+        private final IndexBuilder aliasIndex = new IndexBuilder(true, false);
+        private int size;
+
+        void add(String line) {
+            int pos = line.indexOf('\t') + 1;
+            int end = line.indexOf('\t', pos);
+            String id = line.substring(pos, end);
+            pos = end + 1;
+            end = line.indexOf('\t', pos);
+            String symbol = line.substring(pos, end);
+            pos = end + 1;
+            end = line.indexOf('\t', pos);
+            pos = end + 1;
+            end = line.indexOf('\t', pos);
+            String synonymField = line.substring(pos, end);
+            for (int i = 0; i < 4; i++) {
+                pos = end + 1;
+                end = line.indexOf('\t', pos);
+            }
+            String description = line.substring(pos, end);
+
+            int gene = size++;
+            records.add(intern(id));
+            records.add(intern(symbol));
+            records.add(intern(description));
+            records.add(synonyms.size());
+            if (synonymField.equals("-")) {
+                records.add(0);
+            } else {
+                String[] names = synonymField.split("\\|");
+                records.add(names.length);
+                for (String name : names) {
+                    synonyms.add(intern(name));
+                    aliasIndex.add(name, intern(name), gene);
+                }
+            }
+            idIndex.add(id, intern(id), gene);
+            symbolIndex.add(symbol, intern(symbol), gene);
+        }
+
+        private int intern(String value) {
+            return pool.computeIfAbsent(value, k -> {
+                byte[] bytes = k.getBytes(StandardCharsets.UTF_8);
+                if (bytes.length > 0xFFFF)
+                    throw new UncheckedIOException(new IOException("gene_info field too long: " + bytes.length));
+                int ref = poolBytes.size();
+                poolBytes.addShort(bytes.length);
+                poolBytes.add(bytes);
+                return ref;
+            });
+        }
+
+        byte[] toBytes(int taxonomyId, long sourceFingerprint) {
+            int recordsOffset = HEADER_SIZE;
+            int synonymsOffset = recordsOffset + records.size() * Integer.BYTES;
+            int idOffset = synonymsOffset + synonyms.size() * Integer.BYTES;
+            int symbolOffset = idOffset + idIndex.byteSize();
+            int aliasOffset = symbolOffset + symbolIndex.byteSize();
+            int poolOffset = aliasOffset + aliasIndex.byteSize();
+            ByteBuffer out = ByteBuffer.allocate(poolOffset + poolBytes.size());
+            out.putInt(MAGIC).putInt(VERSION).putLong(System.currentTimeMillis()).putInt(size)
+                    .putInt(recordsOffset).putInt(synonymsOffset)
+                    .putInt(idOffset).putInt(symbolOffset).putInt(aliasOffset).putInt(poolOffset)
+                    .putInt(taxonomyId).putLong(sourceFingerprint);
+            records.writeTo(out.position(recordsOffset));
+            synonyms.writeTo(out);
+            idIndex.writeTo(out);
+            symbolIndex.writeTo(out);
+            aliasIndex.writeTo(out);
+            out.put(poolBytes.toArray());
+            return out.array();
+        }
+    }
+
+    /**
+     * Groups genes by key and lays them out as an open addressing table
+     */
+    private static class IndexBuilder {
+        private final boolean ignoreCase;
+        private final boolean firstOnly;
+        // key -> [key ref, genes ...]
+        private final Map<String, IntArrayBuilder> entries = new LinkedHashMap<>();
+        private int postings;
+
+        IndexBuilder(boolean ignoreCase, boolean firstOnly) {
+            this.ignoreCase = ignoreCase;
+            this.firstOnly = firstOnly;
+        }
+
+        void add(String key, int keyRef, int gene) {
+            var genes = entries.computeIfAbsent(ignoreCase ? key.toUpperCase() : key, k -> {
+                IntArrayBuilder values = new IntArrayBuilder();
+                values.add(keyRef);
+                return values;
+            });
+            if (firstOnly && genes.size() > 1)
+                return;
+            genes.add(gene);
+            postings++;
+        }
+
+        private int slotCount() {
+            // load factor <= 0.5 keeps probe sequences short
+            return Integer.highestOneBit(Math.max(entries.size(), 1) * 2 - 1) << 1;
+        }
+
+        int byteSize() {
+            return (3 + slotCount() + entries.size() * KEY_INTS + postings) * Integer.BYTES;
+        }
+
+        void writeTo(ByteBuffer out) {
+            int slotCount = slotCount();
+            int mask = slotCount - 1;
+            int[] slots = new int[slotCount];
+            Arrays.fill(slots, EMPTY);
+            out.putInt(slotCount).putInt(entries.size()).putInt(postings);
+            int slotsPosition = out.position();
+            out.position(slotsPosition + slotCount * Integer.BYTES);
+            int key = 0;
+            int first = 0;
+            for (var entry : entries.entrySet()) {
+                int slot = hash(entry.getKey(), false) & mask;
+                while (slots[slot] != EMPTY) {
+                    slot = (slot + 1) & mask;
+                }
+                slots[slot] = key++;
+                IntArrayBuilder genes = entry.getValue();
+                out.putInt(genes.get(0)).putInt(first).putInt(genes.size() - 1);
+                first += genes.size() - 1;
+            }
+            for (var genes : entries.values()) {
+                for (int i = 1; i < genes.size(); i++) {
+                    out.putInt(genes.get(i));
+                }
+            }
+            int end = out.position();
+            out.position(slotsPosition);
+            for (int slot : slots) {
+                out.putInt(slot);
+            }
+            out.position(end);
+        }
+    }
+
+    private static class IntArrayBuilder {
+        private int[] values = new int[4];
+        private int size;
+
+        void add(int value) {
+            if (size == values.length)
+                values = Arrays.copyOf(values, size * 2);
+            values[size++] = value;
+        }
+
+        int get(int index) {
+            return values[index];
+        }
+
+        int size() {
+            return size;
+        }
+
+        void writeTo(ByteBuffer out) {
+            for (int i = 0; i < size; i++) {
+                out.putInt(values[i]);
+            }
+        }
+    }
+
+    private static class ByteArrayBuilder {
+        private byte[] bytes = new byte[1 << 16];
+        private int size;
+
+        void addShort(int value) {
+            ensureCapacity(Short.BYTES);
+            bytes[size++] = (byte) (value >>> 8);
+            bytes[size++] = (byte) value;
+        }
+
+        void add(byte[] values) {
+            ensureCapacity(values.length);
+            System.arraycopy(values, 0, bytes, size, values.length);
+            size += values.length;
+        }
+
+        private void ensureCapacity(int extra) {
+            if (size + extra > bytes.length)
+                bytes = Arrays.copyOf(bytes, Math.max(bytes.length * 2, size + extra));
+        }
+
+        int size() {
+            return size;
+        }
+
+        byte[] toArray() {
+            return Arrays.copyOf(bytes, size);
+        }
+    }
+}
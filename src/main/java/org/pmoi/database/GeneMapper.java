@@ -6,15 +6,14 @@ import org.pmoi.Args;
 import org.pmoi.util.GZIPFile;
 
 import java.io.*;
+import java.net.URL;
+import java.net.URLConnection;
 import java.nio.channels.Channels;
 import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.util.Arrays;
-import java.util.Collections;
-import java.util.List;
-import java.util.Optional;
-import java.util.stream.Collectors;
+import java.util.*;
+import java.util.stream.Stream;
 
 /**
  * Utility class used to convert between gene symbol and gene ID
@@ -25,14 +24,30 @@ public class GeneMapper {
 
     private static GeneMapper instance;
 
-    private List<GeneInfo> internalDB;
+    private static final String DB_PATH = "sets/";
+    private static final String DB_GENE_INFO = "gene_info." + Args.getInstance().getSpecies() + ".bin";
+    private static final String BUNDLED_GENE_INFO = "/Homo_sapiens.gene_info";
+
+    private GeneInfoSnapshot internalDB;
 
     private GeneMapper() {
         LOGGER.debug("initializing gene mapper DB");
         init();
+        registerSymbols();
         LOGGER.debug("initializing gene mapper DB done. size: {}", internalDB.size());
     }
 
+    /**
+     * Build a mapper from gene_info lines. The snapshot is written to a temporary file
+     * @param lines content of a gene_info file
+     */
+    GeneMapper(Stream<String> lines) throws IOException {
+        Path tmpFile = Files.createTempFile("gene_info", ".bin");
+        tmpFile.toFile().deleteOnExit();
+        GeneInfoSnapshot.write(lines, 0, 0, tmpFile);
+        internalDB = GeneInfoSnapshot.open(tmpFile);
+    }
+
     public static synchronized GeneMapper getInstance() {
         if (instance == null) {
             instance = new GeneMapper();
@@ -40,36 +55,137 @@ public class GeneMapper {
         return instance;
     }
 
+    /**
+     * Map the gene info snapshot from the sets folder. The snapshot is (re)built from gene_info when it's missing,
+     * has an older format, was built from another release of the bundled gene_info or when a refresh is requested.
+     * Snapshots of downloaded species are only rebuilt on request, since checking NCBI would need network access
+     */
     private void init() {
+        Path snapshot = Path.of(DB_PATH + DB_GENE_INFO);
+        long fingerprint = sourceFingerprint();
+        if (Files.exists(snapshot) && !Args.getInstance().refreshGeneInfo()) {
+            try {
+                internalDB = GeneInfoSnapshot.open(snapshot);
+                if (isCurrent(internalDB, fingerprint))
+                    return;
+                LOGGER.info("{} was built from another gene_info release. Rebuilding it ...", snapshot);
+            } catch (IOException e) {
+                LOGGER.warn("Unable to use {}: {}. Rebuilding it ...", snapshot, e.getMessage());
+            }
+        }
+        try {
+            Files.createDirectories(snapshot.getParent());
+        } catch (IOException e) {
+            LOGGER.warn("Can't create directory '{}'! Using a temporary file", DB_PATH);
+            try {
+                snapshot = Files.createTempFile(null, null);
+                snapshot.toFile().deleteOnExit();
+            } catch (IOException ex) {
+                LOGGER.error("Failed to initialize gene_info_db");
+                System.exit(1);
+            }
+        }
+        buildSnapshot(snapshot, fingerprint);
+        try {
+            internalDB = GeneInfoSnapshot.open(snapshot);
+        } catch (IOException e) {
+            LOGGER.error("Failed to initialize gene_info_db");
+            System.exit(1);
+        }
+    }
+
+    /**
+     * @param snapshot gene info snapshot
+     * @param fingerprint fingerprint of the current gene_info source, 0 if unknown
+     * @return true if the snapshot was built from this source
+     */
+    static boolean isCurrent(GeneInfoSnapshot snapshot, long fingerprint) {
+        return fingerprint == 0 || snapshot.getSourceFingerprint() == fingerprint;
+    }
+
+    /**
+     * @return fingerprint of the bundled gene_info for human, 0 for downloaded species
+     */
+    private long sourceFingerprint() {
+        if (!Args.getInstance().getSpecies().equals(SupportedSpecies.HUMAN))
+            return 0;
+        URL resource = getClass().getResource(BUNDLED_GENE_INFO);
+        if (resource == null)
+            return 0;
+        try {
+            return fingerprint(resource);
+        } catch (IOException e) {
+            LOGGER.warn("Unable to check {}: {}", BUNDLED_GENE_INFO, e.getMessage());
+            return 0;
+        }
+    }
+
+    /**
+     * Fingerprint a gene_info source from its size and modification time, without reading it
+     * @param source gene_info file or resource
+     * @return fingerprint, 0 if neither is known
+     * @throws IOException unable to reach the source
+     */
+    static long fingerprint(URL source) throws IOException {
+        URLConnection connection = source.openConnection();
+        try {
+            long size = connection.getContentLengthLong();
+            long modified = connection.getLastModified();
+            if (size < 0 && modified == 0)
+                return 0;
+            long fingerprint = 31 * size + modified;
+            return fingerprint == 0 ? 1 : fingerprint;
+        } finally {
+            // connecting to a file or jar entry opens it
+            connection.getInputStream().close();
+        }
+    }
+
+    /**
+     * Give official gene symbols the first IDs in the gene dictionary
+     */
+    private void registerSymbols() {
+        GeneDictionary dictionary = GeneDictionary.getInstance();
+        for (int i = 0; i < internalDB.size(); i++) {
+            dictionary.intern(internalDB.getSymbol(i));
+        }
+    }
+
+    /**
+     * Convert gene_info into a snapshot. Human data is bundled with the tool, other species are downloaded from NCBI
+     * @param snapshot snapshot file
+     * @param fingerprint fingerprint of the gene_info source
+     */
+    private void buildSnapshot(Path snapshot, long fingerprint) {
+        Species species = SpeciesHelper.get();
         if (Args.getInstance().getSpecies().equals(SupportedSpecies.HUMAN)) {
-            try (InputStream in = getClass().getResourceAsStream("/Homo_sapiens.gene_info")) {
+            LOGGER.info("Building gene info snapshot for {}", species.getName());
+            try (InputStream in = getClass().getResourceAsStream(BUNDLED_GENE_INFO)) {
+                if (in == null)
+                    throw new IOException("File not found");
                 BufferedReader br = new BufferedReader(new InputStreamReader(in));
-                var stream = br.lines();
-                // the Gene class used here is the private inner class
-                internalDB = stream.dropWhile(l -> l.startsWith("#")).map(GeneInfo::new).collect(Collectors.toList());
+                GeneInfoSnapshot.write(br.lines(), species.getTaxonomyId(), fingerprint, snapshot);
             } catch (IOException e) {
                 LOGGER.error("Failed to initialize gene_info_db");
                 System.exit(1);
             }
         } else {
-            Species species = SpeciesHelper.get();
             LOGGER.info("Downloading gene info file for {}", species.getName());
             try (ReadableByteChannel readableByteChannel = Channels.newChannel(species.getUrl().openStream())){
                 Path tmpFile = Files.createTempFile(null, null);
                 tmpFile.toFile().deleteOnExit();
-                FileOutputStream fileOutputStream  = new FileOutputStream(tmpFile.toFile());
-                fileOutputStream.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
-
+                try (FileOutputStream fileOutputStream = new FileOutputStream(tmpFile.toFile())) {
+                    fileOutputStream.getChannel().transferFrom(readableByteChannel, 0, Long.MAX_VALUE);
+                }
                 try (var stream = GZIPFile.lines(tmpFile)){
-                    internalDB = stream.dropWhile(l -> l.startsWith("#")).map(GeneInfo::new).collect(Collectors.toList());
+                    GeneInfoSnapshot.write(stream, species.getTaxonomyId(), fingerprint, snapshot);
                 }
-                fileOutputStream.close();
+                Files.deleteIfExists(tmpFile);
             } catch (IOException e) {
                 LOGGER.error("Unable to get gene info file from server");
                 System.exit(1);
             }
         }
-
     }
 
     /**
@@ -78,7 +194,8 @@ public class GeneMapper {
      * @return gene symbol
      */
     public Optional<String> getSymbol(String id) {
-        return internalDB.parallelStream().filter(e -> e.id.equals(id)).findAny().map(e -> e.symbol);
+        int gene = internalDB.findById(id);
+        return gene < 0 ? Optional.empty() : Optional.of(internalDB.getSymbol(gene));
     }
 
     /**
@@ -87,8 +204,10 @@ public class GeneMapper {
      * @return list of aliases
      */
     public List<String> getAliases(String symbol) {
-        var result = internalDB.parallelStream().filter(e -> e.symbol.equals(symbol)).findAny();
-        return result.map(e -> e.synonyms).orElse(Collections.emptyList());
+        int gene = internalDB.findBySymbol(symbol);
+        if (gene < 0 || !internalDB.getSymbol(gene).equals(symbol))
+            return Collections.emptyList();
+        return internalDB.getSynonyms(gene);
     }
 
     /**
@@ -97,11 +216,8 @@ public class GeneMapper {
      * @return an optional containing gene symbol
      */
     public Optional<String> getSymbolFromAlias(String alias) {
-        var result = internalDB.parallelStream().filter(e -> e.symbol.equalsIgnoreCase(alias)).findAny();
-        if (result.isPresent())
-            return result.map(gene -> gene.symbol);
-        return internalDB.parallelStream()
-                .filter(e -> e.synonyms.contains(alias.toUpperCase())).findAny().map(e -> e.symbol);
+        int gene = findGene(alias);
+        return gene < 0 ? Optional.empty() : Optional.of(internalDB.getSymbol(gene));
     }
 
     /**
@@ -111,12 +227,13 @@ public class GeneMapper {
      * @return an optional containing gene symbol
      */
     public Optional<String> getSymbolFromAlias(String alias, String displayName) {
-        var result = internalDB.parallelStream().filter(e -> e.symbol.equalsIgnoreCase(alias)).findAny();
-        if (result.isPresent())
-            return result.map(gene -> gene.symbol);
-        return internalDB.parallelStream()
-                .filter(e -> e.synonyms.stream().anyMatch(alias::equalsIgnoreCase) && displayName.contains(e.symbol))
-                .findAny().map(e -> e.symbol);
+        int gene = internalDB.findBySymbol(alias);
+        if (gene >= 0)
+            return Optional.of(internalDB.getSymbol(gene));
+        return Arrays.stream(internalDB.findByAlias(alias))
+                .mapToObj(internalDB::getSymbol)
+                .filter(displayName::contains)
+                .findFirst();
     }
 
     /**
@@ -125,10 +242,8 @@ public class GeneMapper {
      * @return gene ID
      */
     public Optional<String> getId(String symbol) {
-        var result = internalDB.parallelStream().filter(e -> e.symbol.equalsIgnoreCase(symbol)).findAny().map(e -> e.id);
-        if (result.isPresent())
-            return result;
-        return internalDB.parallelStream().filter(e -> e.synonyms.contains(symbol.toUpperCase())).findAny().map(e -> e.id);
+        int gene = findGene(symbol);
+        return gene < 0 ? Optional.empty() : Optional.of(internalDB.getId(gene));
     }
 
     /**
@@ -137,32 +252,68 @@ public class GeneMapper {
      * @return gene description
      */
     public Optional<String> getDescription(String id) {
-        return internalDB.parallelStream().filter(e -> e.id.equals(id)).findAny().map(e -> e.description);
-    }
-
-    private static class GeneInfo {
-        private final String id;
-        private final String symbol;
-        private final String description;
-        private final List<String> synonyms;
-
-        public GeneInfo(String line) {
-            int pos = line.indexOf('\t') + 1;
-            int end = line.indexOf('\t', pos);
-            this.id = line.substring(pos, end);
-            pos = end + 1;
-            end = line.indexOf('\t', pos);
-            this.symbol = line.substring(pos, end);
-            pos = end + 1;
-            end = line.indexOf('\t', pos);
-            pos = end + 1;
-            end = line.indexOf('\t', pos);
-            this.synonyms = line.substring(pos, end).equals("-") ? Collections.emptyList() : Arrays.asList(line.substring(pos, end).split("\\|"));
-            for (int i = 0; i < 4; i++) {
-                pos = end + 1;
-                end = line.indexOf('\t', pos);
-            }
-            this.description = line.substring(pos, end);
+        int gene = internalDB.findById(id);
+        return gene < 0 ? Optional.empty() : Optional.of(internalDB.getDescription(gene));
+    }
+
+    /**
+     * Resolve a collection of gene symbols (or aliases) in one pass
+     * @param symbols gene symbols
+     * @return resolution table. Keys are the supplied symbols, symbols that can't be resolved are left out
+     */
+    public Map<String, GeneResolution> resolveSymbols(Collection<String> symbols) {
+        Map<String, GeneResolution> table = new HashMap<>(symbols.size() * 2);
+        for (String symbol : symbols) {
+            if (symbol == null || table.containsKey(symbol))
+                continue;
+            int gene = internalDB.findBySymbol(symbol);
+            boolean alias = gene < 0;
+            if (alias)
+                gene = findAlias(symbol);
+            if (gene >= 0)
+                table.put(symbol, new GeneResolution(symbol, internalDB.getSymbol(gene), internalDB.getId(gene), alias));
+        }
+        return table;
+    }
+
+    /**
+     * Resolve a collection of gene IDs in one pass
+     * @param ids gene IDs
+     * @return resolution table. Keys are the supplied IDs, IDs that can't be resolved are left out
+     */
+    public Map<String, GeneResolution> resolveIds(Collection<String> ids) {
+        Map<String, GeneResolution> table = new HashMap<>(ids.size() * 2);
+        for (String id : ids) {
+            if (id == null || table.containsKey(id))
+                continue;
+            int gene = internalDB.findById(id);
+            if (gene >= 0)
+                table.put(id, new GeneResolution(id, internalDB.getSymbol(gene), internalDB.getId(gene), false));
+        }
+        return table;
+    }
+
+    /**
+     * Look for a gene by symbol (case insensitive), then by alias
+     * @param name gene symbol or alias
+     * @return gene index in the snapshot or -1
+     */
+    private int findGene(String name) {
+        int gene = internalDB.findBySymbol(name);
+        return gene >= 0 ? gene : findAlias(name);
+    }
+
+    /**
+     * Look for a gene by alias. Aliases only match when they are written in upper case in gene_info
+     * @param name gene alias
+     * @return gene index in the snapshot or -1
+     */
+    private int findAlias(String name) {
+        String key = name.toUpperCase();
+        for (int candidate : internalDB.findByAlias(name)) {
+            if (internalDB.getSynonyms(candidate).contains(key))
+                return candidate;
         }
+        return -1;
     }
 }
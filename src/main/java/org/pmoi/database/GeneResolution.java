@@ -0,0 +1,51 @@
+package org.pmoi.database;
+
+/**
+ * Result of resolving a gene symbol, alias or ID against gene_info
+ */
+public class GeneResolution {
+    private final String query;
+    private final String symbol;
+    private final String id;
+    private final boolean alias;
+
+    GeneResolution(String query, String symbol, String id, boolean alias) {
+        this.query = query;
+        this.symbol = symbol;
+        this.id = id;
+        this.alias = alias;
+    }
+
+    /**
+     * @return identifier as it was supplied
+     */
+    public String getQuery() {
+        return query;
+    }
+
+    /**
+     * @return official gene symbol
+     */
+    public String getSymbol() {
+        return symbol;
+    }
+
+    /**
+     * @return Entrez gene ID
+     */
+    public String getId() {
+        return id;
+    }
+
+    /**
+     * @return true if the query matched an alias rather than the official symbol
+     */
+    public boolean isAlias() {
+        return alias;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("[%s -> %s : %s%s]", query, symbol, id, alias ? " (alias)" : "");
+    }
+}
@@ -0,0 +1,16 @@
+package org.pmoi.model;
+
+public enum AnalysisMode {
+    GSEA ("GSEA"),
+    ORA ("ORA");
+
+    private final String name;
+
+    AnalysisMode(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
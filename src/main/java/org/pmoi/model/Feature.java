@@ -3,6 +3,8 @@ package org.pmoi.model;
 import java.io.Serializable;
 
 public abstract class Feature implements Serializable {
+    private static final long serialVersionUID = -2060040700889053048L;
+
     protected String name;
     protected String ncbiID;
     protected double pvalue;
@@ -0,0 +1,16 @@
+package org.pmoi.model;
+
+public enum GSEAMethod {
+    PERMUTATION ("PERMUTATION"),
+    MULTILEVEL ("MULTILEVEL");
+
+    private final String name;
+
+    GSEAMethod(String name) {
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -2,17 +2,26 @@ package org.pmoi.model;
 
 import com.google.common.math.DoubleMath;
 import org.pmoi.Args;
+import org.pmoi.database.GeneDictionary;
 
+import java.io.IOException;
+import java.io.ObjectInputStream;
 import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 
 public class Gene extends Feature implements Comparable<Gene> {
 
+    private static final long serialVersionUID = 573068801863983651L;
+
     private List<GeneSet> geneSets;
+    // ID of the gene symbol in the gene dictionary. Used for equality, not serialized as it's only valid for a run.
+    // Genes without a symbol are compared by NCBI ID
+    private transient int symbolId;
 
     public Gene(Gene gene) {
         this.name = gene.name;
+        this.symbolId = gene.symbolId;
         this.ncbiID = gene.ncbiID;
         this.pvalue = gene.pvalue;
         this.foldChange = gene.foldChange;
@@ -22,6 +31,7 @@ public class Gene extends Feature implements Comparable<Gene> {
     public Gene(String line) {
         String[] info = line.split(Args.getInstance().getSeparator());
         this.name = info[0];
+        this.symbolId = GeneDictionary.getInstance().intern(name);
         this.pvalue = Double.parseDouble(info[1].replace(",", "."));
         this.foldChange = Double.parseDouble(info[2].replace(",", "."));
         geneSets = new ArrayList<>();
@@ -29,18 +39,34 @@ public class Gene extends Feature implements Comparable<Gene> {
 
     public Gene(int entrezID) {
         this.ncbiID = String.valueOf(entrezID);
+        this.symbolId = GeneDictionary.NO_ID;
     }
 
     public Gene(String name, String entrezID) {
         this.name = name;
         this.ncbiID = entrezID;
+        this.symbolId = GeneDictionary.getInstance().intern(name);
     }
 
     public Gene(String name, String entrezID, double fdr, double fc) {
         super(name, entrezID, fdr, fc);
+        this.symbolId = GeneDictionary.getInstance().intern(name);
         this.geneSets = new ArrayList<>();
     }
 
+    @Override
+    public void setName(String name) {
+        super.setName(name);
+        this.symbolId = GeneDictionary.getInstance().intern(name);
+    }
+
+    /**
+     * @return ID of the gene symbol in the gene dictionary
+     */
+    public int getSymbolId() {
+        return symbolId;
+    }
+
     public List<GeneSet> getGeneSets() {
         return geneSets;
     }
@@ -49,6 +75,10 @@ public class Gene extends Feature implements Comparable<Gene> {
         this.geneSets.add(new GeneSet(identifier, name, interactors));
     }
 
+    public void setInteractors(String identifier, String name, int pathwaySize, List<Gene> interactors) {
+        this.geneSets.add(new GeneSet(identifier, name, pathwaySize, interactors));
+    }
+
     public double significanceScore() {
         return Math.signum(foldChange) * DoubleMath.log2(Math.abs(foldChange)) * (-Math.log10(pvalue));
     }
@@ -63,16 +93,23 @@ public class Gene extends Feature implements Comparable<Gene> {
         if (this == o) return true;
         if (o == null || getClass() != o.getClass()) return false;
         Gene gene = (Gene) o;
-        return name.equalsIgnoreCase(gene.name);
+        if (symbolId == GeneDictionary.NO_ID)
+            return gene.symbolId == GeneDictionary.NO_ID && Objects.equals(ncbiID, gene.ncbiID);
+        return symbolId == gene.symbolId;
     }
 
     @Override
     public int hashCode() {
-        return Objects.hash(name.toUpperCase());
+        return symbolId == GeneDictionary.NO_ID ? Objects.hashCode(ncbiID) : symbolId;
     }
 
     @Override
     public int compareTo(Gene o) {
         return Double.compare(this.getFoldChange(), o.getFoldChange());
     }
+
+    private void readObject(ObjectInputStream in) throws IOException, ClassNotFoundException {
+        in.defaultReadObject();
+        this.symbolId = GeneDictionary.getInstance().intern(name);
+    }
 }
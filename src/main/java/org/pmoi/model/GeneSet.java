@@ -2,19 +2,29 @@ package org.pmoi.model;
 
 import org.pmoi.Args;
 
+import java.util.Arrays;
 import java.util.List;
 
 public class GeneSet {
     private String name;
     private String identifier;
     private List<Gene> genes;
+    // sorted symbol IDs of the genes
+    private int[] geneIds;
+    // number of genes of the pathway in the pathway DB
+    private int pathwaySize;
     private double pvalue;
     private double score;
 
     public GeneSet(String identifier, String name, List<Gene> genes) {
         this.identifier = identifier;
         this.name = name;
-        this.genes = genes;
+        setGenes(genes);
+    }
+
+    public GeneSet(String identifier, String name, int pathwaySize, List<Gene> genes) {
+        this(identifier, name, genes);
+        this.pathwaySize = pathwaySize;
     }
 
     public String getIdentifier() {
@@ -62,6 +72,30 @@ public class GeneSet {
 
     public void setGenes(List<Gene> genes) {
         this.genes = genes;
+        this.geneIds = genes.stream().mapToInt(Gene::getSymbolId).sorted().toArray();
+    }
+
+    /**
+     * @return sorted symbol IDs of the genes in the set
+     */
+    public int[] getGeneIds() {
+        return geneIds;
+    }
+
+    /**
+     * Checks if a gene is part of the set
+     * @param gene gene
+     * @return true if the set contains the gene
+     */
+    public boolean contains(Gene gene) {
+        return Arrays.binarySearch(geneIds, gene.getSymbolId()) >= 0;
+    }
+
+    /**
+     * @return number of genes of the pathway in the pathway DB, of which {@link #getGenes()} are in the transcriptome
+     */
+    public int getPathwaySize() {
+        return pathwaySize;
     }
 
     public double getPvalue() {
@@ -2,13 +2,18 @@ package org.pmoi.model;
 
 import java.io.Serializable;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.List;
 
 public class Pathway implements Serializable {
 
+    private static final long serialVersionUID = 1746003930060406236L;
+
     private String pathwayID;
     private String name;
     private List<Gene> genes;
+    // symbol IDs of the genes, built on first use
+    private transient volatile BitSet geneBits;
 
     public Pathway(String pathwayID, String name) {
         this.pathwayID = pathwayID;
@@ -45,10 +50,46 @@ public class Pathway implements Serializable {
 
     public void setGenes(List<Gene> genes) {
         this.genes = genes;
+        this.geneBits = null;
     }
 
     public void addGene(Gene gene) {
         this.genes.add(gene);
+        this.geneBits = null;
+    }
+
+    /**
+     * Checks if a gene is part of the pathway
+     * @param gene gene
+     * @return true if the pathway contains the gene
+     */
+    public boolean contains(Gene gene) {
+        return contains(gene.getSymbolId());
+    }
+
+    /**
+     * Checks if a gene is part of the pathway
+     * @param symbolId ID of the gene symbol in the gene dictionary
+     * @return true if the pathway contains the gene
+     */
+    public boolean contains(int symbolId) {
+        return symbolId >= 0 && getGeneBits().get(symbolId);
+    }
+
+    /**
+     * @return symbol IDs of the genes in the gene dictionary. Shared, must not be modified
+     */
+    public BitSet getGeneBits() {
+        BitSet bits = geneBits;
+        if (bits == null) {
+            bits = new BitSet();
+            for (Gene gene : genes) {
+                if (gene.getSymbolId() >= 0)
+                    bits.set(gene.getSymbolId());
+            }
+            geneBits = bits;
+        }
+        return bits;
     }
 
     @Override
@@ -27,6 +27,13 @@ public class ResultRecord implements Comparable<ResultRecord>{
         this.gene = gene;
     }
 
+    /**
+     * @return ID of the gene symbol in the gene dictionary
+     */
+    public int getGeneId() {
+        return gene.getSymbolId();
+    }
+
     public String getInteractionScore() {
         return interactionScore;
     }
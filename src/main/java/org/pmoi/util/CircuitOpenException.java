@@ -0,0 +1,12 @@
+package org.pmoi.util;
+
+import java.io.IOException;
+
+/**
+ * Thrown without sending the request when a remote service is considered down
+ */
+public class CircuitOpenException extends IOException {
+    public CircuitOpenException(String s) {
+        super(s);
+    }
+}
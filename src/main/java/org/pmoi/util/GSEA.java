@@ -1,89 +1,304 @@
 package org.pmoi.util;
 
+import org.pmoi.model.GSEAMethod;
 import org.pmoi.model.Gene;
 
 import java.math.BigDecimal;
 import java.math.RoundingMode;
 import java.security.SecureRandom;
 import java.util.*;
-import java.util.stream.Collectors;
 
 public class GSEA {
 
+    public static final int PERMUTATIONS = 1000;
+    // early stopping needs at least this many permutations and null scores as extreme as the observed one
+    static final int MIN_PERMUTATIONS = 100;
+    static final int MIN_EXCEEDANCES = 10;
+
+    private final double significance;
+    private final int maxPermutations;
+    private final GSEAMethod method;
     private double normalizedScore;
-    private static final int PERMUTATIONS = 1000;
+    private int permutationCount;
+
+    /**
+     * GSEA with a fixed number of {@link #PERMUTATIONS}
+     */
+    public GSEA() {
+        this(-1, PERMUTATIONS);
+    }
+
+    /**
+     * Adaptive GSEA: permutations stop as soon as the p-value is clearly above the significance threshold, otherwise
+     * they go on up to the maximum number of permutations
+     * @param significance p-value threshold, negative to never stop early
+     * @param maxPermutations maximum number of permutations
+     * @see #isClearlyAbove(int, int, double)
+     */
+    public GSEA(double significance, int maxPermutations) {
+        this(significance, maxPermutations, GSEAMethod.PERMUTATION);
+    }
+
+    /**
+     * Adaptive GSEA. With {@link GSEAMethod#MULTILEVEL}, p-values too small to be resolved by the permutations, i.e.
+     * with less than {@link #MIN_EXCEEDANCES} null scores as extreme as the observed one, are estimated by
+     * multilevel splitting. The permutations still give the normalized score
+     * @param significance p-value threshold, negative to never stop early
+     * @param maxPermutations maximum number of permutations
+     * @param method p-value estimation method
+     */
+    public GSEA(double significance, int maxPermutations, GSEAMethod method) {
+        if (maxPermutations < 1)
+            throw new IllegalArgumentException("maxPermutations must be positive");
+        this.significance = significance;
+        this.maxPermutations = maxPermutations;
+        this.method = method;
+    }
 
     /**
      * Run the GSEA method
-     * @param geneSet genes from a defined set. eg: Pathway
+     * @param genes genes from a defined set. eg: Pathway
      * @param geneList list of significant genes
      * @return p value
      */
-    public double run(List<Gene> geneSet, List<Gene> geneList) {
-        if (geneList.stream().filter(geneSet::contains).findAny().isEmpty())
-            return 1;
-        var sortedList = geneList.stream()
-                .sorted(Comparator.comparingDouble(Gene::significanceScore).reversed())
-                .collect(Collectors.toList());
-        double enrichmentScore = enrichmentScore(geneSet, sortedList);
-        double[] nullDistribution = new double[PERMUTATIONS];
-        for (int i = 0; i < PERMUTATIONS; i++) {
-            Collections.shuffle(sortedList, new SecureRandom());
-            nullDistribution[i] = enrichmentScore(geneSet, sortedList);
+    public double run(List<Gene> genes, List<Gene> geneList) {
+        RankedList rankedList = new RankedList(geneList);
+        return run(genes, rankedList, new PermutationMatrix(rankedList.size(), Math.min(maxPermutations, PERMUTATIONS),
+                new SecureRandom().nextLong()));
+    }
+
+    /**
+     * Run the GSEA method
+     * @param genes genes from a defined set. eg: Pathway
+     * @param rankedList ranked list of significant genes, shared by all sets
+     * @param permutations permutations of the ranked list, shared by all sets
+     * @return p value
+     */
+    public double run(Collection<Gene> genes, RankedList rankedList, PermutationMatrix permutations) {
+        if (permutations.size() != rankedList.size())
+            throw new IllegalArgumentException("Permutations don't match the ranked list");
+        double[] weights = rankedList.weights();
+        boolean[] hits = rankedList.hits(genes);
+        double hitWeight = 0;
+        int hitCount = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (hits[i]) {
+                hitWeight += weights[i];
+                hitCount++;
+            }
         }
-        double icount = 0;
-        for (int i = 0; i < PERMUTATIONS; i++) {
-            if (Math.abs(nullDistribution[i]) >= Math.abs(enrichmentScore))
-                icount++;
+        permutationCount = 0;
+        if (hitCount == 0)
+            return 1;
+        double enrichmentScore = enrichmentScore(weights, hits, hitWeight, hitCount);
+        int[] rows = permutations.rows();
+        int[] buffer = null;
+        int exceedances = 0;
+        // sums of the positive and negative null scores, for the normalized score
+        double positiveSum = 0;
+        double negativeSum = 0;
+        int positiveCount = 0;
+        int negativeCount = 0;
+        int n = 0;
+        while (n < maxPermutations) {
+            double nullScore;
+            if (n < permutations.count()) {
+                nullScore = enrichmentScore(weights, hits, hitWeight, hitCount, rows, n * weights.length);
+            } else {
+                if (buffer == null)
+                    buffer = new int[weights.length];
+                permutations.generate(n, buffer);
+                nullScore = enrichmentScore(weights, hits, hitWeight, hitCount, buffer, 0);
+            }
+            n++;
+            if (Math.abs(nullScore) >= Math.abs(enrichmentScore))
+                exceedances++;
+            if (nullScore >= 0) {
+                positiveSum += nullScore;
+                positiveCount++;
+            } else {
+                negativeSum += nullScore;
+                negativeCount++;
+            }
+            if (isClearlyAbove(exceedances, n, significance))
+                break;
         }
-        double pvalue = icount / PERMUTATIONS;
+        permutationCount = n;
+        double pvalue = (double) exceedances / n;
+        if (method == GSEAMethod.MULTILEVEL && exceedances < MIN_EXCEEDANCES && hitCount < weights.length)
+            pvalue = multilevelPvalue(weights, hits, hitCount, Math.abs(enrichmentScore), permutations.getSeed());
+        if ((enrichmentScore >= 0 && positiveCount == 0) || (enrichmentScore < 0 && negativeCount == 0))
+            throw new NoSuchElementException("No null score with the sign of the enrichment score");
         this.normalizedScore = enrichmentScore >= 0 ?
-                enrichmentScore / Arrays.stream(nullDistribution).filter(e -> e >= 0).average().orElseThrow() :
-                enrichmentScore / Math.abs(Arrays.stream(nullDistribution).filter(e -> e < 0).average().orElseThrow());
+                enrichmentScore / (positiveSum / positiveCount) :
+                enrichmentScore / Math.abs(negativeSum / negativeCount);
         return pvalue;
     }
 
     /**
-     *  Calculates the enrichment score defined in the GSEA algorithm
-     * @param geneSet set containing gene names
-     * @param sortedList list of genes having a significance score
-     * @param stepWeight recommended values: 0, 1, 1.5, 2
+     * Run the GSEA method against the null distribution of the set size instead of permuting the set. With
+     * {@link GSEAMethod#MULTILEVEL}, unresolved p-values are estimated as by
+     * {@link #run(Collection, RankedList, PermutationMatrix)}
+     * @param genes genes from a defined set. eg: Pathway
+     * @param rankedList ranked list of significant genes, shared by all sets
+     * @param nullDistributions null distributions by set size, shared by all sets
+     * @return p value
      */
-    private double enrichmentScore(List<Gene> geneSet, List<Gene> sortedList, double stepWeight) {
-        List<BigDecimal> lHits = new ArrayList<>(100);
-        List<BigDecimal> lMisses = new ArrayList<>(100);
-        BigDecimal hitSum = new BigDecimal("0");
-        BigDecimal missSum = new BigDecimal("0");
-        var nr = sortedList.stream().filter(geneSet::contains)
-                .mapToDouble(e -> Math.pow(Math.abs(e.significanceScore()), stepWeight)).sum();
-        var nh = sortedList.stream().filter(geneSet::contains).count();
-        for (Gene g : sortedList) {
-            if (geneSet.contains(g)) {
-                hitSum = hitSum.add(new BigDecimal(Double.toString(Math.pow(Math.abs(g.significanceScore()), stepWeight)))
-                        .divide(BigDecimal.valueOf(nr),30 , RoundingMode.HALF_UP));
-                lHits.add(hitSum);
-                lMisses.add(missSum);
-            } else {
-                missSum = missSum.add(new BigDecimal("1")
-                        .divide(new BigDecimal(Double.toString((double)sortedList.size() - nh)), 30, RoundingMode.HALF_EVEN));
-                lHits.add(hitSum);
-                lMisses.add(missSum);
+    public double run(Collection<Gene> genes, RankedList rankedList, NullDistributionCache nullDistributions) {
+        if (nullDistributions.getRankedList() != rankedList)
+            throw new IllegalArgumentException("Null distributions don't match the ranked list");
+        double[] weights = rankedList.weights();
+        boolean[] hits = rankedList.hits(genes);
+        double hitWeight = 0;
+        int hitCount = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (hits[i]) {
+                hitWeight += weights[i];
+                hitCount++;
             }
         }
-        BigDecimal esBD = new BigDecimal("0");
-        for (int i = 0; i < lHits.size(); i++) {
-            esBD = esBD.abs().compareTo(lHits.get(i).subtract(lMisses.get(i)).abs()) > 0 ? esBD : lHits.get(i).subtract(lMisses.get(i));
+        permutationCount = 0;
+        if (hitCount == 0)
+            return 1;
+        double enrichmentScore = enrichmentScore(weights, hits, hitWeight, hitCount);
+        NullDistribution nullDistribution = nullDistributions.get(hitCount);
+        int exceedances = nullDistribution.exceedances(enrichmentScore);
+        double pvalue = (double) exceedances / nullDistribution.size();
+        if (method == GSEAMethod.MULTILEVEL && exceedances < MIN_EXCEEDANCES && hitCount < weights.length)
+            pvalue = multilevelPvalue(weights, hits, hitCount, Math.abs(enrichmentScore), nullDistributions.getSeed());
+        this.normalizedScore = nullDistribution.normalize(enrichmentScore);
+        return pvalue;
+    }
+
+    /**
+     * Multilevel splitting estimate of the p-value, seeded from the permutation seed and the hits so that a set gets
+     * the same estimate in every run with the same seed
+     */
+    private double multilevelPvalue(double[] weights, boolean[] hits, int hitCount, double observed, long seed) {
+        double[] hitWeights = new double[hitCount];
+        int[] hitRanks = new int[hitCount];
+        for (int i = 0, j = 0; i < weights.length; i++) {
+            if (hits[i]) {
+                hitWeights[j] = weights[i];
+                hitRanks[j++] = i;
+            }
         }
-        return esBD.setScale(5, RoundingMode.HALF_UP).doubleValue();
+        long setSeed = seed ^ (Arrays.hashCode(hitRanks) * 0x9e3779b97f4a7c15L);
+        return new MultilevelSplitting(hitWeights, weights.length, setSeed).pvalue(observed);
+    }
+
+    /**
+     * Sequential stopping rule, after Besag and Clifford: once enough null scores are as extreme as the observed one,
+     * the p-value estimate is exceedances / permutations. Stop if it stays above the significance threshold after
+     * removing 3 standard deviations from the exceedance count, i.e. if the set is clearly not significant
+     * @param exceedances null scores as extreme as the observed one so far
+     * @param permutations permutations so far
+     * @param significance p-value threshold
+     * @return true if permutations can stop
+     */
+    static boolean isClearlyAbove(int exceedances, int permutations, double significance) {
+        return significance >= 0 && exceedances >= MIN_EXCEEDANCES && permutations >= MIN_PERMUTATIONS
+                && (exceedances - 3 * Math.sqrt(exceedances)) / permutations > significance;
+    }
+
+    /**
+     * Calculates the enrichment score defined in the GSEA algorithm: the maximum deviation from zero of the running
+     * sum, hits adding their share of the total hit weight and misses an equal share of one. In case of ties, the
+     * last deviation wins
+     * @param weights weights of the ranked genes, i.e. |significance score| ^ step weight
+     * @param hits true for the genes of the set
+     * @param hitWeight sum of the weights of the hits
+     * @param hitCount number of hits
+     * @return enrichment score rounded to 5 decimal places
+     */
+    static double enrichmentScore(double[] weights, boolean[] hits, double hitWeight, int hitCount) {
+        double missStep = 1.0 / (weights.length - hitCount);
+        double hitSum = 0;
+        double missSum = 0;
+        double es = 0;
+        for (int i = 0; i < weights.length; i++) {
+            if (hits[i])
+                hitSum += weights[i] / hitWeight;
+            else
+                missSum += missStep;
+            double deviation = hitSum - missSum;
+            if (Math.abs(deviation) >= Math.abs(es))
+                es = deviation;
+        }
+        return round(es, 5);
+    }
+
+    /**
+     * Enrichment score of a permutation of the ranked genes
+     * @param order permutations, the gene at rank i being the one at rank {@code order[offset + i]} in the ranked list
+     * @param offset start of the permutation
+     * @see #enrichmentScore(double[], boolean[], double, int)
+     */
+    static double enrichmentScore(double[] weights, boolean[] hits, double hitWeight, int hitCount, int[] order, int offset) {
+        double missStep = 1.0 / (weights.length - hitCount);
+        double hitSum = 0;
+        double missSum = 0;
+        double es = 0;
+        for (int i = 0; i < weights.length; i++) {
+            int rank = order[offset + i];
+            if (hits[rank])
+                hitSum += weights[rank] / hitWeight;
+            else
+                missSum += missStep;
+            double deviation = hitSum - missSum;
+            if (Math.abs(deviation) >= Math.abs(es))
+                es = deviation;
+        }
+        return round(es, 5);
+    }
+
+    /**
+     * Enrichment score from the ranks of the hits only. The running sum peaks right after a hit and bottoms out right
+     * before one, so only these points are visited, in rank order: O(k log k) for k hits instead of O(n)
+     * @param ranks rank of each hit, distinct
+     * @param hitWeights weight of each hit
+     * @param hitWeight sum of the weights of the hits
+     * @param size size of the ranked list, more than the number of hits
+     * @see #enrichmentScore(double[], boolean[], double, int)
+     */
+    static double enrichmentScore(int[] ranks, double[] hitWeights, double hitWeight, int size) {
+        int k = ranks.length;
+        long[] order = new long[k];
+        for (int g = 0; g < k; g++) {
+            order[g] = ((long) ranks[g] << 32) | g;
+        }
+        Arrays.sort(order);
+        double missStep = 1.0 / (size - k);
+        double hitSum = 0;
+        double es = 0;
+        for (int j = 0; j < k; j++) {
+            int rank = (int) (order[j] >>> 32);
+            int hit = (int) order[j];
+            double misses = (rank - j) * missStep;
+            double before = hitSum - misses;
+            if (Math.abs(before) >= Math.abs(es))
+                es = before;
+            hitSum += hitWeights[hit] / hitWeight;
+            double after = hitSum - misses;
+            if (Math.abs(after) >= Math.abs(es))
+                es = after;
+        }
+        return round(es, 5);
+    }
+
+    /**
+     * Half up rounding, away from zero as {@link RoundingMode#HALF_UP}
+     */
+    static double round(double value, int decimals) {
+        double scale = Math.pow(10, decimals);
+        return Math.signum(value) * Math.round(Math.abs(value) * scale) / scale;
     }
 
     /**
-     *  Calculates the enrichment score defined in the GSEA algorithm using step weight = 1.5
-     * @param geneSet set containing gene names
-     * @param geneList list of genes having a significance score
+     * @return number of permutations of the last run
      */
-    private double enrichmentScore(List<Gene> geneSet, List<Gene> geneList) {
-        return this.enrichmentScore(geneSet, geneList, 1.5);
+    public int getPermutationCount() {
+        return permutationCount;
     }
 
     /**
@@ -0,0 +1,182 @@
+package org.pmoi.util;
+
+import org.pmoi.model.GSEAMethod;
+import org.pmoi.model.Gene;
+import org.pmoi.model.GeneSet;
+
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.function.Function;
+
+/**
+ * GSEA results of a run, computed once per distinct gene set against a single {@link RankedList} and
+ * {@link PermutationMatrix}. Sets are identified by the symbol IDs of their genes.
+ * Concurrent requests for the same set wait for the first one to complete instead of running GSEA again.
+ */
+public class GSEACache {
+
+    private final RankedList rankedList;
+    private final PermutationMatrix permutations;
+    private final Map<Key, CompletableFuture<Result>> results = new ConcurrentHashMap<>();
+    private final AtomicInteger requests = new AtomicInteger();
+    private final AtomicLong permutationCount = new AtomicLong();
+    private final double significance;
+    private final int maxPermutations;
+    private final GSEAMethod method;
+    private final NullDistributionCache nullDistributions;
+
+    /**
+     * @param geneList list of significant genes, ranked against every gene set
+     * @param seed seed of the permutations
+     * @param significance p-value threshold, permutations stop early for sets clearly above it
+     * @param maxPermutations maximum number of permutations per set
+     */
+    public GSEACache(List<Gene> geneList, long seed, double significance, int maxPermutations) {
+        this(geneList, seed, significance, maxPermutations, GSEAMethod.PERMUTATION);
+    }
+
+    /**
+     * @param geneList list of significant genes, ranked against every gene set
+     * @param seed seed of the permutations
+     * @param significance p-value threshold, permutations stop early for sets clearly above it
+     * @param maxPermutations maximum number of permutations per set
+     * @param method p-value estimation method
+     */
+    public GSEACache(List<Gene> geneList, long seed, double significance, int maxPermutations, GSEAMethod method) {
+        this(geneList, seed, significance, maxPermutations, method, 0);
+    }
+
+    /**
+     * @param geneList list of significant genes, ranked against every gene set
+     * @param seed seed of the permutations
+     * @param significance p-value threshold, permutations stop early for sets clearly above it
+     * @param maxPermutations maximum number of permutations per set, or size of the null distributions
+     * @param method p-value estimation method
+     * @param nullBucket width of the set size buckets sharing a null distribution, 0 to permute every set
+     * @see NullDistributionCache
+     */
+    public GSEACache(List<Gene> geneList, long seed, double significance, int maxPermutations, GSEAMethod method,
+                     int nullBucket) {
+        this.rankedList = new RankedList(geneList);
+        this.permutations = new PermutationMatrix(rankedList.size(), Math.min(maxPermutations, GSEA.PERMUTATIONS), seed);
+        this.significance = significance;
+        this.maxPermutations = maxPermutations;
+        this.method = method;
+        this.nullDistributions = nullBucket > 0 ?
+                new NullDistributionCache(rankedList, permutations, nullBucket, maxPermutations) : null;
+    }
+
+    /**
+     * Run GSEA for a gene set, or get the result of a previous run on the same genes
+     * @param geneSet gene set
+     * @return p-value and normalized enrichment score
+     */
+    public Result run(GeneSet geneSet) {
+        return run(geneSet, this::compute);
+    }
+
+    /**
+     * @param geneSet gene set
+     * @param computation computation of the result, run once per distinct set
+     * @return result of the computation on the first equal set. If it failed, callers waiting for it fail too
+     */
+    Result run(GeneSet geneSet, Function<GeneSet, Result> computation) {
+        requests.incrementAndGet();
+        CompletableFuture<Result> future = new CompletableFuture<>();
+        CompletableFuture<Result> previous = results.putIfAbsent(new Key(geneSet.getGeneIds()), future);
+        if (previous != null)
+            return previous.join();
+        try {
+            future.complete(computation.apply(geneSet));
+        } catch (RuntimeException e) {
+            future.completeExceptionally(e);
+            throw e;
+        }
+        return future.join();
+    }
+
+    private Result compute(GeneSet geneSet) {
+        GSEA gsea = new GSEA(significance, maxPermutations, method);
+        double pvalue = nullDistributions != null ?
+                gsea.run(geneSet.getGenes(), rankedList, nullDistributions) :
+                gsea.run(geneSet.getGenes(), rankedList, permutations);
+        permutationCount.addAndGet(gsea.getPermutationCount());
+        return new Result(pvalue, gsea.getNormalizedScore());
+    }
+
+    /**
+     * @return number of results requested so far
+     */
+    public int getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of GSEA runs so far, one per distinct gene set
+     */
+    public int getComputationCount() {
+        return results.size();
+    }
+
+    /**
+     * @return number of permutations run so far, for all gene sets, including the null distributions
+     */
+    public long getPermutationCount() {
+        return permutationCount.get() + (nullDistributions != null ? nullDistributions.getSampleCount() : 0);
+    }
+
+    /**
+     * @return number of null distributions computed so far, 0 if sets are permuted one by one
+     */
+    public int getNullDistributionCount() {
+        return nullDistributions != null ? nullDistributions.size() : 0;
+    }
+
+    public static class Result {
+        private final double pvalue;
+        private final double score;
+
+        Result(double pvalue, double score) {
+            this.pvalue = pvalue;
+            this.score = score;
+        }
+
+        public double getPvalue() {
+            return pvalue;
+        }
+
+        public double getScore() {
+            return score;
+        }
+    }
+
+    private static class Key {
+        private final int[] ids;
+        private final int hash;
+
+        /**
+         * @param sortedIds sorted symbol IDs, possibly repeated
+         */
+        private Key(int[] sortedIds) {
+            this.ids = Arrays.stream(sortedIds).distinct().toArray();
+            this.hash = Arrays.hashCode(ids);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (this == o) return true;
+            if (o == null || getClass() != o.getClass()) return false;
+            return Arrays.equals(ids, ((Key) o).ids);
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+    }
+}
@@ -0,0 +1,123 @@
+package org.pmoi.util;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.math.BigInteger;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Directory of recorded HTTP responses. {@code index.tsv} holds one line per response: URI, status code,
+ * content encoding ("-" if none) and body file. Bodies are stored as received, in {@code bodies/}.
+ * A URI recorded twice is answered with its last response.
+ */
+public class HttpArchive {
+
+    private static final String INDEX = "index.tsv";
+    private static final String BODIES = "bodies";
+
+    private final Path directory;
+    private final Map<String, Entry> entries = new ConcurrentHashMap<>();
+
+    private HttpArchive(Path directory) {
+        this.directory = directory;
+    }
+
+    /**
+     * Open an archive, creating it if needed
+     * @param directory archive directory
+     * @return archive
+     * @throws IOException the archive can't be read or created
+     */
+    public static HttpArchive open(Path directory) throws IOException {
+        HttpArchive archive = new HttpArchive(directory);
+        Files.createDirectories(directory.resolve(BODIES));
+        Path index = directory.resolve(INDEX);
+        if (Files.exists(index)) {
+            List<String> lines = Files.readAllLines(index, StandardCharsets.UTF_8);
+            for (String line : lines) {
+                String[] fields = line.split("\t");
+                if (fields.length == 4)
+                    archive.entries.put(fields[0], new Entry(Integer.parseInt(fields[1]),
+                            fields[2].equals("-") ? null : fields[2], fields[3]));
+            }
+        }
+        return archive;
+    }
+
+    /**
+     * @param uri request URI
+     * @return recorded response, null if the URI isn't in the archive
+     */
+    public Entry get(String uri) {
+        return entries.get(uri);
+    }
+
+    /**
+     * @param entry recorded response
+     * @return response body, as received
+     * @throws IOException unable to read the body
+     */
+    public byte[] getBody(Entry entry) throws IOException {
+        return Files.readAllBytes(directory.resolve(BODIES).resolve(entry.file));
+    }
+
+    /**
+     * Record a response
+     * @param uri request URI
+     * @param statusCode response status code
+     * @param contentEncoding response content encoding, null if none
+     * @param body response body, as received
+     * @throws IOException unable to write to the archive
+     */
+    public synchronized void put(String uri, int statusCode, String contentEncoding, byte[] body) throws IOException {
+        String file = digest(uri);
+        Files.write(directory.resolve(BODIES).resolve(file), body);
+        try (BufferedWriter bw = Files.newBufferedWriter(directory.resolve(INDEX), StandardCharsets.UTF_8,
+                StandardOpenOption.CREATE, StandardOpenOption.APPEND)) {
+            bw.write(String.join("\t", uri, String.valueOf(statusCode), contentEncoding == null ? "-" : contentEncoding, file));
+            bw.newLine();
+        }
+        entries.put(uri, new Entry(statusCode, contentEncoding, file));
+    }
+
+    public int size() {
+        return entries.size();
+    }
+
+    private static String digest(String uri) {
+        try {
+            byte[] hash = MessageDigest.getInstance("SHA-1").digest(uri.getBytes(StandardCharsets.UTF_8));
+            return String.format("%040x", new BigInteger(1, hash));
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    public static class Entry {
+        private final int statusCode;
+        private final String contentEncoding;
+        private final String file;
+
+        private Entry(int statusCode, String contentEncoding, String file) {
+            this.statusCode = statusCode;
+            this.contentEncoding = contentEncoding;
+            this.file = file;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+    }
+}
@@ -0,0 +1,61 @@
+package org.pmoi.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InterruptedIOException;
+import java.net.URI;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.time.Duration;
+
+/**
+ * Transport over a single shared {@link HttpClient}, which keeps connections alive between requests and uses HTTP/2
+ * when the server supports it. Responses are requested gzip compressed.
+ * <p>
+ * A transport created with a replay server URI sends every request to that server instead, the original URI being
+ * encoded in the path: {@code <server>/<scheme>/<authority><path>?<query>}
+ */
+public class HttpClientTransport implements Transport {
+
+    private static final HttpClient CLIENT = HttpClient.newBuilder()
+            .version(HttpClient.Version.HTTP_2)
+            .followRedirects(HttpClient.Redirect.NORMAL)
+            .connectTimeout(Duration.ofSeconds(30))
+            .build();
+
+    private final URI replayServer;
+
+    public HttpClientTransport() {
+        this(null);
+    }
+
+    /**
+     * @param replayServer base URI of a {@link ReplayServer}, null to send requests to the remote hosts
+     */
+    public HttpClientTransport(URI replayServer) {
+        this.replayServer = replayServer;
+    }
+
+    @Override
+    public Response send(URI uri, Duration timeout) throws IOException {
+        HttpRequest request = HttpRequest.newBuilder(replayServer == null ? uri : redirect(uri))
+                .header("Accept-Encoding", "gzip")
+                .timeout(timeout)
+                .GET()
+                .build();
+        try {
+            HttpResponse<InputStream> response = CLIENT.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            return new Response(response.statusCode(),
+                    response.headers().firstValue("Content-Encoding").orElse(null), response.body());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException(e.getMessage());
+        }
+    }
+
+    private URI redirect(URI uri) {
+        String query = uri.getRawQuery() == null ? "" : "?" + uri.getRawQuery();
+        return URI.create(replayServer + "/" + uri.getScheme() + "/" + uri.getRawAuthority() + uri.getRawPath() + query);
+    }
+}
@@ -1,66 +1,137 @@
 package org.pmoi.util;
 
-import org.apache.logging.log4j.LogManager;
-import org.apache.logging.log4j.Logger;
-
 import java.io.*;
 import java.net.HttpURLConnection;
+import java.net.URI;
+import java.net.URISyntaxException;
 import java.net.URL;
-import java.net.URLConnection;
 import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.GZIPInputStream;
 
 /**
  * project IntOmics
  * Created by ayyoub on 11/10/19.
+ * <p>
+ * All connectors share a single {@link Transport}, by default an {@link HttpClientTransport} talking to the remote
+ * hosts. Requests are throttled and retried by the {@link RequestScheduler} of their host.
  */
 public class HttpConnector {
 
-    private static final Logger LOGGER = LogManager.getRootLogger();
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private static volatile Transport transport = new HttpClientTransport();
 
-    public static final int MAX_TRIES = 100;
+    private static final ExecutorService ASYNC_EXECUTOR = Executors.newCachedThreadPool(r -> {
+        Thread thread = new Thread(r, "http-connector");
+        thread.setDaemon(true);
+        return thread;
+    });
+
+    /**
+     * Set the transport used by all connectors, e.g. to record responses or to replay them
+     * @param transport transport
+     */
+    public static void setTransport(Transport transport) {
+        HttpConnector.transport = transport;
+    }
 
     /**
      * Get content from URL
      * @param url URL request
      * @return response as a text
+     * @throws FileNotFoundException the server answered 404
      * @throws IOException something wrong happened. Probably internet connection issues
      */
     public String getContent(URL url) throws IOException {
-        int count = 0;
-        while (true) {
-            try {
-                URLConnection connection = url.openConnection();
-                HttpURLConnection httpConnection = (HttpURLConnection) connection;
-
-                httpConnection.setRequestProperty("Content-Type", "application/json");
+        return get(url, in -> new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
 
-                InputStream response = connection.getInputStream();
-                int responseCode = httpConnection.getResponseCode();
+    /**
+     * Send a GET request through the scheduler of the host and parse the response body, decompressed if needed.
+     * The request and the parsing are retried on transient errors
+     * @param url URL request
+     * @param parser response body parser
+     * @param <T> result type
+     * @return parsed response
+     * @throws FileNotFoundException the server answered 404
+     * @throws HttpException the server answered with another code than 200
+     * @throws IOException connection issues
+     * @see RequestScheduler
+     */
+    public <T> T get(URL url, BodyParser<T> parser) throws IOException {
+        return RequestScheduler.forHost(url.getHost()).execute(() -> {
+            try (InputStream in = getStream(url)) {
+                return parser.parse(in);
+            }
+        });
+    }
 
-                if (responseCode != 200) {
-                    throw new HttpException("Response code was not 200. Detected response was " + responseCode);
-                }
+    /**
+     * Asynchronous version of {@link #getContent(URL)}
+     * @param url URL request
+     * @return future response text. Fails with the exceptions of {@link #getContent(URL)}
+     */
+    public CompletableFuture<String> getContentAsync(URL url) {
+        return getAsync(url, in -> new String(in.readAllBytes(), StandardCharsets.UTF_8));
+    }
 
-                return getString(response);
+    /**
+     * Asynchronous version of {@link #get(URL, BodyParser)}
+     * @param url URL request
+     * @param parser response body parser
+     * @param <T> result type
+     * @return future parsed response. Fails with the exceptions of {@link #get(URL, BodyParser)}
+     */
+    public <T> CompletableFuture<T> getAsync(URL url, BodyParser<T> parser) {
+        return CompletableFuture.supplyAsync(() -> {
+            try {
+                return get(url, parser);
             } catch (IOException e) {
-                if (++count == 10) throw e;
+                throw new CompletionException(e);
             }
-        }
+        }, ASYNC_EXECUTOR);
+    }
+
+    private InputStream getStream(URL url) throws IOException {
+        return body(transport.send(toURI(url), TIMEOUT), url);
     }
 
-    private String getString(InputStream response) {
-        String output = null;
-        try (Reader reader = new BufferedReader(new InputStreamReader(response, StandardCharsets.UTF_8))) {
-            StringBuilder builder = new StringBuilder();
-            char[] buffer = new char[8192];
-            int read;
-            while ((read = reader.read(buffer, 0, buffer.length)) > 0) {
-                builder.append(buffer, 0, read);
+    /**
+     * URL to URI conversion. Unlike {@link HttpURLConnection}, the HTTP client rejects URLs with illegal characters
+     * (e.g. spaces in a query), these are quoted
+     */
+    private static URI toURI(URL url) throws IOException {
+        try {
+            return url.toURI();
+        } catch (URISyntaxException e) {
+            try {
+                return new URI(url.getProtocol(), url.getUserInfo(), url.getHost(), url.getPort(), url.getPath(),
+                        url.getQuery(), url.getRef());
+            } catch (URISyntaxException ex) {
+                throw new IOException("Invalid URL: " + url, ex);
             }
-            output = builder.toString();
-        } catch (IOException e) {
-                LOGGER.error(e);
         }
-        return output;
+    }
+
+    private InputStream body(Transport.Response response, URL url) throws IOException {
+        int responseCode = response.getStatusCode();
+        if (responseCode != 200) {
+            response.getBody().close();
+            if (responseCode == 404)
+                throw new FileNotFoundException(url.toString());
+            throw new HttpException("Response code was not 200. Detected response was " + responseCode, responseCode);
+        }
+        boolean gzip = "gzip".equalsIgnoreCase(response.getContentEncoding());
+        return gzip ? new GZIPInputStream(response.getBody()) : response.getBody();
+    }
+
+    @FunctionalInterface
+    public interface BodyParser<T> {
+        T parse(InputStream in) throws IOException;
     }
 }
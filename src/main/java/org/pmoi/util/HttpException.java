@@ -1,7 +1,21 @@
 package org.pmoi.util;
 
 public class HttpException extends RuntimeException{
+    private final int statusCode;
+
     public HttpException(String s) {
+        this(s, -1);
+    }
+
+    public HttpException(String s, int statusCode) {
         super(s);
+        this.statusCode = statusCode;
+    }
+
+    /**
+     * @return HTTP status code of the response, -1 if unknown
+     */
+    public int getStatusCode() {
+        return statusCode;
     }
 }
@@ -0,0 +1,175 @@
+package org.pmoi.util;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.SplittableRandom;
+
+/**
+ * Multilevel splitting Monte Carlo estimate of small GSEA p-values, after Korotkevich et al. (fgsea).
+ * <p>
+ * The null hypothesis is the one of the permutation test: the genes of the set, with their weights, land on random
+ * ranks. A sample of random placements is drawn, then repeatedly the half with the lowest |ES| is dropped, the other
+ * half duplicated and moved around by Markov chain steps that keep |ES| above the median. Each level halves the
+ * probability, so a p-value p costs about log2(1/p) levels instead of 1/p permutations.
+ * Placements only store the ranks of the hits, see {@link GSEA#enrichmentScore(int[], double[], double, int)}.
+ */
+final class MultilevelSplitting {
+
+    static final int SAMPLE_SIZE = 101;
+    // smallest p-value reported
+    static final double EPS = 1e-50;
+
+    private final double[] hitWeights;
+    private final double hitWeight;
+    private final int size;
+    private final SplittableRandom random;
+    private int levels;
+
+    /**
+     * @param hitWeights weights of the genes of the set
+     * @param size size of the ranked list
+     * @param seed seed of the sampling
+     */
+    MultilevelSplitting(double[] hitWeights, int size, long seed) {
+        if (hitWeights.length == 0 || hitWeights.length >= size)
+            throw new IllegalArgumentException("The set must have between 1 and size - 1 genes");
+        this.hitWeights = hitWeights;
+        this.hitWeight = Arrays.stream(hitWeights).sum();
+        this.size = size;
+        this.random = new SplittableRandom(seed);
+    }
+
+    /**
+     * @param observed observed |ES|, rounded as by {@link GSEA#enrichmentScore(double[], boolean[], double, int)}
+     * @return estimate of P(|ES| >= observed) under the null, at least {@link #EPS}
+     */
+    double pvalue(double observed) {
+        int k = hitWeights.length;
+        int[][] particles = new int[SAMPLE_SIZE][];
+        double[] scores = new double[SAMPLE_SIZE];
+        for (int i = 0; i < SAMPLE_SIZE; i++) {
+            particles[i] = randomPlacement();
+            scores[i] = score(particles[i]);
+        }
+        double pvalue = 1;
+        levels = 0;
+        while (true) {
+            double level = median(scores);
+            if (level >= observed)
+                return Math.max(EPS, pvalue * fraction(scores, observed));
+            int survivors = 0;
+            for (double score : scores) {
+                if (score > level)
+                    survivors++;
+            }
+            if (survivors == 0) {
+                // no way up from this level, bound by a single sample
+                return Math.max(EPS, pvalue / SAMPLE_SIZE);
+            }
+            pvalue *= (double) survivors / SAMPLE_SIZE;
+            levels++;
+            if (pvalue < EPS)
+                return EPS;
+            // keep the particles above the level, and refill the sample with moved copies of them
+            int[][] kept = new int[survivors][];
+            double[] keptScores = new double[survivors];
+            for (int i = 0, j = 0; i < SAMPLE_SIZE; i++) {
+                if (scores[i] > level) {
+                    kept[j] = particles[i];
+                    keptScores[j++] = scores[i];
+                }
+            }
+            for (int i = 0; i < SAMPLE_SIZE; i++) {
+                int source = i < survivors ? i : random.nextInt(survivors);
+                int[] particle = Arrays.copyOf(kept[source], k);
+                scores[i] = move(particle, keptScores[source], level);
+                particles[i] = particle;
+            }
+        }
+    }
+
+    /**
+     * @return number of levels of the last estimate
+     */
+    int getLevels() {
+        return levels;
+    }
+
+    /**
+     * Markov chain steps: move one gene to a random free rank, accepted if |ES| stays above the level
+     * @return |ES| of the particle after the steps
+     */
+    private double move(int[] particle, double score, double level) {
+        int k = particle.length;
+        for (int step = 0; step < k; step++) {
+            int gene = random.nextInt(k);
+            int rank = random.nextInt(size);
+            if (isTaken(particle, rank))
+                continue;
+            int previous = particle[gene];
+            particle[gene] = rank;
+            double moved = score(particle);
+            if (moved > level)
+                score = moved;
+            else
+                particle[gene] = previous;
+        }
+        return score;
+    }
+
+    private static boolean isTaken(int[] particle, int rank) {
+        for (int r : particle) {
+            if (r == rank)
+                return true;
+        }
+        return false;
+    }
+
+    /**
+     * @return ranks of the genes of the set, distinct and uniformly drawn
+     */
+    private int[] randomPlacement() {
+        int k = hitWeights.length;
+        int[] ranks = new int[k];
+        // Floyd's sampling of k distinct ranks, then a shuffle to assign them to the genes
+        BitSet taken = new BitSet(size);
+        int n = 0;
+        for (int j = size - k; j < size; j++) {
+            int r = random.nextInt(j + 1);
+            if (taken.get(r))
+                r = j;
+            taken.set(r);
+            ranks[n++] = r;
+        }
+        for (int i = k - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = ranks[i];
+            ranks[i] = ranks[j];
+            ranks[j] = tmp;
+        }
+        return ranks;
+    }
+
+    /**
+     * @param particle rank of each gene of the set
+     * @return |ES| of the placement
+     */
+    double score(int[] particle) {
+        return Math.abs(GSEA.enrichmentScore(particle, hitWeights, hitWeight, size));
+    }
+
+    private static double median(double[] scores) {
+        double[] sorted = scores.clone();
+        Arrays.sort(sorted);
+        return sorted[sorted.length / 2];
+    }
+
+    private static double fraction(double[] scores, double observed) {
+        int count = 0;
+        for (double score : scores) {
+            if (score >= observed)
+                count++;
+        }
+        return (double) count / scores.length;
+    }
+}
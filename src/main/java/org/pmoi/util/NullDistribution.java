@@ -0,0 +1,112 @@
+package org.pmoi.util;
+
+import java.util.Arrays;
+import java.util.NoSuchElementException;
+
+/**
+ * Null distribution of the enrichment score for gene sets of a given size: scores of random sets of that size drawn
+ * from the ranked list. The k first ranks of each permutation of a {@link PermutationMatrix} make a random set of k
+ * genes, so the distributions of all sizes come from the permutations shared by the run.
+ */
+public class NullDistribution {
+
+    private final int setSize;
+    // sorted |ES|
+    private final double[] absoluteScores;
+    private final double positiveMean;
+    private final double negativeMean;
+
+    /**
+     * @param rankedList ranked list
+     * @param permutations permutations of the ranked list
+     * @param setSize size of the random sets, less than the size of the ranked list
+     * @param samples number of random sets
+     */
+    NullDistribution(RankedList rankedList, PermutationMatrix permutations, int setSize, int samples) {
+        int size = rankedList.size();
+        if (setSize < 1 || setSize >= size)
+            throw new IllegalArgumentException("Set size must be between 1 and " + (size - 1));
+        this.setSize = setSize;
+        this.absoluteScores = new double[samples];
+        double[] weights = rankedList.weights();
+        int[] rows = permutations.rows();
+        int[] buffer = null;
+        int[] ranks = new int[setSize];
+        double[] hitWeights = new double[setSize];
+        double positiveSum = 0;
+        double negativeSum = 0;
+        int positiveCount = 0;
+        int negativeCount = 0;
+        for (int p = 0; p < samples; p++) {
+            int offset = p * size;
+            int[] order = rows;
+            if (p >= permutations.count()) {
+                if (buffer == null)
+                    buffer = new int[size];
+                permutations.generate(p, buffer);
+                order = buffer;
+                offset = 0;
+            }
+            double hitWeight = 0;
+            for (int i = 0; i < setSize; i++) {
+                ranks[i] = order[offset + i];
+                hitWeights[i] = weights[ranks[i]];
+                hitWeight += hitWeights[i];
+            }
+            double score = GSEA.enrichmentScore(ranks, hitWeights, hitWeight, size);
+            absoluteScores[p] = Math.abs(score);
+            if (score >= 0) {
+                positiveSum += score;
+                positiveCount++;
+            } else {
+                negativeSum += score;
+                negativeCount++;
+            }
+        }
+        Arrays.sort(absoluteScores);
+        this.positiveMean = positiveCount > 0 ? positiveSum / positiveCount : Double.NaN;
+        this.negativeMean = negativeCount > 0 ? negativeSum / negativeCount : Double.NaN;
+    }
+
+    /**
+     * @param enrichmentScore observed enrichment score
+     * @return number of null scores as extreme as the observed one
+     */
+    public int exceedances(double enrichmentScore) {
+        double observed = Math.abs(enrichmentScore);
+        // first index with |null| >= |ES|
+        int low = 0;
+        int high = absoluteScores.length;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (absoluteScores[mid] < observed)
+                low = mid + 1;
+            else
+                high = mid;
+        }
+        return absoluteScores.length - low;
+    }
+
+    /**
+     * @param enrichmentScore observed enrichment score
+     * @return enrichment score divided by the mean null score of the same sign
+     * @throws NoSuchElementException no null score has the sign of the enrichment score
+     */
+    public double normalize(double enrichmentScore) {
+        double mean = enrichmentScore >= 0 ? positiveMean : negativeMean;
+        if (Double.isNaN(mean))
+            throw new NoSuchElementException("No null score with the sign of the enrichment score");
+        return enrichmentScore / Math.abs(mean);
+    }
+
+    /**
+     * @return number of null scores
+     */
+    public int size() {
+        return absoluteScores.length;
+    }
+
+    public int getSetSize() {
+        return setSize;
+    }
+}
@@ -0,0 +1,66 @@
+package org.pmoi.util;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * {@link NullDistribution}s of a run, computed once per bucket of gene set sizes. Sets of
+ * {@code (b - 1) * width + 1} to {@code b * width} genes share the distribution of the middle size of the bucket,
+ * a width of 1 giving one distribution per size.
+ */
+public class NullDistributionCache {
+
+    private final RankedList rankedList;
+    private final PermutationMatrix permutations;
+    private final int width;
+    private final int samples;
+    private final Map<Integer, NullDistribution> distributions = new ConcurrentHashMap<>();
+
+    /**
+     * @param rankedList ranked list
+     * @param permutations permutations of the ranked list
+     * @param width bucket width, in genes
+     * @param samples number of null scores per distribution
+     */
+    public NullDistributionCache(RankedList rankedList, PermutationMatrix permutations, int width, int samples) {
+        if (width < 1)
+            throw new IllegalArgumentException("Bucket width must be positive");
+        if (permutations.size() != rankedList.size())
+            throw new IllegalArgumentException("Permutations don't match the ranked list");
+        this.rankedList = rankedList;
+        this.permutations = permutations;
+        this.width = width;
+        this.samples = samples;
+    }
+
+    /**
+     * @param setSize number of genes of the set found in the ranked list
+     * @return null distribution of the bucket of the size
+     */
+    public NullDistribution get(int setSize) {
+        return distributions.computeIfAbsent((setSize - 1) / width, bucket -> new NullDistribution(rankedList,
+                permutations, Math.min(bucket * width + (width + 1) / 2, rankedList.size() - 1), samples));
+    }
+
+    /**
+     * @return number of distributions computed so far
+     */
+    public int size() {
+        return distributions.size();
+    }
+
+    /**
+     * @return number of null scores computed so far
+     */
+    public long getSampleCount() {
+        return (long) distributions.size() * samples;
+    }
+
+    public RankedList getRankedList() {
+        return rankedList;
+    }
+
+    public long getSeed() {
+        return permutations.getSeed();
+    }
+}
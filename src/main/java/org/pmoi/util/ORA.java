@@ -0,0 +1,74 @@
+package org.pmoi.util;
+
+/**
+ * Over-representation analysis: one-sided Fisher's exact test of a pathway against the transcriptome. The p-value is
+ * the probability, under the hypergeometric distribution, that a random selection of as many genes of the pathway DB
+ * as there are transcriptome genes hits the pathway at least as many times as observed.
+ * Probabilities are summed in log space, from a table of log factorials, so that large pathway DBs don't underflow.
+ */
+public class ORA {
+
+    private final int universe;
+    private final int selected;
+    private final double[] logFactorial;
+
+    /**
+     * @param universe number of genes in the pathway DB
+     * @param selected number of transcriptome genes found in the pathway DB
+     */
+    public ORA(int universe, int selected) {
+        if (universe < 1 || selected < 0 || selected > universe)
+            throw new IllegalArgumentException(String.format("Invalid selection: %d genes out of %d", selected, universe));
+        this.universe = universe;
+        this.selected = selected;
+        this.logFactorial = new double[universe + 1];
+        for (int i = 2; i <= universe; i++) {
+            logFactorial[i] = logFactorial[i - 1] + Math.log(i);
+        }
+    }
+
+    /**
+     * @param hits transcriptome genes in the pathway
+     * @param pathwaySize genes of the pathway in the pathway DB
+     * @return probability of at least {@code hits} transcriptome genes in the pathway
+     */
+    public double pvalue(int hits, int pathwaySize) {
+        int size = Math.min(Math.max(pathwaySize, hits), universe);
+        // support of the hypergeometric distribution
+        int lower = Math.max(0, selected - (universe - size));
+        int upper = Math.min(size, selected);
+        if (hits <= lower)
+            return 1;
+        if (hits > upper)
+            return 0;
+        double[] terms = new double[upper - hits + 1];
+        double largest = Double.NEGATIVE_INFINITY;
+        for (int i = hits; i <= upper; i++) {
+            terms[i - hits] = logBinomial(size, i) + logBinomial(universe - size, selected - i)
+                    - logBinomial(universe, selected);
+            largest = Math.max(largest, terms[i - hits]);
+        }
+        double sum = 0;
+        for (double term : terms) {
+            sum += Math.exp(term - largest);
+        }
+        return Math.min(1, Math.exp(largest + Math.log(sum)));
+    }
+
+    /**
+     * @param hits transcriptome genes in the pathway
+     * @param pathwaySize genes of the pathway in the pathway DB
+     * @return share of the transcriptome genes in the pathway over share of the pathway DB genes in the pathway,
+     * rounded to 4 decimal places
+     */
+    public double foldEnrichment(int hits, int pathwaySize) {
+        int size = Math.min(Math.max(pathwaySize, hits), universe);
+        if (hits <= 0 || selected == 0)
+            return 0;
+        return GSEA.round(((double) hits / selected) / ((double) size / universe), 4);
+    }
+
+    private double logBinomial(int n, int k) {
+        return logFactorial[n] - logFactorial[k] - logFactorial[n - k];
+    }
+}
@@ -0,0 +1,102 @@
+package org.pmoi.util;
+
+import java.util.SplittableRandom;
+
+/**
+ * Random permutations of the ranks of a {@link RankedList}, generated from a seed and shared by the GSEA runs of all
+ * gene sets. The first {@code count} permutations are generated once and stored row after row in a single array:
+ * count x size ints. Any further permutation is generated on demand by {@link #generate(int, int[])}, from its own
+ * seed.
+ */
+public class PermutationMatrix {
+
+    private final int size;
+    private final int count;
+    private final long seed;
+    private final int[] permutations;
+
+    private static final long GOLDEN_GAMMA = 0x9e3779b97f4a7c15L;
+
+    /**
+     * @param size number of ranks
+     * @param count number of stored permutations
+     * @param seed seed of the generator. The same seed gives the same permutations
+     */
+    public PermutationMatrix(int size, int count, long seed) {
+        if ((long) size * count > Integer.MAX_VALUE - 8)
+            throw new IllegalArgumentException(String.format("Too many permutations: %d x %d", count, size));
+        this.size = size;
+        this.count = count;
+        this.seed = seed;
+        this.permutations = new int[size * count];
+        SplittableRandom random = new SplittableRandom(seed);
+        int[] current = new int[size];
+        for (int i = 0; i < size; i++) {
+            current[i] = i;
+        }
+        for (int p = 0; p < count; p++) {
+            // Fisher-Yates, each permutation shuffles the previous one
+            for (int i = size - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                int tmp = current[i];
+                current[i] = current[j];
+                current[j] = tmp;
+            }
+            System.arraycopy(current, 0, permutations, p * size, size);
+        }
+    }
+
+    /**
+     * @return number of ranks
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * @return number of stored permutations
+     */
+    public int count() {
+        return count;
+    }
+
+    public long getSeed() {
+        return seed;
+    }
+
+    /**
+     * @param permutation stored permutation index
+     * @param rank rank
+     * @return original rank of the gene moved to the rank by the permutation
+     */
+    public int get(int permutation, int rank) {
+        return permutations[permutation * size + rank];
+    }
+
+    /**
+     * Generate a permutation that isn't stored
+     * @param permutation permutation index, at least {@link #count()}
+     * @param buffer receives the permutation, of length {@link #size()}
+     */
+    public void generate(int permutation, int[] buffer) {
+        if (permutation < count)
+            throw new IllegalArgumentException("Permutation " + permutation + " is stored");
+        SplittableRandom random = new SplittableRandom(seed + permutation * GOLDEN_GAMMA);
+        for (int i = 0; i < size; i++) {
+            buffer[i] = i;
+        }
+        for (int i = size - 1; i > 0; i--) {
+            int j = random.nextInt(i + 1);
+            int tmp = buffer[i];
+            buffer[i] = buffer[j];
+            buffer[j] = tmp;
+        }
+    }
+
+    /**
+     * @return all the permutations, row after row. Shared, must not be modified
+     */
+    int[] rows() {
+        return permutations;
+    }
+}
@@ -0,0 +1,96 @@
+package org.pmoi.util;
+
+import org.pmoi.model.Gene;
+
+import java.util.Arrays;
+import java.util.BitSet;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.List;
+import java.util.stream.IntStream;
+
+/**
+ * Genes ranked by decreasing significance score, with their scores and GSEA step weights precomputed.
+ * Built once per analysis and shared by the GSEA runs of all gene sets.
+ */
+public class RankedList {
+
+    public static final double STEP_WEIGHT = 1.5;
+
+    private final Gene[] genes;
+    private final int[] symbolIds;
+    private final double[] scores;
+    private final double[] weights;
+
+    /**
+     * @param geneList genes to rank. Genes with the same score keep their order
+     */
+    public RankedList(List<Gene> geneList) {
+        double[] unsorted = geneList.stream().mapToDouble(Gene::significanceScore).toArray();
+        int[] order = IntStream.range(0, unsorted.length).boxed()
+                .sorted(Comparator.comparingDouble((Integer i) -> unsorted[i]).reversed())
+                .mapToInt(Integer::intValue)
+                .toArray();
+        genes = new Gene[order.length];
+        symbolIds = new int[order.length];
+        scores = new double[order.length];
+        weights = new double[order.length];
+        for (int i = 0; i < order.length; i++) {
+            genes[i] = geneList.get(order[i]);
+            symbolIds[i] = genes[i].getSymbolId();
+            scores[i] = unsorted[order[i]];
+            weights[i] = Math.pow(Math.abs(scores[i]), STEP_WEIGHT);
+        }
+    }
+
+    public int size() {
+        return genes.length;
+    }
+
+    /**
+     * @param rank rank, starting at 0
+     * @return gene at the rank
+     */
+    public Gene getGene(int rank) {
+        return genes[rank];
+    }
+
+    /**
+     * @param rank rank, starting at 0
+     * @return significance score of the gene at the rank
+     */
+    public double getScore(int rank) {
+        return scores[rank];
+    }
+
+    /**
+     * @return step weights of the ranked genes, i.e. |score| ^ {@link #STEP_WEIGHT}. A copy, free to permute
+     */
+    public double[] getWeights() {
+        return Arrays.copyOf(weights, weights.length);
+    }
+
+    /**
+     * @return step weights of the ranked genes. Shared, must not be modified
+     */
+    double[] weights() {
+        return weights;
+    }
+
+    /**
+     * @param geneSet genes of a set
+     * @return true at the ranks of the genes of the set
+     */
+    public boolean[] hits(Collection<Gene> geneSet) {
+        BitSet ids = new BitSet();
+        for (Gene gene : geneSet) {
+            if (gene.getSymbolId() >= 0)
+                ids.set(gene.getSymbolId());
+        }
+        boolean[] hits = new boolean[symbolIds.length];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = symbolIds[i] >= 0 && ids.get(symbolIds[i]);
+        }
+        return hits;
+    }
+}
@@ -0,0 +1,32 @@
+package org.pmoi.util;
+
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Transport saving every response of another transport to an {@link HttpArchive}
+ */
+public class RecordingTransport implements Transport {
+
+    private final Transport transport;
+    private final HttpArchive archive;
+
+    public RecordingTransport(Transport transport, HttpArchive archive) {
+        this.transport = transport;
+        this.archive = archive;
+    }
+
+    @Override
+    public Response send(URI uri, Duration timeout) throws IOException {
+        Response response = transport.send(uri, timeout);
+        byte[] body;
+        try (InputStream in = response.getBody()) {
+            body = in.readAllBytes();
+        }
+        archive.put(uri.toString(), response.getStatusCode(), response.getContentEncoding(), body);
+        return new Response(response.getStatusCode(), response.getContentEncoding(), new ByteArrayInputStream(body));
+    }
+}
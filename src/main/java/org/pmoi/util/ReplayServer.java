@@ -0,0 +1,134 @@
+package org.pmoi.util;
+
+import com.sun.net.httpserver.HttpExchange;
+import com.sun.net.httpserver.HttpServer;
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URI;
+import java.time.Duration;
+import java.util.SplittableRandom;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Embedded HTTP server answering from an {@link HttpArchive}, to run the remote data clients offline with
+ * reproducible timings. Requests are expected in the form sent by {@link HttpClientTransport}:
+ * {@code /<scheme>/<authority><path>?<query>}.
+ * <p>
+ * Each response is delayed by the configured latency and a share of the requests, given by the error rate, is answered
+ * 503 Service Unavailable. URIs missing from the archive are answered 501 Not Implemented.
+ */
+public class ReplayServer implements Closeable {
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    private final HttpArchive archive;
+    private final long latency;
+    private final double errorRate;
+    private final SplittableRandom random;
+    private final HttpServer server;
+    private final ExecutorService executor;
+    private final AtomicLong requests = new AtomicLong();
+    private final AtomicLong errors = new AtomicLong();
+
+    /**
+     * Start a server on a free loopback port
+     * @param archive recorded responses
+     * @param latency delay added to every response
+     * @param errorRate share of requests answered with an error (0 - 1)
+     * @param seed seed of the error injection
+     * @throws IOException unable to start the server
+     */
+    public ReplayServer(HttpArchive archive, Duration latency, double errorRate, long seed) throws IOException {
+        if (errorRate < 0 || errorRate > 1)
+            throw new IllegalArgumentException("Error rate must be between 0 and 1");
+        this.archive = archive;
+        this.latency = latency.toMillis();
+        this.errorRate = errorRate;
+        this.random = new SplittableRandom(seed);
+        this.server = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        this.executor = Executors.newCachedThreadPool(r -> {
+            Thread thread = new Thread(r, "replay-server");
+            thread.setDaemon(true);
+            return thread;
+        });
+        server.createContext("/", this::handle);
+        server.setExecutor(executor);
+        server.start();
+        LOGGER.info("Replaying {} recorded responses on {}", archive.size(), getURI());
+    }
+
+    /**
+     * @return base URI of the server
+     */
+    public URI getURI() {
+        InetSocketAddress address = server.getAddress();
+        return URI.create("http://" + address.getHostString() + ":" + address.getPort());
+    }
+
+    /**
+     * @return number of requests received so far
+     */
+    public long getRequestCount() {
+        return requests.get();
+    }
+
+    /**
+     * @return number of injected errors so far
+     */
+    public long getErrorCount() {
+        return errors.get();
+    }
+
+    private void handle(HttpExchange exchange) throws IOException {
+        try (exchange) {
+            requests.incrementAndGet();
+            if (latency > 0)
+                Thread.sleep(latency);
+            if (nextError()) {
+                errors.incrementAndGet();
+                exchange.sendResponseHeaders(503, -1);
+                return;
+            }
+            URI request = exchange.getRequestURI();
+            String path = request.getRawPath().substring(1);
+            int schemeEnd = path.indexOf('/');
+            String uri = schemeEnd < 0 ? path : path.substring(0, schemeEnd) + "://" + path.substring(schemeEnd + 1)
+                    + (request.getRawQuery() == null ? "" : "?" + request.getRawQuery());
+            HttpArchive.Entry entry = archive.get(uri);
+            if (entry == null) {
+                LOGGER.warn("No recorded response for {}", uri);
+                exchange.sendResponseHeaders(501, -1);
+                return;
+            }
+            byte[] body = archive.getBody(entry);
+            if (entry.getContentEncoding() != null)
+                exchange.getResponseHeaders().add("Content-Encoding", entry.getContentEncoding());
+            exchange.sendResponseHeaders(entry.getStatusCode(), body.length == 0 ? -1 : body.length);
+            if (body.length > 0) {
+                try (OutputStream out = exchange.getResponseBody()) {
+                    out.write(body);
+                }
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private synchronized boolean nextError() {
+        return errorRate > 0 && random.nextDouble() < errorRate;
+    }
+
+    @Override
+    public void close() {
+        server.stop(0);
+        executor.shutdownNow();
+    }
+}
@@ -0,0 +1,305 @@
+package org.pmoi.util;
+
+import org.apache.logging.log4j.LogManager;
+import org.apache.logging.log4j.Logger;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Schedules the requests sent to a remote host:
+ * <ul>
+ *     <li>at most {@code permitsPerSecond} requests are started per second</li>
+ *     <li>at most {@code maxConcurrency} requests run at the same time</li>
+ *     <li>failed requests are retried after a jittered exponential backoff</li>
+ *     <li>after {@code failureThreshold} consecutive failures the circuit opens and requests fail fast with a
+ *     {@link CircuitOpenException} until {@code openDuration} has elapsed. A single trial request is then let
+ *     through, closing the circuit if it succeeds</li>
+ * </ul>
+ * Connection errors and HTTP codes 429, 502, 503 and 504 are retried. Other HTTP errors are returned to the caller
+ * right away and don't count as failures. Other runtime exceptions thrown by a request, e.g. by its response parser,
+ * are returned to the caller right away and count as failures.
+ */
+public class RequestScheduler {
+
+    private static final Logger LOGGER = LogManager.getRootLogger();
+
+    private static final Map<String, RequestScheduler> SCHEDULERS = new ConcurrentHashMap<>();
+
+    static {
+        register("rest.kegg.jp", new Builder().withPermitsPerSecond(3).withMaxConcurrency(3).build());
+        register("string-db.org", new Builder().withPermitsPerSecond(1).withMaxConcurrency(1).build());
+        register("reactome.org", new Builder().withPermitsPerSecond(10).withMaxConcurrency(8).build());
+        register("webservice.wikipathways.org", new Builder().withPermitsPerSecond(5).withMaxConcurrency(4).build());
+    }
+
+    private final long interval;
+    private final Semaphore concurrency;
+    private final int maxRetries;
+    private final long baseDelay;
+    private final long maxDelay;
+    private final int failureThreshold;
+    private final long openDuration;
+    private final Clock clock;
+
+    private long nextPermit;
+    private int failures;
+    private long openUntil;
+    private boolean trial;
+
+    private RequestScheduler(Builder builder) {
+        this.interval = (long) (TimeUnit.SECONDS.toNanos(1) / builder.permitsPerSecond);
+        this.concurrency = new Semaphore(builder.maxConcurrency, true);
+        this.maxRetries = builder.maxRetries;
+        this.baseDelay = builder.baseDelay.toMillis();
+        this.maxDelay = builder.maxDelay.toMillis();
+        this.failureThreshold = builder.failureThreshold;
+        this.openDuration = builder.openDuration.toNanos();
+        this.clock = builder.clock;
+    }
+
+    /**
+     * @param host host name
+     * @return the scheduler of the host. Hosts without a registered scheduler get one with the default settings
+     */
+    public static RequestScheduler forHost(String host) {
+        return SCHEDULERS.computeIfAbsent(host.toLowerCase(), k -> new Builder().build());
+    }
+
+    /**
+     * Set the scheduler of a host, replacing any previous one
+     * @param host host name
+     * @param scheduler scheduler
+     */
+    public static void register(String host, RequestScheduler scheduler) {
+        SCHEDULERS.put(host.toLowerCase(), scheduler);
+    }
+
+    /**
+     * Set the limits of a host from a {@code host=permitsPerSecond[/maxConcurrency]} specification, replacing any
+     * previous scheduler of the host
+     * @param specification limits of the host, e.g. {@code string-db.org=2/1}
+     * @throws IllegalArgumentException the specification is malformed
+     */
+    public static void configure(String specification) {
+        String[] hostLimits = specification.split("=", 2);
+        if (hostLimits.length != 2 || hostLimits[0].isBlank())
+            throw new IllegalArgumentException("Expected host=permitsPerSecond[/maxConcurrency], found " + specification);
+        String[] limits = hostLimits[1].split("/", 2);
+        Builder builder = new Builder();
+        try {
+            builder.withPermitsPerSecond(Double.parseDouble(limits[0]));
+            if (limits.length == 2)
+                builder.withMaxConcurrency(Integer.parseInt(limits[1]));
+        } catch (NumberFormatException e) {
+            throw new IllegalArgumentException("Expected host=permitsPerSecond[/maxConcurrency], found " + specification);
+        }
+        register(hostLimits[0].strip(), builder.build());
+    }
+
+    /**
+     * Run a request, retrying it if needed
+     * @param request request
+     * @param <T> result type
+     * @return result of the request
+     * @throws CircuitOpenException the host is considered down
+     * @throws IOException the request failed, after retries for transient errors
+     */
+    public <T> T execute(Request<T> request) throws IOException {
+        int attempt = 0;
+        while (true) {
+            boolean trialRequest = enter();
+            try {
+                concurrency.acquire();
+                try {
+                    acquirePermit();
+                    T result = request.call();
+                    success();
+                    return result;
+                } finally {
+                    concurrency.release();
+                }
+            } catch (IOException | HttpException e) {
+                if (!isRetryable(e)) {
+                    if (trialRequest)
+                        success();
+                    throw e;
+                }
+                failure(trialRequest);
+                if (++attempt > maxRetries)
+                    throw e;
+                long delay = backoff(attempt);
+                LOGGER.debug("Request failed: {}. Retrying in {} ms ({}/{})", e.getMessage(), delay, attempt, maxRetries);
+                clock.sleep(TimeUnit.MILLISECONDS.toNanos(delay));
+            } catch (RuntimeException e) {
+                // e.g. a response that can't be parsed. Not retried, but counted so a trial request can't stay pending
+                failure(trialRequest);
+                throw e;
+            } catch (InterruptedException e) {
+                if (trialRequest)
+                    abandon();
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException(e.getMessage());
+            }
+        }
+    }
+
+    /**
+     * Check the circuit before sending a request
+     * @return true if the request is the trial request of a half open circuit
+     * @throws CircuitOpenException the circuit is open
+     */
+    private synchronized boolean enter() throws CircuitOpenException {
+        if (openUntil == 0)
+            return false;
+        if (clock.nanoTime() < openUntil || trial)
+            throw new CircuitOpenException("Service unavailable, not sending requests for now");
+        trial = true;
+        return true;
+    }
+
+    private synchronized void success() {
+        failures = 0;
+        openUntil = 0;
+        trial = false;
+    }
+
+    /**
+     * Give the trial of a half open circuit to the next request
+     */
+    private synchronized void abandon() {
+        trial = false;
+    }
+
+    private synchronized void failure(boolean trialRequest) {
+        if (trialRequest || ++failures >= failureThreshold) {
+            if (openUntil == 0 || trialRequest)
+                LOGGER.warn("Too many failed requests. Pausing requests for {} s", TimeUnit.NANOSECONDS.toSeconds(openDuration));
+            openUntil = clock.nanoTime() + openDuration;
+            trial = false;
+        }
+    }
+
+    /**
+     * Wait for the next request slot
+     */
+    private void acquirePermit() throws InterruptedIOException {
+        long wait;
+        synchronized (this) {
+            long now = clock.nanoTime();
+            long slot = Math.max(now, nextPermit);
+            nextPermit = slot + interval;
+            wait = slot - now;
+        }
+        clock.sleep(wait);
+    }
+
+    /**
+     * Full jitter: a random delay between 0 and the exponential backoff
+     */
+    long backoff(int attempt) {
+        long delay = Math.min(maxDelay, baseDelay << Math.min(attempt - 1, 20));
+        return ThreadLocalRandom.current().nextLong(delay + 1);
+    }
+
+    private static boolean isRetryable(Exception e) {
+        if (e instanceof CircuitOpenException || e instanceof FileNotFoundException || e instanceof InterruptedIOException)
+            return false;
+        if (e instanceof HttpException) {
+            int code = ((HttpException) e).getStatusCode();
+            return code == 429 || code == 502 || code == 503 || code == 504;
+        }
+        return true;
+    }
+
+    @FunctionalInterface
+    public interface Request<T> {
+        T call() throws IOException;
+    }
+
+    /**
+     * Time source of the scheduler, replaced in tests
+     */
+    interface Clock {
+        Clock SYSTEM = new Clock() {
+            @Override
+            public long nanoTime() {
+                return System.nanoTime();
+            }
+
+            @Override
+            public void sleep(long nanos) throws InterruptedIOException {
+                if (nanos <= 0)
+                    return;
+                try {
+                    TimeUnit.NANOSECONDS.sleep(nanos);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    throw new InterruptedIOException(e.getMessage());
+                }
+            }
+        };
+
+        long nanoTime();
+
+        void sleep(long nanos) throws InterruptedIOException;
+    }
+
+    public static class Builder {
+        private double permitsPerSecond = 10;
+        private int maxConcurrency = 8;
+        private int maxRetries = 6;
+        private Duration baseDelay = Duration.ofMillis(500);
+        private Duration maxDelay = Duration.ofSeconds(30);
+        private int failureThreshold = 10;
+        private Duration openDuration = Duration.ofMinutes(1);
+        private Clock clock = Clock.SYSTEM;
+
+        public Builder withPermitsPerSecond(double permitsPerSecond) {
+            if (permitsPerSecond <= 0)
+                throw new IllegalArgumentException("permitsPerSecond must be positive");
+            this.permitsPerSecond = permitsPerSecond;
+            return this;
+        }
+
+        public Builder withMaxConcurrency(int maxConcurrency) {
+            if (maxConcurrency < 1)
+                throw new IllegalArgumentException("maxConcurrency must be positive");
+            this.maxConcurrency = maxConcurrency;
+            return this;
+        }
+
+        public Builder withMaxRetries(int maxRetries) {
+            this.maxRetries = maxRetries;
+            return this;
+        }
+
+        public Builder withBackoff(Duration baseDelay, Duration maxDelay) {
+            this.baseDelay = baseDelay;
+            this.maxDelay = maxDelay;
+            return this;
+        }
+
+        public Builder withCircuitBreaker(int failureThreshold, Duration openDuration) {
+            this.failureThreshold = failureThreshold;
+            this.openDuration = openDuration;
+            return this;
+        }
+
+        Builder withClock(Clock clock) {
+            this.clock = clock;
+            return this;
+        }
+
+        public RequestScheduler build() {
+            return new RequestScheduler(this);
+        }
+    }
+}
@@ -0,0 +1,48 @@
+package org.pmoi.util;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.time.Duration;
+
+/**
+ * Sends the GET requests of {@link HttpConnector}. The default transport talks to the remote hosts, others record
+ * the responses to an {@link HttpArchive} or send the requests to a {@link ReplayServer}
+ */
+public interface Transport {
+
+    /**
+     * @param uri request URI
+     * @param timeout request timeout
+     * @return response. The body is sent as received, possibly gzip compressed
+     * @throws IOException connection issues
+     */
+    Response send(URI uri, Duration timeout) throws IOException;
+
+    class Response {
+        private final int statusCode;
+        private final String contentEncoding;
+        private final InputStream body;
+
+        public Response(int statusCode, String contentEncoding, InputStream body) {
+            this.statusCode = statusCode;
+            this.contentEncoding = contentEncoding;
+            this.body = body;
+        }
+
+        public int getStatusCode() {
+            return statusCode;
+        }
+
+        /**
+         * @return value of the Content-Encoding header, null if absent
+         */
+        public String getContentEncoding() {
+            return contentEncoding;
+        }
+
+        public InputStream getBody() {
+            return body;
+        }
+    }
+}
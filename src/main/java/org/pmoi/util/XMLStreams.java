@@ -0,0 +1,94 @@
+package org.pmoi.util;
+
+import javax.xml.stream.XMLInputFactory;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.IOException;
+import java.io.InputStream;
+
+/**
+ * StAX helpers for parsing remote XML responses without building a document tree
+ */
+public class XMLStreams {
+
+    private static final XMLInputFactory FACTORY = XMLInputFactory.newFactory();
+
+    static {
+        // no DTD nor external entity
+        FACTORY.setProperty(XMLInputFactory.SUPPORT_DTD, false);
+        FACTORY.setProperty(XMLInputFactory.IS_SUPPORTING_EXTERNAL_ENTITIES, false);
+        FACTORY.setProperty(XMLInputFactory.IS_COALESCING, false);
+    }
+
+    private XMLStreams() {
+    }
+
+    /**
+     * @param in XML document
+     * @return stream reader over the document
+     * @throws IOException the document can't be read
+     */
+    public static XMLStreamReader createReader(InputStream in) throws IOException {
+        try {
+            return FACTORY.createXMLStreamReader(in);
+        } catch (XMLStreamException e) {
+            throw new IOException(e);
+        }
+    }
+
+    /**
+     * Input stream over the text content of the current element of a reader, up to its end tag. Text is read lazily,
+     * one event at a time, and must be ASCII (e.g. base64). Nested elements are not supported
+     * @param reader reader positioned on a start tag
+     * @return element text as bytes
+     */
+    public static InputStream textStream(XMLStreamReader reader) {
+        return new InputStream() {
+            private char[] chars = new char[0];
+            private int position;
+            private int end;
+            private boolean done;
+
+            @Override
+            public int read() throws IOException {
+                if (!fill())
+                    return -1;
+                return chars[position++] & 0xFF;
+            }
+
+            @Override
+            public int read(byte[] b, int off, int len) throws IOException {
+                if (len == 0)
+                    return 0;
+                if (!fill())
+                    return -1;
+                int n = Math.min(len, end - position);
+                for (int i = 0; i < n; i++) {
+                    b[off + i] = (byte) chars[position + i];
+                }
+                position += n;
+                return n;
+            }
+
+            private boolean fill() throws IOException {
+                while (position == end) {
+                    if (done)
+                        return false;
+                    try {
+                        int event = reader.next();
+                        if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA) {
+                            chars = reader.getTextCharacters();
+                            position = reader.getTextStart();
+                            end = position + reader.getTextLength();
+                        } else if (event == XMLStreamReader.END_ELEMENT || event == XMLStreamReader.END_DOCUMENT) {
+                            done = true;
+                        }
+                    } catch (XMLStreamException e) {
+                        throw new IOException(e);
+                    }
+                }
+                return true;
+            }
+        };
+    }
+}
@@ -0,0 +1,13 @@
+package org.pmoi.validator;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+public class AnalysisValidator implements IParameterValidator {
+    @Override
+    public void validate(String name, String value) {
+        if (!value.equals("GSEA") && !value.equals("ORA")){
+            throw new ParameterException("Parameter " + name + " should be GSEA or ORA (found " + value + ")");
+        }
+    }
+}
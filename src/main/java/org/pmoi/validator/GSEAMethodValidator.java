@@ -0,0 +1,13 @@
+package org.pmoi.validator;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+public class GSEAMethodValidator implements IParameterValidator {
+    @Override
+    public void validate(String name, String value) {
+        if (!value.equals("PERMUTATION") && !value.equals("MULTILEVEL")){
+            throw new ParameterException("Parameter " + name + " should be PERMUTATION or MULTILEVEL (found " + value + ")");
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package org.pmoi.validator;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+import org.pmoi.util.NumberParser;
+
+public class PermutationsValidator implements IParameterValidator {
+
+    @Override
+    public void validate(String name, String value) {
+        if (!NumberParser.tryParseInt(value) || Integer.parseInt(value) < 1) {
+            throw new ParameterException("Parameter " + name + " should be a positive integer (found " + value + ")");
+        }
+    }
+}
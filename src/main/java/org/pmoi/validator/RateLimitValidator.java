@@ -0,0 +1,14 @@
+package org.pmoi.validator;
+
+import com.beust.jcommander.IParameterValidator;
+import com.beust.jcommander.ParameterException;
+
+public class RateLimitValidator implements IParameterValidator {
+    @Override
+    public void validate(String name, String value) {
+        if (!value.matches("[^=\\s]+=\\d*\\.?\\d+(/[1-9]\\d*)?") || Double.parseDouble(value.split("[=/]")[1]) <= 0) {
+            throw new ParameterException("Parameter " + name + " should be host=permitsPerSecond[/maxConcurrency] " +
+                    "(found " + value + ")");
+        }
+    }
+}
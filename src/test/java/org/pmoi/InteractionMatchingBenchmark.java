@@ -0,0 +1,108 @@
+package org.pmoi;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pmoi.model.Gene;
+import org.pmoi.model.Protein;
+import org.pmoi.model.ResultRecord;
+
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Matching of secreted protein interactors with the membranome: hash join against the former nested scans.
+ * The cost of the join should grow linearly with the number of interactions ({@code proteins} x 40), the former one
+ * also with the membranome size.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class InteractionMatchingBenchmark {
+
+    private static final int INTERACTORS = 40;
+    private static final int MEMBRANOME = 2_000;
+
+    @Param({"100", "400", "1600"})
+    private int proteins;
+
+    private List<Protein> secretome;
+    private List<Gene> membranome;
+    private Map<String, Map<String, String>> networks;
+    private ExecutorService executor;
+
+    @Setup
+    public void setup() throws InterruptedException {
+        SplittableRandom random = new SplittableRandom(42);
+        membranome = new ArrayList<>(MEMBRANOME);
+        for (int i = 0; i < MEMBRANOME; i++) {
+            membranome.add(new Gene("RECEPTOR" + i, String.valueOf(i), 0.01, 2));
+        }
+        secretome = new ArrayList<>(proteins);
+        networks = new HashMap<>();
+        for (int p = 0; p < proteins; p++) {
+            Protein protein = new Protein("SECRETED" + p, String.valueOf(100_000 + p));
+            secretome.add(protein);
+            Map<String, String> interactors = new HashMap<>();
+            for (int i = 0; i < INTERACTORS; i++) {
+                // a quarter of the interactors are membrane genes, with StringDB's case
+                String name = random.nextInt(4) == 0 ? "Receptor" + random.nextInt(MEMBRANOME) : "GENE" + random.nextInt(20_000);
+                interactors.put(name, "0.9" + random.nextInt(100));
+            }
+            networks.put(protein.getName(), interactors);
+        }
+        executor = Executors.newFixedThreadPool(4);
+        if (hashJoin().size() != nestedScans().size())
+            throw new IllegalStateException("Implementations disagree");
+    }
+
+    @TearDown
+    public void tearDown() {
+        executor.shutdown();
+    }
+
+    @Benchmark
+    public List<ResultRecord> hashJoin() throws InterruptedException {
+        return OperationDispatcher.matchInteractors(secretome, membranome, networks, executor);
+    }
+
+    /**
+     * Former implementation
+     */
+    @Benchmark
+    public List<ResultRecord> nestedScans() throws InterruptedException {
+        List<ResultRecord> resultSet = Collections.synchronizedList(new ArrayList<>());
+        var membraneGenes = membranome.stream().map(f -> f.getName().toUpperCase()).collect(Collectors.toSet());
+        var futures = secretome.stream().map(e -> executor.submit(() -> {
+            Map<String, String> interactors = networks.get(e.getName());
+            var interactorsNames = interactors.keySet().parallelStream()
+                    .filter(i -> membraneGenes.stream().anyMatch(i::equalsIgnoreCase))
+                    .collect(Collectors.toList());
+            interactorsNames.forEach(interactor -> {
+                Gene gene = membranome.stream().filter(g -> g.getName().equalsIgnoreCase(interactor))
+                        .findFirst().orElse(null);
+                assert gene != null;
+                resultSet.add(new ResultRecord(e, new Gene(gene), interactors.get(interactor)));
+            });
+        })).collect(Collectors.toList());
+        for (var future : futures) {
+            try {
+                future.get();
+            } catch (Exception ex) {
+                throw new IllegalStateException(ex);
+            }
+        }
+        return resultSet;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(InteractionMatchingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
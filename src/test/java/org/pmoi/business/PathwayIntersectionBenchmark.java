@@ -0,0 +1,94 @@
+package org.pmoi.business;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pmoi.model.Gene;
+import org.pmoi.model.Pathway;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Pathway - transcriptome intersections of a run: cached bitset intersections against the former filter of the
+ * transcriptome for every (record, pathway) pair. Each of the {@code records} interacting genes is in 30 of 350
+ * pathways of 80 genes, with a transcriptome of 20k genes.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathwayIntersectionBenchmark {
+
+    private static final int TRANSCRIPTOME = 20_000;
+    private static final int PATHWAYS = 350;
+
+    @Param({"50", "200", "800"})
+    private int records;
+
+    private List<Gene> transcriptome;
+    private List<List<Pathway>> recordPathways;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        transcriptome = new ArrayList<>(TRANSCRIPTOME);
+        for (int i = 0; i < TRANSCRIPTOME; i++) {
+            transcriptome.add(new Gene("GENE" + i, String.valueOf(i), 0.01, 2));
+        }
+        List<Pathway> pathways = new ArrayList<>(PATHWAYS);
+        for (int p = 0; p < PATHWAYS; p++) {
+            List<Gene> genes = new ArrayList<>(80);
+            for (int i = 0; i < 80; i++) {
+                // some pathway genes aren't expressed
+                genes.add(new Gene("GENE" + random.nextInt(TRANSCRIPTOME + 5_000), ""));
+            }
+            pathways.add(new Pathway("path" + p, "Pathway " + p, genes));
+        }
+        recordPathways = new ArrayList<>(records);
+        for (int r = 0; r < records; r++) {
+            List<Pathway> list = new ArrayList<>(30);
+            for (int i = 0; i < 30; i++) {
+                list.add(pathways.get(random.nextInt(PATHWAYS)));
+            }
+            recordPathways.add(list);
+        }
+        Pathway pathway = pathways.get(0);
+        if (!new TranscriptomeIndex(transcriptome).intersect(pathway)
+                .equals(transcriptome.stream().filter(pathway::contains).collect(Collectors.toList())))
+            throw new IllegalStateException("Implementations disagree");
+    }
+
+    @Benchmark
+    public void bitsetIntersections(Blackhole bh) {
+        TranscriptomeIndex index = new TranscriptomeIndex(transcriptome);
+        for (List<Pathway> pathways : recordPathways) {
+            for (Pathway pathway : pathways) {
+                bh.consume(index.intersect(pathway));
+            }
+        }
+    }
+
+    /**
+     * Former implementation
+     */
+    @Benchmark
+    public void transcriptomeFilter(Blackhole bh) {
+        for (List<Pathway> pathways : recordPathways) {
+            for (Pathway pathway : pathways) {
+                bh.consume(transcriptome.stream().filter(pathway::contains).collect(Collectors.toList()));
+            }
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PathwayIntersectionBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,76 @@
+package org.pmoi.business;
+
+import org.junit.jupiter.api.Test;
+import org.pmoi.model.Gene;
+import org.pmoi.model.Pathway;
+
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class TranscriptomeIndexTest {
+
+    private static List<Gene> genes(SplittableRandom random, int size, int names) {
+        List<Gene> genes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = "TXTEST" + random.nextInt(names);
+            genes.add(new Gene(random.nextBoolean() ? name : name.toLowerCase(), String.valueOf(i), 0.01, 2));
+        }
+        return genes;
+    }
+
+    /**
+     * Former implementation: filter the transcriptome with the pathway gene list
+     */
+    private static List<Gene> filter(List<Gene> transcriptome, Pathway pathway) {
+        return transcriptome.stream()
+                .filter(e -> pathway.getGenes().stream().anyMatch(g -> g.getName().equalsIgnoreCase(e.getName())))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void matchesTranscriptomeFilter() {
+        SplittableRandom random = new SplittableRandom(17);
+        // duplicated transcriptome names and names missing from the transcriptome
+        List<Gene> transcriptome = genes(random, 400, 500);
+        List<Pathway> pathways = new ArrayList<>();
+        for (int p = 0; p < 50; p++) {
+            pathways.add(new Pathway("tx" + p, "pathway " + p, genes(random, random.nextInt(60), 700)));
+        }
+        pathways.add(new Pathway("empty", "empty", new ArrayList<>()));
+        TranscriptomeIndex index = new TranscriptomeIndex(transcriptome);
+        for (Pathway pathway : pathways) {
+            List<Gene> expected = filter(transcriptome, pathway);
+            List<Gene> actual = index.intersect(pathway);
+            assertEquals(expected.size(), actual.size(), pathway.getPathwayID());
+            for (int i = 0; i < expected.size(); i++) {
+                assertSame(expected.get(i), actual.get(i));
+            }
+            assertEquals(transcriptome.stream().filter(pathway::contains).collect(Collectors.toList()), actual);
+        }
+        assertEquals(pathways.size(), index.size());
+    }
+
+    @Test
+    void intersectionsAreShared() throws InterruptedException, ExecutionException {
+        SplittableRandom random = new SplittableRandom(18);
+        List<Gene> transcriptome = genes(random, 200, 150);
+        Pathway pathway = new Pathway("shared", "shared", genes(random, 40, 150));
+        TranscriptomeIndex index = new TranscriptomeIndex(transcriptome);
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        List<Future<List<Gene>>> futures = new ArrayList<>();
+        for (int i = 0; i < 16; i++) {
+            futures.add(service.submit(() -> index.intersect(pathway)));
+        }
+        List<Gene> first = futures.get(0).get();
+        for (Future<List<Gene>> future : futures) {
+            assertSame(first, future.get());
+        }
+        service.shutdown();
+        assertEquals(1, index.size());
+        assertEquals(filter(transcriptome, pathway), first);
+        assertThrows(UnsupportedOperationException.class, () -> first.add(transcriptome.get(0)));
+    }
+}
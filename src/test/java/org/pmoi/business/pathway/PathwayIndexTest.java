@@ -0,0 +1,121 @@
+package org.pmoi.business.pathway;
+
+import org.junit.jupiter.api.Test;
+import org.pmoi.model.Gene;
+import org.pmoi.model.Pathway;
+
+import java.io.*;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PathwayIndexTest {
+
+    private static List<Pathway> pathways(SplittableRandom random) {
+        List<Pathway> pathways = new ArrayList<>();
+        for (int p = 0; p < 60; p++) {
+            List<Gene> genes = new ArrayList<>();
+            int size = random.nextInt(40);
+            for (int g = 0; g < size; g++) {
+                String name = "PWTEST" + random.nextInt(300);
+                genes.add(new Gene(random.nextBoolean() ? name : name.toLowerCase(), ""));
+                // genes listed twice
+                if (random.nextInt(10) == 0)
+                    genes.add(new Gene(name, ""));
+            }
+            // entries without a symbol
+            if (random.nextInt(5) == 0)
+                genes.add(new Gene(p));
+            pathways.add(new Pathway("pw" + p, "pathway " + p, genes));
+        }
+        return pathways;
+    }
+
+    /**
+     * Former implementation: scan every pathway
+     */
+    private static List<Pathway> scan(List<Pathway> pathways, String gene) {
+        return pathways.stream()
+                .filter(p -> p.getGenes().stream().anyMatch(g -> g.getName() != null && g.getName().equalsIgnoreCase(gene)))
+                .collect(Collectors.toList());
+    }
+
+    @Test
+    void matchesPathwayScan() {
+        List<Pathway> pathways = pathways(new SplittableRandom(16));
+        PathwayIndex index = new PathwayIndex(pathways);
+        for (int i = 0; i < 320; i++) {
+            for (String gene : List.of("PWTEST" + i, "pwtest" + i, "PwTest" + i)) {
+                List<Pathway> expected = scan(pathways, gene);
+                List<Pathway> actual = index.get(gene);
+                assertEquals(expected.size(), actual.size(), gene);
+                for (int p = 0; p < expected.size(); p++) {
+                    assertSame(expected.get(p), actual.get(p), gene);
+                }
+                assertEquals(!expected.isEmpty(), index.contains(gene), gene);
+            }
+        }
+        assertEquals(pathways.stream().flatMap(p -> p.getGenes().stream()).map(Gene::getName)
+                .filter(Objects::nonNull).map(String::toUpperCase).distinct().count(), index.size());
+        assertTrue(index.get(null).isEmpty());
+        assertFalse(index.contains(null));
+        assertThrows(UnsupportedOperationException.class, () -> index.get("PWTEST1").clear());
+    }
+
+    @Test
+    void namesAreMatchedWhateverTheLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            Pathway pathway = new Pathway("pi3k", "PI3K signaling", List.of(new Gene("pik3ca", ""), new Gene("ITGB1", "")));
+            PathwayIndex index = new PathwayIndex(List.of(pathway));
+            for (String name : List.of("PIK3CA", "pik3ca", "Pik3ca", "itgb1", "ITGB1")) {
+                assertEquals(!scan(List.of(pathway), name).isEmpty(), index.contains(name), name);
+                assertEquals(List.of(pathway), index.get(name), name);
+            }
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void snapshotsWithoutIndexAreIndexedWhenRead() throws IOException, ClassNotFoundException {
+        List<Pathway> pathways = pathways(new SplittableRandom(18));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(pathways);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            List<Pathway> loaded = (List<Pathway>) in.readObject();
+            PathwayIndex index = PathwayIndex.read(in, loaded);
+            for (int i = 0; i < 300; i++) {
+                assertEquals(scan(loaded, "PWTEST" + i), index.get("PWTEST" + i));
+            }
+        }
+    }
+
+    @Test
+    void sharesPathwaysWithTheSnapshot() throws IOException, ClassNotFoundException {
+        List<Pathway> pathways = pathways(new SplittableRandom(17));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(pathways);
+            out.writeObject(new PathwayIndex(pathways));
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            @SuppressWarnings("unchecked")
+            List<Pathway> loaded = (List<Pathway>) in.readObject();
+            PathwayIndex index = PathwayIndex.read(in, List.of());
+            Set<Pathway> instances = Collections.newSetFromMap(new IdentityHashMap<>());
+            instances.addAll(loaded);
+            for (int i = 0; i < 300; i++) {
+                String gene = "PWTEST" + i;
+                List<Pathway> expected = scan(loaded, gene);
+                assertEquals(expected, index.get(gene));
+                index.get(gene).forEach(p -> assertTrue(instances.contains(p)));
+            }
+        }
+    }
+}
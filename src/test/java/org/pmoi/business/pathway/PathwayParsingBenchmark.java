@@ -0,0 +1,178 @@
+package org.pmoi.business.pathway;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonParser;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import javax.xml.XMLConstants;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.Base64;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+/**
+ * Parsing of Reactome and WikiPathways responses: whole document trees against streaming.
+ * Payloads mimic a Reactome participatingPhysicalEntities response of 80 entities and a WikiPathways getPathwayAs
+ * response holding a gpml document of 300 data nodes. Run with {@code -prof gc} to compare allocation rates.
+ * The payloads are synthetic, no recorded responses being available. Parser correctness is covered by
+ * {@code PathwayParsingTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class PathwayParsingBenchmark {
+
+    private static final Pattern ENZYME_PATTERN = Pattern.compile("(?:\\d*\\.){3}\\d+");
+    private static final Pattern NAME_PATTERN = Pattern.compile("(^[\\w-]+)");
+
+    private byte[] participants;
+    private byte[] pathway;
+
+    static byte[] participants(int size) {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder json = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            String className = switch (random.nextInt(4)) {
+                case 0 -> "Complex";
+                case 1 -> "Genes and Transcripts";
+                default -> "Protein";
+            };
+            if (i > 0)
+                json.append(',');
+            json.append("{\"dbId\":").append(100_000 + i)
+                    .append(",\"displayName\":\"GENE").append(i).append(" [plasma membrane]\"")
+                    .append(",\"stId\":\"R-HSA-").append(200_000 + i).append("\",\"stIdVersion\":\"R-HSA-")
+                    .append(200_000 + i).append(".1\",\"isInDisease\":false")
+                    .append(",\"name\":[\"GENE").append(i).append("\",\"Gene product ").append(i)
+                    .append("\",\"ALIAS").append(i).append("\"]")
+                    .append(",\"speciesName\":\"Homo sapiens\",\"className\":\"").append(className)
+                    .append("\",\"schemaClass\":\"EntityWithAccessionedSequence\",\"startCoordinate\":1")
+                    .append(",\"endCoordinate\":").append(100 + random.nextInt(900))
+                    .append(",\"referenceType\":\"ReferenceGeneProduct\"")
+                    .append(",\"compartment\":[{\"dbId\":876,\"displayName\":\"plasma membrane\",")
+                    .append("\"accession\":\"0005886\",\"databaseName\":\"GO\",\"definition\":\"The membrane ")
+                    .append("surrounding a cell that separates the cell from its external environment.\",")
+                    .append("\"name\":\"plasma membrane\",\"className\":\"Compartment\",\"schemaClass\":\"Compartment\"}]}");
+        }
+        return json.append(']').toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    static byte[] getPathwayAs(int dataNodes) {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder gpml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<Pathway xmlns=\"http://pathvisio.org/GPML/2013a\" Name=\"Synthetic pathway\" ")
+                .append("Organism=\"Homo sapiens\">\n  <Comment Source=\"WikiPathways-description\">A pathway</Comment>\n");
+        for (int i = 0; i < dataNodes; i++) {
+            String type = random.nextInt(5) == 0 ? "Metabolite" : random.nextBoolean() ? "GeneProduct" : "Protein";
+            String label = random.nextInt(20) == 0 ? "1.1.1." + i : "GENE" + i + (random.nextInt(10) == 0 ? "_P" : "");
+            gpml.append("  <DataNode TextLabel=\"").append(label).append("\" GraphId=\"n").append(i)
+                    .append("\" Type=\"").append(type).append("\">\n")
+                    .append("    <Graphics CenterX=\"").append(random.nextInt(1000)).append("\" CenterY=\"")
+                    .append(random.nextInt(1000)).append("\" Width=\"80.0\" Height=\"20.0\" ZOrder=\"32768\" ")
+                    .append("FontSize=\"10\" Valign=\"Middle\" />\n")
+                    .append("    <Xref Database=\"Entrez Gene\" ID=\"").append(1000 + i).append("\" />\n")
+                    .append("  </DataNode>\n");
+        }
+        for (int i = 0; i < dataNodes / 2; i++) {
+            gpml.append("  <Interaction GraphId=\"i").append(i).append("\">\n    <Graphics ZOrder=\"12288\" LineThickness=\"1.0\">\n")
+                    .append("      <Point X=\"1.0\" Y=\"2.0\" GraphRef=\"n").append(i).append("\" />\n")
+                    .append("      <Point X=\"3.0\" Y=\"4.0\" GraphRef=\"n").append(i + 1).append("\" ArrowHead=\"Arrow\" />\n")
+                    .append("    </Graphics>\n    <Xref Database=\"\" ID=\"\" />\n  </Interaction>\n");
+        }
+        gpml.append("</Pathway>\n");
+        String data = Base64.getEncoder().encodeToString(gpml.toString().getBytes(StandardCharsets.UTF_8));
+        return ("<ns1:getPathwayAsResponse xmlns:ns1=\"http://www.wso2.org/php/xsd\"><ns1:data>" + data
+                + "</ns1:data></ns1:getPathwayAsResponse>").getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup
+    public void setup() throws IOException, JDOMException {
+        participants = participants(80);
+        pathway = getPathwayAs(300);
+        if (!WikiPathwaysMapper.readPathwayGenes(new ByteArrayInputStream(pathway)).equals(jdomPathway()))
+            throw new IllegalStateException("gpml parsers disagree");
+        if (ReactomePathwayMapper.readParticipants(new ByteArrayInputStream(participants)).size()
+                != JsonParser.parseString(new String(participants, StandardCharsets.UTF_8)).getAsJsonArray().size())
+            throw new IllegalStateException("JSON parsers disagree");
+    }
+
+    @Benchmark
+    public void reactomeJsonTree(Blackhole bh) {
+        var array = JsonParser.parseString(new String(participants, StandardCharsets.UTF_8)).getAsJsonArray();
+        for (JsonElement element : array) {
+            var e = element.getAsJsonObject();
+            bh.consume(e.get("className").getAsString());
+            bh.consume(e.get("displayName").getAsString());
+            bh.consume(e.get("stId").getAsString());
+            for (var n : e.get("name").getAsJsonArray())
+                bh.consume(n.getAsString());
+        }
+    }
+
+    @Benchmark
+    public void reactomeJsonReader(Blackhole bh) throws IOException {
+        bh.consume(ReactomePathwayMapper.readParticipants(new ByteArrayInputStream(participants)));
+    }
+
+    @Benchmark
+    public void wikiPathwaysJdom(Blackhole bh) throws IOException, JDOMException {
+        bh.consume(jdomPathway());
+    }
+
+    @Benchmark
+    public void wikiPathwaysStax(Blackhole bh) throws IOException {
+        bh.consume(WikiPathwaysMapper.readPathwayGenes(new ByteArrayInputStream(pathway)));
+    }
+
+    /**
+     * Former implementation: response tree, decoded gpml string, gpml tree
+     */
+    private Set<String> jdomPathway() throws IOException, JDOMException {
+        Document response = new SAXBuilder().build(new ByteArrayInputStream(pathway));
+        String gpml = new String(Base64.getDecoder().decode(response.getRootElement().getChildren().stream()
+                .findFirst().orElseThrow().getText()));
+        String attribute = "TextLabel";
+        SAXBuilder saxBuilder = new SAXBuilder();
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        Document document = saxBuilder.build(new StringReader(gpml));
+        return document.getRootElement().getChildren().stream()
+                .filter(c -> c.getName().equals("DataNode"))
+                .filter(c -> c.getAttribute("Type") != null)
+                .filter(c -> c.getAttribute("Type").getValue().equals("Protein") ||
+                        c.getAttribute("Type").getValue().equals("GeneProduct"))
+                .filter(c -> !c.getAttribute(attribute).getValue().equals(" "))
+                .filter(c -> !ENZYME_PATTERN.matcher(c.getAttribute(attribute).getValue()).find())
+                .map(c -> c.getAttribute(attribute).getValue())
+                .map(c -> c.contains("_") ? c.split("_")[0] : c)
+                .map(c -> {
+                    Matcher m = NAME_PATTERN.matcher(c);
+                    return m.find() ? m.group(1) : c;
+                })
+                .map(c -> c.startsWith("p-") ? c.substring(c.indexOf('-') + 1) : c)
+                .map(c -> c.startsWith("Y-") ? c.substring(c.indexOf('-') + 1) : c)
+                .map(String::trim)
+                .collect(Collectors.toSet());
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(PathwayParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
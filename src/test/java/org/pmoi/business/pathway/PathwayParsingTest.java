@@ -0,0 +1,261 @@
+package org.pmoi.business.pathway;
+
+import com.google.gson.JsonElement;
+import com.google.gson.JsonObject;
+import com.google.gson.JsonParser;
+import org.jdom2.Document;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.jupiter.api.Test;
+import org.pmoi.util.XMLStreams;
+
+import javax.xml.XMLConstants;
+import javax.xml.stream.XMLStreamException;
+import javax.xml.stream.XMLStreamReader;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.StringReader;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+/**
+ * Streaming parsers of Reactome and WikiPathways responses against the former JsonParser and JDOM implementations
+ */
+class PathwayParsingTest {
+
+    private static final Pattern ENZYME_PATTERN = Pattern.compile("(?:\\d*\\.){3}\\d+");
+    private static final Pattern NAME_PATTERN = Pattern.compile("(^[\\w-]+)");
+
+    // search/query?query=IL6&types=Pathway&cluster=true, trimmed to a few entries
+    private static final String SEARCH = "{\"results\":[" +
+            "{\"entries\":[" +
+            "{\"dbId\":\"1059683\",\"stId\":\"R-HSA-1059683\",\"id\":\"R-HSA-1059683\"," +
+            "\"name\":\"Interleukin-6 signaling\",\"species\":[\"Homo sapiens\"],\"exactType\":\"Pathway\"," +
+            "\"isDisease\":false,\"compartmentNames\":[\"plasma membrane\",\"cytosol\"],\"hasReferenceEntity\":false}," +
+            "{\"dbId\":\"6783589\",\"stId\":\"R-HSA-6783589\",\"id\":\"R-HSA-6783589\"," +
+            "\"name\":\"Interleukin-6 family signaling\",\"species\":[\"Homo sapiens\"],\"exactType\":\"Pathway\"," +
+            "\"summation\":{\"text\":\"IL-6 family cytokines\",\"nested\":[1,2,{\"id\":\"not an entry\"}]}}," +
+            "{\"dbId\":\"449147\",\"stId\":\"R-HSA-449147\",\"id\":\"R-HSA-449147\"," +
+            "\"name\":\"Signaling by Interleukins\",\"species\":[\"Homo sapiens\"],\"exactType\":\"Pathway\"}]," +
+            "\"typeName\":\"Pathway\",\"rowCount\":3}," +
+            "{\"entries\":[{\"dbId\":\"9999\",\"id\":\"R-HSA-9999\",\"name\":\"Second group\"}]," +
+            "\"typeName\":\"Reaction\",\"rowCount\":1}]," +
+            "\"facets\":[{\"name\":\"Pathway\",\"count\":3}],\"found\":4}";
+
+    // data/pathways/low/entity/R-HSA-6783783?species=9606
+    private static final String PATHWAYS = "[" +
+            "{\"dbId\":1059683,\"displayName\":\"Interleukin-6 signaling\",\"stId\":\"R-HSA-1059683\"," +
+            "\"stIdVersion\":\"R-HSA-1059683.2\",\"isInDisease\":false,\"isInferred\":false," +
+            "\"name\":[\"Interleukin-6 signaling\"],\"releaseDate\":\"2011-02-18\",\"speciesName\":\"Homo sapiens\"," +
+            "\"hasDiagram\":false,\"schemaClass\":\"Pathway\",\"className\":\"Pathway\"}," +
+            "{\"dbId\":6788467,\"displayName\":\"IL-6-type cytokine receptor ligand interactions\"," +
+            "\"stId\":\"R-HSA-6788467\",\"literatureReference\":[{\"dbId\":1,\"stId\":\"not a pathway\"}]," +
+            "\"name\":[\"IL-6-type cytokine receptor ligand interactions\"],\"schemaClass\":\"Pathway\"}]";
+
+    // data/participants/R-HSA-1059683/participatingPhysicalEntities
+    private static final String PARTICIPANTS = "[" +
+            "{\"dbId\":1067626,\"displayName\":\"IL6 [extracellular region]\",\"stId\":\"R-HSA-1067626\"," +
+            "\"stIdVersion\":\"R-HSA-1067626.1\",\"isInDisease\":false," +
+            "\"name\":[\"IL6\",\"Interleukin-6\",\"IFNB2\"],\"speciesName\":\"Homo sapiens\"," +
+            "\"startCoordinate\":30,\"endCoordinate\":212,\"referenceType\":\"ReferenceGeneProduct\"," +
+            "\"schemaClass\":\"EntityWithAccessionedSequence\",\"className\":\"Protein\"," +
+            "\"compartment\":[{\"dbId\":984,\"displayName\":\"extracellular region\",\"name\":\"extracellular region\"," +
+            "\"className\":\"Compartment\"}]}," +
+            "{\"dbId\":1067629,\"displayName\":\"IL6:IL6R [plasma membrane]\",\"stId\":\"R-HSA-1067629\"," +
+            "\"name\":[\"IL6:IL6R\"],\"schemaClass\":\"Complex\",\"className\":\"Complex\"," +
+            "\"compartment\":[{\"dbId\":876,\"displayName\":\"plasma membrane\"}]}," +
+            "{\"dbId\":1112603,\"displayName\":\"p-Y705-STAT3 [cytosol]\",\"stId\":\"R-HSA-1112603\"," +
+            "\"name\":[\"p-Y705-STAT3\",\"STAT3_HUMAN\"],\"schemaClass\":\"EntityWithAccessionedSequence\"," +
+            "\"className\":\"Protein\"}," +
+            "{\"dbId\":9028,\"displayName\":\"IL6ST gene [nucleoplasm]\",\"stId\":\"R-HSA-9028\"," +
+            "\"name\":[\"IL6ST gene\"],\"schemaClass\":\"EntityWithAccessionedSequence\"," +
+            "\"className\":\"Genes and Transcripts\"}]";
+
+    // a gpml document as returned by getPathwayAs?fileType=gpml, trimmed
+    private static final String GPML = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n" +
+            "<Pathway xmlns=\"http://pathvisio.org/GPML/2013a\" Name=\"IL-6 signaling pathway\" Version=\"20210110\" " +
+            "Organism=\"Homo sapiens\">\n" +
+            "  <Comment Source=\"WikiPathways-description\">The IL-6 pathway</Comment>\n" +
+            "  <BiopaxRef>a5d</BiopaxRef>\n" +
+            "  <Graphics BoardWidth=\"1006.0\" BoardHeight=\"834.0\" />\n" +
+            dataNode("IL6", "GeneProduct") +
+            dataNode("IL6R", "Protein") +
+            dataNode("p-STAT3", "Protein") +
+            dataNode("Y-JAK1", "Protein") +
+            dataNode("MAPK1_P", "GeneProduct") +
+            dataNode("SOCS3 (suppressor)", "GeneProduct") +
+            dataNode("2.7.10.2", "Protein") +
+            dataNode(" ", "GeneProduct") +
+            dataNode("Ca2+", "Metabolite") +
+            dataNode("IL6", "Protein") +
+            "  <DataNode TextLabel=\"Untyped\" GraphId=\"u1\">\n    <Xref Database=\"\" ID=\"\" />\n  </DataNode>\n" +
+            "  <Group GroupId=\"g1\" GraphId=\"g2\" Style=\"Complex\">\n" +
+            "    <DataNode TextLabel=\"NESTED\" GraphId=\"n0\" Type=\"GeneProduct\" />\n  </Group>\n" +
+            "  <Interaction GraphId=\"i1\">\n    <Graphics ZOrder=\"12288\" LineThickness=\"1.0\">\n" +
+            "      <Point X=\"1.0\" Y=\"2.0\" GraphRef=\"IL6\" />\n      <Point X=\"3.0\" Y=\"4.0\" ArrowHead=\"Arrow\" />\n" +
+            "    </Graphics>\n    <Xref Database=\"\" ID=\"\" />\n  </Interaction>\n" +
+            "  <Label TextLabel=\"NOT_A_GENE\" GraphId=\"l1\" />\n" +
+            "</Pathway>\n";
+
+    private static String dataNode(String label, String type) {
+        return "  <DataNode TextLabel=\"" + label + "\" GraphId=\"" + label.hashCode() + "\" Type=\"" + type + "\">\n" +
+                "    <Graphics CenterX=\"100.0\" CenterY=\"200.0\" Width=\"80.0\" Height=\"20.0\" ZOrder=\"32768\" " +
+                "FontSize=\"10\" Valign=\"Middle\" />\n" +
+                "    <Xref Database=\"Entrez Gene\" ID=\"3569\" />\n  </DataNode>\n";
+    }
+
+    private static String getPathwayAs(String data) {
+        return "<ns1:getPathwayAsResponse xmlns:ns1=\"http://www.wso2.org/php/xsd\"><ns1:data>" + data +
+                "</ns1:data></ns1:getPathwayAsResponse>";
+    }
+
+    private static InputStream stream(String text) {
+        return new ByteArrayInputStream(text.getBytes(StandardCharsets.UTF_8));
+    }
+
+    @Test
+    void stIds() throws IOException {
+        List<String> expected = new ArrayList<>();
+        for (JsonElement e : JsonParser.parseString(PATHWAYS).getAsJsonArray())
+            expected.add(e.getAsJsonObject().get("stId").getAsString());
+        assertEquals(List.of("R-HSA-1059683", "R-HSA-6788467"), expected);
+        assertEquals(expected, ReactomePathwayMapper.readStIds(stream(PATHWAYS)));
+        assertTrue(ReactomePathwayMapper.readStIds(stream("[]")).isEmpty());
+    }
+
+    @Test
+    void searchIds() throws IOException {
+        // former implementation: entries of the first result group
+        JsonObject json = JsonParser.parseString(SEARCH).getAsJsonObject();
+        List<String> expected = new ArrayList<>();
+        for (var entry : json.getAsJsonArray("results").get(0).getAsJsonObject().get("entries").getAsJsonArray())
+            expected.add(entry.getAsJsonObject().get("id").getAsString());
+        assertEquals(List.of("R-HSA-1059683", "R-HSA-6783589", "R-HSA-449147"), expected);
+        assertEquals(expected, ReactomePathwayMapper.readSearchIds(stream(SEARCH)));
+    }
+
+    @Test
+    void searchIdsSkipBranches() throws IOException {
+        // keys before and after results, entries after other keys of the group
+        String reordered = "{\"found\":2,\"facets\":[{\"name\":\"Protein\"}],\"results\":[{\"typeName\":\"Protein\"," +
+                "\"rowCount\":1,\"entries\":[{\"name\":\"IL6\",\"id\":\"R-HSA-1067626\",\"species\":[\"Homo sapiens\"]}]," +
+                "\"extra\":{\"entries\":[{\"id\":\"nested\"}]}},{\"entries\":[{\"id\":\"R-HSA-2\"}]}],\"grouped\":true}";
+        assertEquals(List.of("R-HSA-1067626"), ReactomePathwayMapper.readSearchIds(stream(reordered)));
+        // empty results: the former implementation failed on get(0)
+        assertTrue(ReactomePathwayMapper.readSearchIds(stream("{\"results\":[],\"found\":0}")).isEmpty());
+        assertTrue(ReactomePathwayMapper.readSearchIds(stream("{\"found\":0}")).isEmpty());
+        assertTrue(ReactomePathwayMapper.readSearchIds(stream("{\"results\":[{\"typeName\":\"Pathway\"}]}")).isEmpty());
+        assertThrows(IOException.class, () -> ReactomePathwayMapper.readSearchIds(stream("[]")));
+    }
+
+    @Test
+    void participants() throws IOException {
+        List<ReactomePathwayMapper.Participant> participants = ReactomePathwayMapper.readParticipants(stream(PARTICIPANTS));
+        var array = JsonParser.parseString(PARTICIPANTS).getAsJsonArray();
+        assertEquals(array.size(), participants.size());
+        for (int i = 0; i < array.size(); i++) {
+            JsonObject e = array.get(i).getAsJsonObject();
+            ReactomePathwayMapper.Participant participant = participants.get(i);
+            assertEquals(e.get("className").getAsString(), participant.className);
+            assertEquals(e.get("displayName").getAsString(), participant.displayName);
+            assertEquals(e.get("stId").getAsString(), participant.stId);
+            List<String> names = new ArrayList<>();
+            e.get("name").getAsJsonArray().forEach(n -> names.add(n.getAsString()));
+            assertEquals(names, participant.names);
+        }
+    }
+
+    @Test
+    void pathwayGenes() throws IOException, JDOMException {
+        String response = getPathwayAs(Base64.getEncoder().encodeToString(GPML.getBytes(StandardCharsets.UTF_8)));
+        Set<String> expected = jdomPathway(response);
+        assertEquals(Set.of("IL6", "IL6R", "STAT3", "JAK1", "MAPK1", "SOCS3"), expected);
+        assertEquals(expected, WikiPathwaysMapper.readPathwayGenes(stream(response)));
+        assertEquals(expected, WikiPathwaysMapper.gpmlToGeneNames(stream(GPML)));
+    }
+
+    @Test
+    void base64TextOverSeveralEvents() throws IOException, JDOMException, XMLStreamException {
+        StringBuilder gpml = new StringBuilder(GPML.substring(0, GPML.indexOf("</Pathway>")));
+        for (int i = 0; i < 3000; i++)
+            gpml.append(dataNode("GENE" + i, i % 2 == 0 ? "GeneProduct" : "Protein"));
+        gpml.append("</Pathway>\n");
+        String data = Base64.getEncoder().encodeToString(gpml.toString().getBytes(StandardCharsets.UTF_8));
+        String response = getPathwayAs(data);
+        Set<String> expected = jdomPathway(response);
+        assertEquals(3006, expected.size());
+        assertTrue(characterEvents(response) > 1, "payload read in one event");
+        assertEquals(expected, WikiPathwaysMapper.readPathwayGenes(stream(response)));
+
+        // text split by a CDATA section, character references and line breaks of a MIME encoder
+        String split = getPathwayAs(data.substring(0, 1001) + "<![CDATA[" + data.substring(1001, 5003) + "]]>" +
+                "&#" + (int) data.charAt(5003) + ";" + data.substring(5004, 9000) +
+                "&#13;&#10;" + data.substring(9000));
+        assertTrue(characterEvents(split) > 3);
+        assertEquals(expected, WikiPathwaysMapper.readPathwayGenes(stream(split)));
+        String mime = getPathwayAs(Base64.getMimeEncoder().encodeToString(gpml.toString().getBytes(StandardCharsets.UTF_8)));
+        assertEquals(expected, WikiPathwaysMapper.readPathwayGenes(stream(mime)));
+    }
+
+    @Test
+    void textStreamStopsAtEndTag() throws IOException, XMLStreamException {
+        XMLStreamReader reader = XMLStreams.createReader(stream("<a><b>abc<![CDATA[def]]>ghi</b><c>next</c></a>"));
+        reader.nextTag();
+        reader.nextTag();
+        assertEquals("b", reader.getLocalName());
+        assertEquals("abcdefghi", new String(XMLStreams.textStream(reader).readAllBytes(), StandardCharsets.US_ASCII));
+        assertEquals(XMLStreamReader.END_ELEMENT, reader.getEventType());
+        reader.nextTag();
+        assertEquals("c", reader.getLocalName());
+    }
+
+    /**
+     * @return number of text events in the gpml element of a response
+     */
+    private static int characterEvents(String response) throws IOException, XMLStreamException {
+        XMLStreamReader reader = XMLStreams.createReader(stream(response));
+        int events = 0;
+        while (reader.hasNext()) {
+            int event = reader.next();
+            if (event == XMLStreamReader.CHARACTERS || event == XMLStreamReader.CDATA)
+                events++;
+        }
+        return events;
+    }
+
+    /**
+     * Former implementation: response tree, decoded gpml string, gpml tree
+     */
+    private static Set<String> jdomPathway(String response) throws IOException, JDOMException {
+        Document document = new SAXBuilder().build(new StringReader(response));
+        String text = document.getRootElement().getChildren().stream().findFirst().orElseThrow().getText();
+        String gpml = new String(Base64.getDecoder().decode(text), StandardCharsets.UTF_8);
+        String attribute = "TextLabel";
+        SAXBuilder saxBuilder = new SAXBuilder();
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        return saxBuilder.build(new StringReader(gpml)).getRootElement().getChildren().stream()
+                .filter(c -> c.getName().equals("DataNode"))
+                .filter(c -> c.getAttribute("Type") != null)
+                .filter(c -> c.getAttribute("Type").getValue().equals("Protein") ||
+                        c.getAttribute("Type").getValue().equals("GeneProduct"))
+                .filter(c -> !c.getAttribute(attribute).getValue().equals(" "))
+                .filter(c -> !ENZYME_PATTERN.matcher(c.getAttribute(attribute).getValue()).find())
+                .map(c -> c.getAttribute(attribute).getValue())
+                .map(c -> c.contains("_") ? c.split("_")[0] : c)
+                .map(c -> {
+                    Matcher m = NAME_PATTERN.matcher(c);
+                    return m.find() ? m.group(1) : c;
+                })
+                .map(c -> c.startsWith("p-") ? c.substring(c.indexOf('-') + 1) : c)
+                .map(c -> c.startsWith("Y-") ? c.substring(c.indexOf('-') + 1) : c)
+                .map(String::trim)
+                .collect(Collectors.toSet());
+    }
+}
@@ -0,0 +1,170 @@
+package org.pmoi.business.ppi;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class InteractionStoreTest {
+
+    @TempDir
+    Path dir;
+
+    private Path write(int taxonomyId, String... interactions) throws IOException {
+        return write(dir.resolve("ppi.bin"), InteractionStoreWriter.DEFAULT_CHUNK_SIZE, taxonomyId, interactions);
+    }
+
+    private static Path write(Path file, int chunkSize, int taxonomyId, String... interactions) throws IOException {
+        try (InteractionStoreWriter writer = new InteractionStoreWriter(chunkSize)) {
+            for (String interaction : interactions) {
+                String[] fields = interaction.split(" ");
+                writer.add(fields[0], fields[1], Integer.parseInt(fields[2]));
+            }
+            writer.write(file, taxonomyId);
+        }
+        return file;
+    }
+
+    /**
+     * @return neighbors of a protein as name:score
+     */
+    static List<String> neighbors(InteractionStore store, String protein, int minScore) {
+        InteractionStore.Neighbors neighbors = store.getNeighbors(store.find(protein), minScore);
+        List<String> list = new ArrayList<>();
+        for (int i = 0; i < neighbors.size(); i++) {
+            list.add(neighbors.getName(i) + ":" + neighbors.getScore(i));
+        }
+        return list;
+    }
+
+    @Test
+    void roundTrip() throws IOException {
+        InteractionStore store = InteractionStore.open(write(9606, "IL6 IL6ST 950", "IL6 IL6R 999", "TNF TNFRSF1A 999",
+                "IL6 SOCS3 420", "IL6ST IL6 950"));
+        assertEquals(9606, store.getTaxonomyId());
+        // targets are proteins too
+        assertEquals(6, store.getProteinCount());
+        assertEquals(5, store.getInteractionCount());
+        for (String name : List.of("IL6", "IL6ST", "IL6R", "TNF", "TNFRSF1A", "SOCS3")) {
+            assertEquals(name, store.getName(store.find(name)));
+        }
+        assertEquals(InteractionStore.EMPTY, store.find("il6"));
+        assertEquals(InteractionStore.EMPTY, store.find("UNKNOWN"));
+        // sorted by descending score
+        assertEquals(List.of("IL6R:999", "IL6ST:950", "SOCS3:420"), neighbors(store, "IL6", 0));
+        assertEquals(List.of("TNFRSF1A:999"), neighbors(store, "TNF", 0));
+        assertEquals(List.of("IL6:950"), neighbors(store, "IL6ST", 0));
+        int il6 = store.find("IL6");
+        assertEquals(3, store.lastNeighbor(il6) - store.firstNeighbor(il6));
+        assertEquals(store.find("IL6R"), store.getNeighbor(store.firstNeighbor(il6)));
+    }
+
+    @Test
+    void thresholdCut() throws IOException {
+        InteractionStore store = InteractionStore.open(write(9606, "A B 900", "A C 700", "A D 700", "A E 700",
+                "A F 400", "B A 900"));
+        // threshold equal to an existing score keeps it, ties included
+        assertEquals(4, neighbors(store, "A", 700).size());
+        assertEquals(List.of("B:900"), neighbors(store, "A", 900));
+        assertEquals(4, neighbors(store, "A", 401).size());
+        assertEquals(5, neighbors(store, "A", 400).size());
+        // above or below every score
+        assertTrue(neighbors(store, "A", 901).isEmpty());
+        assertEquals(5, neighbors(store, "A", 0).size());
+        assertTrue(store.getNeighbors(store.find("A"), 1001).isEmpty());
+        // all ties are kept
+        assertEquals(Set.of("C:700", "D:700", "E:700"), new HashSet<>(neighbors(store, "A", 700).subList(1, 4)));
+        // proteins only found as targets have no neighbors
+        assertTrue(neighbors(store, "F", 0).isEmpty());
+        assertTrue(neighbors(store, "E", 1000).isEmpty());
+        assertEquals(List.of("A:900"), neighbors(store, "B", 900));
+    }
+
+    @Test
+    void thresholdCutMatchesFilter() throws IOException {
+        SplittableRandom random = new SplittableRandom(42);
+        List<String> interactions = new ArrayList<>();
+        for (int i = 0; i < 2000; i++) {
+            // few distinct scores: many ties
+            interactions.add("P" + random.nextInt(50) + " P" + random.nextInt(200) + " " + random.nextInt(11) * 100);
+        }
+        InteractionStore store = InteractionStore.open(write(9606, interactions.toArray(new String[0])));
+        for (int p = 0; p < 50; p++) {
+            List<String> all = neighbors(store, "P" + p, 0);
+            int[] scores = all.stream().mapToInt(n -> Integer.parseInt(n.substring(n.indexOf(':') + 1))).toArray();
+            for (int i = 1; i < scores.length; i++) {
+                assertTrue(scores[i - 1] >= scores[i]);
+            }
+            for (int minScore = 0; minScore <= 1100; minScore += 50) {
+                int threshold = minScore;
+                List<String> expected = all.stream()
+                        .filter(n -> Integer.parseInt(n.substring(n.indexOf(':') + 1)) >= threshold)
+                        .collect(Collectors.toList());
+                assertEquals(expected, neighbors(store, "P" + p, minScore), "P" + p + " >= " + minScore);
+            }
+        }
+    }
+
+    @Test
+    void spilledRunsAreMerged() throws IOException {
+        SplittableRandom random = new SplittableRandom(7);
+        String[] interactions = new String[5000];
+        Map<String, List<int[]>> expected = new HashMap<>();
+        for (int i = 0; i < interactions.length; i++) {
+            int source = random.nextInt(300);
+            int target = random.nextInt(300);
+            int score = random.nextInt(1001);
+            interactions[i] = "P" + source + " P" + target + " " + score;
+            expected.computeIfAbsent("P" + source, k -> new ArrayList<>()).add(new int[]{target, score});
+        }
+        // chunks of 64 interactions: about 80 runs to merge
+        Path spilled = write(dir.resolve("spilled.bin"), 64, 9606, interactions);
+        Path inMemory = write(dir.resolve("memory.bin"), 1 << 16, 9606, interactions);
+        assertArrayEquals(Files.readAllBytes(inMemory), Files.readAllBytes(spilled));
+        InteractionStore store = InteractionStore.open(spilled);
+        assertEquals(interactions.length, store.getInteractionCount());
+        expected.forEach((source, partners) -> {
+            List<String> sorted = partners.stream()
+                    .sorted(Comparator.comparingInt((int[] e) -> -e[1]).thenComparingInt(e -> store.find("P" + e[0])))
+                    .map(e -> "P" + e[0] + ":" + e[1])
+                    .collect(Collectors.toList());
+            assertEquals(sorted, neighbors(store, source, 0), source);
+        });
+    }
+
+    @Test
+    void legacyNetworkIsConverted() throws IOException {
+        HashMap<String, HashMap<String, Double>> network = new HashMap<>();
+        network.put("IL6", new HashMap<>(Map.of("IL6R", 0.999, "IL6ST", 0.95)));
+        network.put("TNF", new HashMap<>(Map.of("TNFRSF1A", 0.9994)));
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream oos = new ObjectOutputStream(bytes)) {
+            oos.writeObject(network);
+        }
+        Path file = dir.resolve("ppi.HUMAN.bin");
+        CachedInteractionQueryClient.convertLegacy(new ByteArrayInputStream(bytes.toByteArray()), file, 9606);
+        InteractionStore store = CachedInteractionQueryClient.open(file, 9606);
+        assertEquals(3, store.getInteractionCount());
+        assertEquals(List.of("IL6R:999", "IL6ST:950"), neighbors(store, "IL6", 0));
+        assertEquals(List.of("TNFRSF1A:999"), neighbors(store, "TNF", 0));
+        assertThrows(IOException.class, () -> CachedInteractionQueryClient.convertLegacy(
+                new ByteArrayInputStream(new byte[]{1, 2, 3}), dir.resolve("invalid.bin"), 9606));
+    }
+
+    @Test
+    void storeOfAnotherSpeciesIsRejected() throws IOException {
+        Path file = write(10090, "IL6 IL6R 999");
+        assertEquals(10090, CachedInteractionQueryClient.open(file, 10090).getTaxonomyId());
+        assertThrows(IOException.class, () -> CachedInteractionQueryClient.open(file, 9606));
+        assertThrows(IOException.class, () -> CachedInteractionQueryClient.open(dir.resolve("missing.bin"), 9606));
+    }
+}
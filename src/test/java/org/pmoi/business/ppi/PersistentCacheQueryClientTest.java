@@ -0,0 +1,153 @@
+package org.pmoi.business.ppi;
+
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.pmoi.Args;
+import org.pmoi.database.SpeciesHelper;
+import org.pmoi.database.SupportedSpecies;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.time.Duration;
+import java.util.*;
+import java.util.stream.Collectors;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class PersistentCacheQueryClientTest {
+
+    @TempDir
+    Path root;
+
+    @BeforeAll
+    static void species() {
+        SpeciesHelper.makeSpecies(SupportedSpecies.HUMAN);
+    }
+
+    /**
+     * Remote client stub: DOWN can't be retrieved while the service is down, NONE has no partners
+     */
+    private static class StubClient implements InteractionQueryClient {
+        private final List<String> queries = new ArrayList<>();
+        private boolean down = true;
+
+        @Override
+        public Map<String, String> getProteinNetwork(String symbol) throws IOException {
+            queries.add(symbol);
+            if (down && symbol.equals("DOWN"))
+                throw new IOException("Service unavailable");
+            return symbol.equals("NONE") ? Map.of() : Map.of("PARTNER", "0.999");
+        }
+    }
+
+    private PersistentCacheQueryClient cache(StubClient client) {
+        return new PersistentCacheQueryClient(client, root, Duration.ofDays(1), 1 << 20);
+    }
+
+    /**
+     * Cache with room for three networks of the stub client
+     */
+    private PersistentCacheQueryClient smallCache(StubClient client) throws IOException {
+        PersistentCacheQueryClient cache = cache(client);
+        cache.getProteinNetwork("SIZE");
+        long entrySize = Files.size(file("SIZE"));
+        Files.delete(file("SIZE"));
+        return new PersistentCacheQueryClient(client, root, Duration.ofDays(1), 3 * entrySize);
+    }
+
+    private Path file(String symbol) {
+        return root.resolve(String.valueOf(SpeciesHelper.get().getTaxonomyId()))
+                .resolve(String.valueOf(Args.getInstance().getStringDBScore())).resolve(symbol + ".tsv");
+    }
+
+    private Set<String> cached() throws IOException {
+        try (var files = Files.list(file("X").getParent())) {
+            return files.map(f -> f.getFileName().toString()).filter(f -> f.endsWith(".tsv"))
+                    .map(f -> f.substring(0, f.length() - 4)).collect(Collectors.toSet());
+        }
+    }
+
+    @Test
+    void expiredEntriesAreFetchedAgain() throws IOException {
+        StubClient client = new StubClient();
+        PersistentCacheQueryClient cache = cache(client);
+        cache.getProteinNetwork("IL6");
+        cache.getProteinNetwork("TNF");
+        assertEquals(Map.of("PARTNER", "0.999"), cache.getProteinNetwork("IL6"));
+        assertEquals(List.of("IL6", "TNF"), client.queries);
+        // IL6 was fetched two days ago, past the one day TTL
+        List<String> lines = Files.readAllLines(file("IL6"));
+        lines.set(0, String.valueOf(System.currentTimeMillis() - Duration.ofDays(2).toMillis()));
+        Files.write(file("IL6"), lines);
+        assertEquals(Map.of("PARTNER", "0.999"), cache.getProteinNetwork("IL6"));
+        assertEquals(Map.of("PARTNER", "0.999"), cache.getProteinNetwork("TNF"));
+        assertEquals(List.of("IL6", "TNF", "IL6"), client.queries);
+        // the entry is fresh again
+        assertEquals(Map.of("PARTNER", "0.999"), cache(client).getProteinNetwork("IL6"));
+        assertEquals(3, client.queries.size());
+    }
+
+    @Test
+    void leastRecentlyReadEntriesAreEvicted() throws IOException {
+        StubClient client = new StubClient();
+        PersistentCacheQueryClient cache = smallCache(client);
+        cache.getProteinNetworks(List.of("A", "B", "C"));
+        assertEquals(Set.of("A", "B", "C"), cached());
+        // A is read, so B is now the least recently used entry
+        cache.getProteinNetwork("A");
+        cache.getProteinNetwork("D");
+        assertEquals(Set.of("A", "C", "D"), cached());
+        cache.getProteinNetwork("E");
+        assertEquals(Set.of("A", "D", "E"), cached());
+        client.queries.clear();
+        assertEquals(Map.of("PARTNER", "0.999"), cache.getProteinNetwork("A"));
+        assertTrue(client.queries.isEmpty());
+    }
+
+    @Test
+    void evictionOrderIsRestoredFromFileTimes() throws IOException {
+        StubClient client = new StubClient();
+        smallCache(client).getProteinNetworks(List.of("A", "B", "C"));
+        // last reads of a former run: B, then C, then A
+        long now = System.currentTimeMillis();
+        Files.setLastModifiedTime(file("B"), FileTime.fromMillis(now - 30_000));
+        Files.setLastModifiedTime(file("C"), FileTime.fromMillis(now - 20_000));
+        Files.setLastModifiedTime(file("A"), FileTime.fromMillis(now - 10_000));
+        PersistentCacheQueryClient cache = smallCache(client);
+        cache.getProteinNetwork("D");
+        assertEquals(Set.of("A", "C", "D"), cached());
+        cache.getProteinNetwork("E");
+        assertEquals(Set.of("A", "D", "E"), cached());
+        cache.getProteinNetwork("F");
+        assertEquals(Set.of("D", "E", "F"), cached());
+    }
+
+    @Test
+    void failedNetworksAreNotCached() throws IOException {
+        StubClient client = new StubClient();
+        InteractionQueryException e = assertThrows(InteractionQueryException.class,
+                () -> cache(client).getProteinNetworks(List.of("IL6", "NONE", "DOWN")));
+        assertEquals(Set.of("IL6", "NONE"), e.getRetrieved().keySet());
+        client.queries.clear();
+        client.down = false;
+        // a new run only queries the failed protein, the empty network is an answer
+        var networks = cache(client).getProteinNetworks(List.of("IL6", "NONE", "DOWN"));
+        assertEquals(List.of("DOWN"), client.queries);
+        assertEquals(Map.of("PARTNER", "0.999"), networks.get("IL6"));
+        assertTrue(networks.get("NONE").isEmpty());
+        assertEquals(Map.of("PARTNER", "0.999"), networks.get("DOWN"));
+    }
+
+    @Test
+    void failedNetworkIsNotCached() throws IOException {
+        StubClient client = new StubClient();
+        assertThrows(IOException.class, () -> cache(client).getProteinNetwork("DOWN"));
+        client.down = false;
+        assertEquals(Map.of("PARTNER", "0.999"), cache(client).getProteinNetwork("DOWN"));
+        assertEquals(Map.of("PARTNER", "0.999"), cache(client).getProteinNetwork("DOWN"));
+        assertEquals(List.of("DOWN", "DOWN"), client.queries);
+    }
+}
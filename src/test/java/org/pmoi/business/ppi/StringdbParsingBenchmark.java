@@ -0,0 +1,98 @@
+package org.pmoi.business.ppi;
+
+import org.jdom2.Document;
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pmoi.database.SpeciesHelper;
+import org.pmoi.database.SupportedSpecies;
+
+import javax.xml.XMLConstants;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.util.List;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parsing of an interaction_partners XML response: JDOM document against StAX streaming.
+ * The payload mimics a batch response of 100 proteins with 25 partners each, with all the fields sent by StringDB.
+ * Run with {@code -prof gc} to compare allocation rates. The payload is synthetic, no recorded responses being
+ * available. Parser correctness is covered by {@code StringdbQueryClientTest}.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class StringdbParsingBenchmark {
+
+    private byte[] payload;
+
+    static byte[] interactionPartners(int proteins, int partners) {
+        SplittableRandom random = new SplittableRandom(42);
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<interaction_partners>\n");
+        for (int p = 0; p < proteins; p++) {
+            for (int i = 0; i < partners; i++) {
+                int target = random.nextInt(20_000);
+                xml.append("  <record>\n")
+                        .append("    <stringId_A>9606.ENSP").append(String.format("%011d", p)).append("</stringId_A>\n")
+                        .append("    <stringId_B>9606.ENSP").append(String.format("%011d", target)).append("</stringId_B>\n")
+                        .append("    <preferredName_A>GENE").append(p).append("</preferredName_A>\n")
+                        .append("    <preferredName_B>GENE").append(target).append("</preferredName_B>\n")
+                        .append("    <ncbiTaxonId>9606</ncbiTaxonId>\n")
+                        .append("    <score>0.").append(900 + random.nextInt(100)).append("</score>\n");
+                for (String channel : List.of("nscore", "fscore", "pscore", "ascore", "escore", "dscore", "tscore")) {
+                    xml.append("    <").append(channel).append(">0.").append(random.nextInt(1000))
+                            .append("</").append(channel).append(">\n");
+                }
+                xml.append("  </record>\n");
+            }
+        }
+        return xml.append("</interaction_partners>\n").toString().getBytes(StandardCharsets.UTF_8);
+    }
+
+    @Setup
+    public void setup() throws IOException, JDOMException {
+        SpeciesHelper.makeSpecies(SupportedSpecies.HUMAN);
+        payload = interactionPartners(100, 25);
+        List<StringdbQueryClient.Interaction> records = StringdbQueryClient.parseInteractions(new ByteArrayInputStream(payload));
+        List<Element> elements = jdom();
+        if (records.size() != elements.size() || !records.get(records.size() - 1).target
+                .equals(elements.get(elements.size() - 1).getChildText("preferredName_B")))
+            throw new IllegalStateException("Parsers disagree");
+    }
+
+    private List<Element> jdom() throws IOException, JDOMException {
+        SAXBuilder saxBuilder = new SAXBuilder();
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_DTD, "");
+        saxBuilder.setProperty(XMLConstants.ACCESS_EXTERNAL_SCHEMA, "");
+        Document document = saxBuilder.build(new ByteArrayInputStream(payload));
+        return document.getRootElement().getChildren();
+    }
+
+    @Benchmark
+    public void jdomDocument(Blackhole bh) throws IOException, JDOMException {
+        for (Element l : jdom()) {
+            bh.consume(l.getChildText("preferredName_A"));
+            bh.consume(l.getChildText("preferredName_B"));
+            bh.consume(l.getChildText("score"));
+        }
+    }
+
+    @Benchmark
+    public void staxStream(Blackhole bh) throws IOException {
+        bh.consume(StringdbQueryClient.parseInteractions(new ByteArrayInputStream(payload)));
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(StringdbParsingBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,255 @@
+package org.pmoi.business.ppi;
+
+import org.jdom2.Element;
+import org.jdom2.JDOMException;
+import org.jdom2.input.SAXBuilder;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeAll;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.pmoi.database.SpeciesHelper;
+import org.pmoi.database.SupportedSpecies;
+import org.pmoi.util.RequestScheduler;
+
+import java.io.*;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.URLDecoder;
+import java.nio.charset.StandardCharsets;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class StringdbQueryClientTest {
+
+    private StubServer server;
+
+    @BeforeAll
+    static void species() {
+        SpeciesHelper.makeSpecies(SupportedSpecies.HUMAN);
+        RequestScheduler.register("localhost", new RequestScheduler.Builder().withPermitsPerSecond(1000)
+                .withMaxRetries(0).build());
+    }
+
+    @BeforeEach
+    void start() throws IOException {
+        server = new StubServer(Map.of(
+                "IL6", Map.of("IL6R", "0.999", "IL6ST", "0.998"),
+                "TNF", Map.of("TNFRSF1A", "0.999"),
+                "VEGFA", Map.of("KDR", "0.999", "FLT1", "0.997", "NRP1", "0.992")),
+                Map.of("TNFA", "TNF"));
+    }
+
+    @AfterEach
+    void stop() throws IOException {
+        server.close();
+    }
+
+    @Test
+    void batchIsSplitByQueryProtein() throws IOException {
+        var client = new StringdbQueryClient(server.getUrl());
+        var networks = client.getProteinNetworks(List.of("IL6", "tnf", "VEGFA"));
+        assertEquals(1, server.getRequests().size());
+        assertEquals(Set.of("IL6", "tnf", "VEGFA"), networks.keySet());
+        assertEquals(Map.of("IL6R", "0.999", "IL6ST", "0.998"), networks.get("IL6"));
+        assertEquals(Map.of("TNFRSF1A", "0.999"), networks.get("tnf"));
+        assertEquals(3, networks.get("VEGFA").size());
+    }
+
+    @Test
+    void largeQueriesAreSentInBatches() throws IOException {
+        var client = new StringdbQueryClient(server.getUrl());
+        List<String> symbols = IntStream.range(0, 2 * StringdbQueryClient.BATCH_SIZE + 10)
+                .mapToObj(i -> i % 3 == 0 ? "IL6" : "GENE" + i).collect(Collectors.toList());
+        symbols.addAll(List.of("TNF", "VEGFA"));
+        var networks = client.getProteinNetworks(symbols);
+        assertEquals(2, server.getRequests().size());
+        assertEquals(new HashSet<>(symbols), networks.keySet());
+        assertTrue(networks.get("GENE1").isEmpty());
+        assertEquals(1, networks.get("TNF").size());
+    }
+
+    @Test
+    void aliasesAreResolvedInOneRequest() throws IOException {
+        var client = new StringdbQueryClient(server.getUrl());
+        List<String> symbols = IntStream.range(0, 50).mapToObj(i -> "GENE" + i).collect(Collectors.toList());
+        symbols.addAll(List.of("IL6", "TNFA"));
+        var networks = client.getProteinNetworks(symbols);
+        // TNFA is answered as TNF: the preferred names of the genes without records are resolved at once
+        assertEquals(2, server.getRequests().size());
+        assertTrue(server.getRequests().get(1).contains("/get_string_ids?"));
+        assertEquals(Map.of("TNFRSF1A", "0.999"), networks.get("TNFA"));
+        assertTrue(networks.get("GENE1").isEmpty());
+        assertEquals(2, networks.get("IL6").size());
+        assertEquals(new HashSet<>(symbols), networks.keySet());
+    }
+
+    @Test
+    void parseInteractionsMatchesJdom() throws IOException, JDOMException {
+        // interaction_partners?identifiers=IL6%0dTNF, trimmed
+        StringBuilder xml = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<interaction_partners>\n");
+        String[][] records = {{"IL6", "IL6R", "0.999"}, {"IL6", "IL6ST", "0.998"}, {"TNF", "TNFRSF1A", "0.999"},
+                {"TNF", "TRAF2", "0.941"}};
+        for (String[] r : records) {
+            xml.append("  <record>\n    <stringId_A>9606.ENSP00000258743</stringId_A>\n")
+                    .append("    <stringId_B>9606.ENSP00000344818</stringId_B>\n")
+                    .append("    <preferredName_A>").append(r[0]).append("</preferredName_A>\n")
+                    .append("    <preferredName_B>").append(r[1]).append("</preferredName_B>\n")
+                    .append("    <ncbiTaxonId>9606</ncbiTaxonId>\n    <score>").append(r[2]).append("</score>\n")
+                    .append("    <nscore>0</nscore>\n    <fscore>0</fscore>\n    <pscore>0</pscore>\n")
+                    .append("    <ascore>0.096</ascore>\n    <escore>0.972</escore>\n    <dscore>0.9</dscore>\n")
+                    .append("    <tscore>0.994</tscore>\n  </record>\n");
+        }
+        byte[] payload = xml.append("</interaction_partners>\n").toString().getBytes(StandardCharsets.UTF_8);
+        List<Element> elements = new SAXBuilder().build(new ByteArrayInputStream(payload)).getRootElement().getChildren();
+        List<StringdbQueryClient.Interaction> interactions =
+                StringdbQueryClient.parseInteractions(new ByteArrayInputStream(payload));
+        assertEquals(elements.size(), interactions.size());
+        for (int i = 0; i < elements.size(); i++) {
+            assertEquals(elements.get(i).getChildText("preferredName_A"), interactions.get(i).source);
+            assertEquals(elements.get(i).getChildText("preferredName_B"), interactions.get(i).target);
+            assertEquals(elements.get(i).getChildText("score"), interactions.get(i).score);
+        }
+        String empty = "<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n<interaction_partners>\n</interaction_partners>\n";
+        assertTrue(StringdbQueryClient.parseInteractions(
+                new ByteArrayInputStream(empty.getBytes(StandardCharsets.UTF_8))).isEmpty());
+    }
+
+    @Test
+    void parseStringIds() throws IOException {
+        String xml = "<?xml version=\"1.0\" encoding=\"UTF-8\"?><string_identifiers>"
+                + "<record><queryIndex>1</queryIndex><queryItem>TNFA</queryItem><stringId>9606.ENSP00000398698</stringId>"
+                + "<preferredName>TNF</preferredName><annotation>Tumor necrosis factor</annotation></record>"
+                + "</string_identifiers>";
+        assertEquals(Map.of(1, "TNF"), StringdbQueryClient.parseStringIds(
+                new ByteArrayInputStream(xml.getBytes(StandardCharsets.UTF_8))));
+    }
+
+    @Test
+    void singleQuery() throws IOException {
+        var client = new StringdbQueryClient(server.getUrl());
+        assertEquals(Map.of("TNFRSF1A", "0.999"), client.getProteinNetwork("TNF"));
+        assertTrue(client.getProteinNetwork("UNKNOWN").isEmpty());
+        assertEquals(2, server.getRequests().size());
+    }
+
+    @Test
+    void failuresAreReported() {
+        var client = new StringdbQueryClient(server.getUrl());
+        List<String> symbols = IntStream.range(0, StringdbQueryClient.BATCH_SIZE)
+                .mapToObj(i -> "GENE" + i).collect(Collectors.toList());
+        symbols.addAll(List.of("IL6", "DOWN"));
+        InteractionQueryException e = assertThrows(InteractionQueryException.class, () -> client.getProteinNetworks(symbols));
+        // the first batch is kept, the failed one isn't mistaken for proteins without partners
+        assertEquals(StringdbQueryClient.BATCH_SIZE, e.getRetrieved().size());
+        assertFalse(e.getRetrieved().containsKey("IL6"));
+        assertThrows(IOException.class, () -> client.getProteinNetwork("DOWN"));
+    }
+
+    /**
+     * Minimal HTTP server answering interaction_partners and get_string_ids requests like StringDB. Requests for DOWN get a 503
+     */
+    private static class StubServer implements Closeable {
+        private final ServerSocket socket;
+        private final Map<String, Map<String, String>> networks;
+        private final Map<String, String> aliases;
+        private final List<String> requests = Collections.synchronizedList(new ArrayList<>());
+
+        StubServer(Map<String, Map<String, String>> networks, Map<String, String> aliases) throws IOException {
+            this.networks = networks;
+            this.aliases = aliases;
+            this.socket = new ServerSocket(0);
+            Thread thread = new Thread(this::serve);
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        String getUrl() {
+            return "http://localhost:" + socket.getLocalPort() + "/api";
+        }
+
+        List<String> getRequests() {
+            return requests;
+        }
+
+        private void serve() {
+            while (!socket.isClosed()) {
+                try (Socket client = socket.accept()) {
+                    BufferedReader in = new BufferedReader(new InputStreamReader(client.getInputStream(), StandardCharsets.UTF_8));
+                    String target = in.readLine().split(" ")[1];
+                    String line;
+                    do {
+                        line = in.readLine();
+                    } while (line != null && !line.isEmpty());
+                    requests.add(target);
+                    respond(client.getOutputStream(), target);
+                } catch (IOException ignored) {
+                    // server closed
+                }
+            }
+        }
+
+        private void respond(OutputStream out, String target) throws IOException {
+            String query = target.substring(target.indexOf('?') + 1);
+            String identifiers = Arrays.stream(query.split("&"))
+                    .filter(p -> p.startsWith("identifiers="))
+                    .map(p -> URLDecoder.decode(p.substring("identifiers=".length()), StandardCharsets.UTF_8))
+                    .findFirst().orElse("");
+            if (Arrays.asList(identifiers.split("\r")).contains("DOWN")) {
+                out.write("HTTP/1.1 503 Service Unavailable\r\nContent-Length: 0\r\nConnection: close\r\n\r\n"
+                        .getBytes(StandardCharsets.US_ASCII));
+                out.flush();
+                return;
+            }
+            if (target.contains("/get_string_ids?")) {
+                respondStringIds(out, identifiers.split("\r"));
+                return;
+            }
+            StringBuilder body = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><interaction_partners>");
+            boolean found = false;
+            for (String identifier : identifiers.split("\r")) {
+                String name = aliases.getOrDefault(identifier.toUpperCase(), identifier.toUpperCase());
+                var partners = networks.get(name);
+                if (partners == null)
+                    continue;
+                found = true;
+                partners.forEach((partner, score) -> body.append("<record><preferredName_A>").append(name)
+                        .append("</preferredName_A><preferredName_B>").append(partner)
+                        .append("</preferredName_B><score>").append(score).append("</score></record>"));
+            }
+            body.append("</interaction_partners>");
+            write(out, body.toString(), found);
+        }
+
+        private void respondStringIds(OutputStream out, String[] identifiers) throws IOException {
+            StringBuilder body = new StringBuilder("<?xml version=\"1.0\" encoding=\"UTF-8\"?><string_identifiers>");
+            boolean found = false;
+            for (int i = 0; i < identifiers.length; i++) {
+                String name = aliases.getOrDefault(identifiers[i].toUpperCase(), identifiers[i].toUpperCase());
+                if (!networks.containsKey(name))
+                    continue;
+                found = true;
+                body.append("<record><queryIndex>").append(i).append("</queryIndex><queryItem>").append(identifiers[i])
+                        .append("</queryItem><preferredName>").append(name).append("</preferredName></record>");
+            }
+            write(out, body.append("</string_identifiers>").toString(), found);
+        }
+
+        private void write(OutputStream out, String text, boolean found) throws IOException {
+            byte[] bytes = text.getBytes(StandardCharsets.UTF_8);
+            String status = found ? "200 OK" : "500 Internal Server Error";
+            String header = "HTTP/1.1 " + status + "\r\nContent-Type: text/xml\r\nContent-Length: " + bytes.length
+                    + "\r\nConnection: close\r\n\r\n";
+            out.write(header.getBytes(StandardCharsets.US_ASCII));
+            out.write(bytes);
+            out.flush();
+        }
+
+        @Override
+        public void close() throws IOException {
+            socket.close();
+        }
+    }
+}
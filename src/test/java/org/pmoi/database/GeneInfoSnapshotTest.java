@@ -0,0 +1,102 @@
+package org.pmoi.database;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneInfoSnapshotTest {
+
+    private static final List<String> GENE_INFO = List.of(
+            "#tax_id\tGeneID\tSymbol\tLocusTag\tSynonyms\tdbXrefs\tchromosome\tmap_location\tdescription\ttype_of_gene",
+            "9606\t1\tA1BG\t-\tA1B|ABG|GAB\t-\t19\t19q13.43\talpha-1-B glycoprotein\tprotein-coding",
+            "9606\t7157\tTP53\t-\tBCC7|LFS1|P53\t-\t17\t17p13.1\ttumor protein p53\tprotein-coding",
+            "9606\t3845\tKRAS\t-\tC-K-RAS|K-RAS2A|RASK2\t-\t12\t12p12.1\tKRAS proto-oncogene, GTPase\tprotein-coding",
+            "9606\t8031\tNCOA4\t-\tARA70|ELE1|PTC3\t-\t10\t10q11.22\tnuclear receptor coactivator 4\tprotein-coding",
+            "9606\t2\tA2M\t-\t-\t-\t12\t12p13.31\talpha-2-macroglobulin\tprotein-coding",
+            "9606\t9999\tP53BP\t-\tP53\t-\t1\t-\tsecond gene with the P53 alias\tprotein-coding");
+
+    @TempDir
+    Path dir;
+
+    @Test
+    void roundTrip() throws IOException {
+        Path file = dir.resolve("gene_info.bin");
+        GeneInfoSnapshot.write(GENE_INFO.stream(), 9606, 42L, file);
+        GeneInfoSnapshot snapshot = GeneInfoSnapshot.open(file);
+
+        assertEquals(6, snapshot.size());
+        assertEquals(9606, snapshot.getTaxonomyId());
+        assertEquals(42L, snapshot.getSourceFingerprint());
+        // by ID
+        int tp53 = snapshot.findById("7157");
+        assertEquals("TP53", snapshot.getSymbol(tp53));
+        assertEquals("tumor protein p53", snapshot.getDescription(tp53));
+        assertEquals(List.of("BCC7", "LFS1", "P53"), snapshot.getSynonyms(tp53));
+        assertEquals(-1, snapshot.findById("12345"));
+        // by symbol, ignoring case
+        assertEquals("3845", snapshot.getId(snapshot.findBySymbol("KRAS")));
+        assertEquals("3845", snapshot.getId(snapshot.findBySymbol("kras")));
+        assertEquals(-1, snapshot.findBySymbol("BCC7"));
+        assertTrue(snapshot.getSynonyms(snapshot.findBySymbol("A2M")).isEmpty());
+        // by alias, every gene having it in file order
+        int[] p53 = snapshot.findByAlias("p53");
+        assertEquals(2, p53.length);
+        assertEquals("TP53", snapshot.getSymbol(p53[0]));
+        assertEquals("P53BP", snapshot.getSymbol(p53[1]));
+        assertEquals("KRAS", snapshot.getSymbol(snapshot.findByAlias("C-K-RAS")[0]));
+        assertEquals(0, snapshot.findByAlias("UNKNOWN").length);
+    }
+
+    @Test
+    void mapperLookups() throws IOException {
+        GeneMapper mapper = new GeneMapper(GENE_INFO.stream());
+        assertEquals(Optional.of("TP53"), mapper.getSymbol("7157"));
+        assertEquals(Optional.of("7157"), mapper.getId("TP53"));
+        assertEquals(Optional.of("7157"), mapper.getId("LFS1"));
+        assertEquals(Optional.of("NCOA4"), mapper.getSymbolFromAlias("ELE1"));
+        assertEquals(Optional.of("P53BP"), mapper.getSymbolFromAlias("P53", "P53BP protein"));
+        assertEquals(List.of("A1B", "ABG", "GAB"), mapper.getAliases("A1BG"));
+        assertEquals(Optional.of("nuclear receptor coactivator 4"), mapper.getDescription("8031"));
+        assertEquals(Optional.empty(), mapper.getId("UNKNOWN"));
+    }
+
+    @Test
+    void outdatedSnapshotsAreDetected() throws IOException {
+        Path source = dir.resolve("Homo_sapiens.gene_info");
+        Files.write(source, GENE_INFO);
+        long fingerprint = GeneMapper.fingerprint(source.toUri().toURL());
+        assertNotEquals(0, fingerprint);
+        assertEquals(fingerprint, GeneMapper.fingerprint(source.toUri().toURL()));
+
+        Path file = dir.resolve("gene_info.bin");
+        GeneInfoSnapshot.write(Files.lines(source), 9606, fingerprint, file);
+        assertTrue(GeneMapper.isCurrent(GeneInfoSnapshot.open(file), fingerprint));
+        // unknown source, e.g. a downloaded species
+        assertTrue(GeneMapper.isCurrent(GeneInfoSnapshot.open(file), 0));
+
+        Files.write(source, Stream.concat(GENE_INFO.stream(), Stream.of(
+                "9606\t10\tNAT2\t-\tAAC2\t-\t8\t8p22\tN-acetyltransferase 2\tprotein-coding")).collect(Collectors.toList()));
+        assertFalse(GeneMapper.isCurrent(GeneInfoSnapshot.open(file), GeneMapper.fingerprint(source.toUri().toURL())));
+    }
+
+    @Test
+    void formerVersionsAreRejected() throws IOException {
+        Path file = dir.resolve("gene_info.bin");
+        GeneInfoSnapshot.write(GENE_INFO.stream(), 9606, 0, file);
+        byte[] bytes = Files.readAllBytes(file);
+        ByteBuffer.wrap(bytes).putInt(4, 1);
+        Files.write(file, bytes);
+        IOException e = assertThrows(IOException.class, () -> GeneInfoSnapshot.open(file));
+        assertTrue(e.getMessage().contains("version"));
+    }
+}
@@ -0,0 +1,119 @@
+package org.pmoi.database;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.IntStream;
+
+/**
+ * Lookup throughput of {@link GeneMapper} against the former full scan over the gene list.
+ * Uses a synthetic gene_info table with the size of the human one.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GeneMapperBenchmark {
+
+    private static final int GENES = 60_000;
+    private static final int QUERIES = 1_000;
+
+    private GeneMapper mapper;
+    private List<ScanRecord> scanDB;
+    private String[] symbols;
+    private String[] ids;
+
+    static List<String> geneInfoLines(int size) {
+        List<String> lines = new ArrayList<>(size + 1);
+        lines.add("#tax_id\tGeneID\tSymbol\tLocusTag\tSynonyms\tdbXrefs\tchromosome\tmap_location\tdescription\ttype_of_gene");
+        for (int i = 0; i < size; i++) {
+            lines.add(String.format("9606\t%d\tGENE%d\t-\tALIAS%d|ALT%d\t-\t1\t-\tgene number %d\tprotein-coding",
+                    i + 1, i, i, i, i));
+        }
+        return lines;
+    }
+
+    @Setup
+    public void setup() throws IOException {
+        List<String> lines = geneInfoLines(GENES);
+        mapper = new GeneMapper(lines.stream());
+        scanDB = new ArrayList<>(GENES);
+        lines.stream().skip(1).map(l -> l.split("\t")).forEach(l -> scanDB.add(new ScanRecord(l[1], l[2], l[4])));
+        SplittableRandom random = new SplittableRandom(42);
+        // a mix of symbols, lower case symbols, aliases and unknown names
+        symbols = IntStream.range(0, QUERIES).mapToObj(i -> {
+            int gene = random.nextInt(GENES);
+            return switch (i % 4) {
+                case 0 -> "GENE" + gene;
+                case 1 -> "gene" + gene;
+                case 2 -> "ALIAS" + gene;
+                default -> "UNKNOWN" + gene;
+            };
+        }).toArray(String[]::new);
+        ids = IntStream.range(0, QUERIES).mapToObj(i -> String.valueOf(random.nextInt(GENES) + 1)).toArray(String[]::new);
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void indexedGetId(Blackhole bh) {
+        for (String symbol : symbols) {
+            bh.consume(mapper.getId(symbol));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void indexedGetSymbol(Blackhole bh) {
+        for (String id : ids) {
+            bh.consume(mapper.getSymbol(id));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void scanGetId(Blackhole bh) {
+        for (String symbol : symbols) {
+            var result = scanDB.parallelStream().filter(e -> e.symbol.equalsIgnoreCase(symbol)).findAny().map(e -> e.id);
+            if (result.isEmpty())
+                result = scanDB.parallelStream().filter(e -> e.synonyms.contains(symbol.toUpperCase())).findAny().map(e -> e.id);
+            bh.consume(result);
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(QUERIES)
+    public void scanGetSymbol(Blackhole bh) {
+        for (String id : ids) {
+            Optional<String> result = scanDB.parallelStream().filter(e -> e.id.equals(id)).findAny().map(e -> e.symbol);
+            bh.consume(result);
+        }
+    }
+
+    private static class ScanRecord {
+        private final String id;
+        private final String symbol;
+        private final List<String> synonyms;
+
+        ScanRecord(String id, String symbol, String synonyms) {
+            this.id = id;
+            this.symbol = symbol;
+            this.synonyms = Arrays.asList(synonyms.split("\\|"));
+        }
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GeneMapperBenchmark.class.getSimpleName()).build()).run();
+    }
+}
@@ -0,0 +1,105 @@
+package org.pmoi.model;
+
+import org.junit.jupiter.api.Test;
+import org.pmoi.database.GeneDictionary;
+
+import java.util.*;
+import java.util.concurrent.*;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GeneTest {
+
+    @Test
+    void equalityMatchesNames() {
+        SplittableRandom random = new SplittableRandom(4);
+        List<Gene> genes = new ArrayList<>();
+        for (int i = 0; i < 500; i++) {
+            String name = "GENETEST" + random.nextInt(100);
+            genes.add(new Gene(random.nextBoolean() ? name : name.toLowerCase(), String.valueOf(i)));
+        }
+        for (Gene a : genes) {
+            for (Gene b : genes) {
+                // former implementation: case insensitive name comparison
+                boolean expected = a.getName().equalsIgnoreCase(b.getName());
+                assertEquals(expected, a.equals(b), a + " " + b);
+                if (expected)
+                    assertEquals(a.hashCode(), b.hashCode());
+            }
+        }
+        Set<Gene> distinct = new HashSet<>(genes);
+        assertEquals(genes.stream().map(g -> g.getName().toUpperCase()).distinct().count(), distinct.size());
+        assertEquals(genes.get(0), new Gene(genes.get(0)));
+    }
+
+    @Test
+    void equalityIgnoresTheDefaultLocale() {
+        Locale locale = Locale.getDefault();
+        try {
+            Locale.setDefault(new Locale("tr", "TR"));
+            assertEquals(new Gene("GENETEST_PIK3CA", "1"), new Gene("genetest_pik3ca", "1"));
+            assertEquals(GeneDictionary.getInstance().find("GENETEST_PIK3CA"),
+                    GeneDictionary.getInstance().find("genetest_pik3ca"));
+        } finally {
+            Locale.setDefault(locale);
+        }
+    }
+
+    @Test
+    void renamedGenesFollowTheirName() {
+        Gene gene = new Gene("GENETEST_A", "1");
+        gene.setName("genetest_b");
+        assertEquals(new Gene("GENETEST_B", "2"), gene);
+        assertNotEquals(new Gene("GENETEST_A", "1"), gene);
+    }
+
+    @Test
+    void genesWithoutSymbolAreComparedByNcbiId() {
+        Gene tp53 = new Gene(7157);
+        assertEquals(GeneDictionary.NO_ID, tp53.getSymbolId());
+        assertEquals(new Gene(7157), tp53);
+        assertEquals(new Gene(7157).hashCode(), tp53.hashCode());
+        assertNotEquals(new Gene(3845), tp53);
+        assertEquals(2, new HashSet<>(List.of(tp53, new Gene(7157), new Gene(3845))).size());
+        // a symbol wins over an unnamed gene with the same NCBI ID
+        Gene named = new Gene("TP53", "7157");
+        assertNotEquals(named, tp53);
+        assertNotEquals(tp53, named);
+        Pathway pathway = new Pathway("p", "pathway", List.of(named));
+        assertFalse(pathway.contains(tp53));
+    }
+
+    @Test
+    void dictionaryIsCaseInsensitiveAndDense() throws InterruptedException, ExecutionException {
+        GeneDictionary dictionary = GeneDictionary.getInstance();
+        int id = dictionary.intern("DictTest1");
+        assertEquals(id, dictionary.intern("DICTTEST1"));
+        assertEquals(id, dictionary.find("dicttest1"));
+        int size = dictionary.size();
+        assertEquals(GeneDictionary.NO_ID, dictionary.find("DictTestUnknown"));
+        assertEquals(size, dictionary.size());
+        assertEquals(GeneDictionary.NO_ID, dictionary.intern(null));
+
+        // concurrent interning gives each name one ID, and no ID is skipped
+        int before = dictionary.size();
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        List<Future<Map<String, Integer>>> futures = new ArrayList<>();
+        for (int t = 0; t < 4; t++) {
+            futures.add(service.submit(() -> {
+                Map<String, Integer> ids = new HashMap<>();
+                for (int i = 0; i < 1000; i++) {
+                    ids.put("DICTTEST_C" + i, dictionary.intern("dicttest_c" + i));
+                }
+                return ids;
+            }));
+        }
+        Map<String, Integer> first = futures.get(0).get();
+        for (Future<Map<String, Integer>> future : futures) {
+            assertEquals(first, future.get());
+        }
+        service.shutdown();
+        assertEquals(before + 1000, dictionary.size());
+        assertEquals(1000, new HashSet<>(first.values()).size());
+        first.values().forEach(v -> assertTrue(v >= before && v < before + 1000));
+    }
+}
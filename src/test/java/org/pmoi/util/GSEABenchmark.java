@@ -0,0 +1,103 @@
+package org.pmoi.util;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.pmoi.model.Gene;
+
+import java.security.SecureRandom;
+import java.util.List;
+import java.util.Random;
+import java.util.Set;
+import java.util.SplittableRandom;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Enrichment score of a gene set of 80 genes over a ranked list: primitive kernel against the former BigDecimal
+ * running sums. Whole GSEA runs: shared seeded permutations against shuffles with a new SecureRandom each.
+ * Run with {@code -prof gc} to compare allocation rates.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class GSEABenchmark {
+
+    @Param({"2000", "10000"})
+    private int size;
+
+    private List<Gene> sortedList;
+    private Set<Gene> geneSet;
+    private double[] weights;
+    private boolean[] hits;
+    private double hitWeight;
+    private int hitCount;
+    private RankedList rankedList;
+    private PermutationMatrix permutations;
+
+    @Setup
+    public void setup() {
+        SplittableRandom random = new SplittableRandom(42);
+        sortedList = GSEATest.rankedList(size, random);
+        geneSet = random.ints(80, 0, size).mapToObj(sortedList::get).collect(Collectors.toSet());
+        weights = GSEATest.weights(sortedList);
+        hits = GSEATest.hits(sortedList, geneSet);
+        for (int i = 0; i < hits.length; i++) {
+            if (hits[i]) {
+                hitWeight += weights[i];
+                hitCount++;
+            }
+        }
+        rankedList = new RankedList(sortedList);
+        permutations = new PermutationMatrix(size, GSEA.PERMUTATIONS, 42);
+    }
+
+    @Benchmark
+    public double primitiveKernel() {
+        return GSEA.enrichmentScore(weights, hits, hitWeight, hitCount);
+    }
+
+    @Benchmark
+    public double bigDecimal() {
+        return GSEATest.reference(geneSet, sortedList);
+    }
+
+    @Benchmark
+    public double runSharedPermutations() {
+        return new GSEA().run(geneSet, rankedList, permutations);
+    }
+
+    /**
+     * Former permutation loop, with the primitive kernel
+     */
+    @Benchmark
+    public double runSecureRandomShuffles() {
+        double[] w = weights.clone();
+        boolean[] h = hits.clone();
+        double es = GSEA.enrichmentScore(w, h, hitWeight, hitCount);
+        double count = 0;
+        for (int p = 0; p < GSEA.PERMUTATIONS; p++) {
+            Random random = new SecureRandom();
+            for (int i = w.length - 1; i > 0; i--) {
+                int j = random.nextInt(i + 1);
+                double tw = w[i];
+                w[i] = w[j];
+                w[j] = tw;
+                boolean th = h[i];
+                h[i] = h[j];
+                h[j] = th;
+            }
+            if (Math.abs(GSEA.enrichmentScore(w, h, hitWeight, hitCount)) >= Math.abs(es))
+                count++;
+        }
+        return count / GSEA.PERMUTATIONS;
+    }
+
+    public static void main(String[] args) throws RunnerException {
+        new Runner(new OptionsBuilder().include(GSEABenchmark.class.getSimpleName()).build()).run();
+    }
+}
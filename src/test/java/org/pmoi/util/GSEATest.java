@@ -0,0 +1,427 @@
+package org.pmoi.util;
+
+import org.junit.jupiter.api.Test;
+import org.pmoi.model.GSEAMethod;
+import org.pmoi.model.Gene;
+import org.pmoi.model.GeneSet;
+
+import java.math.BigDecimal;
+import java.math.RoundingMode;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class GSEATest {
+
+    /**
+     * Random ranked list with significance scores of both signs
+     */
+    static List<Gene> rankedList(int size, SplittableRandom random) {
+        List<Gene> genes = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            double fc = (random.nextBoolean() ? 1 : -1) * (1.1 + random.nextDouble() * 8);
+            genes.add(new Gene("RANKED" + i, String.valueOf(i), Math.pow(10, -1 - random.nextDouble() * 10), fc));
+        }
+        genes.sort(Comparator.comparingDouble(Gene::significanceScore).reversed());
+        return genes;
+    }
+
+    static double[] weights(List<Gene> sortedList) {
+        return sortedList.stream().mapToDouble(g -> Math.pow(Math.abs(g.significanceScore()), 1.5)).toArray();
+    }
+
+    static boolean[] hits(List<Gene> sortedList, Set<Gene> geneSet) {
+        boolean[] hits = new boolean[sortedList.size()];
+        for (int i = 0; i < hits.length; i++) {
+            hits[i] = geneSet.contains(sortedList.get(i));
+        }
+        return hits;
+    }
+
+    static double kernel(List<Gene> sortedList, Set<Gene> geneSet) {
+        double[] weights = weights(sortedList);
+        boolean[] hits = hits(sortedList, geneSet);
+        double hitWeight = 0;
+        int hitCount = 0;
+        for (int i = 0; i < hits.length; i++) {
+            if (hits[i]) {
+                hitWeight += weights[i];
+                hitCount++;
+            }
+        }
+        return GSEA.enrichmentScore(weights, hits, hitWeight, hitCount);
+    }
+
+    /**
+     * Former BigDecimal implementation of the enrichment score, step weight 1.5
+     */
+    static double reference(Set<Gene> geneSet, List<Gene> sortedList) {
+        List<BigDecimal> lHits = new ArrayList<>(100);
+        List<BigDecimal> lMisses = new ArrayList<>(100);
+        BigDecimal hitSum = new BigDecimal("0");
+        BigDecimal missSum = new BigDecimal("0");
+        var nr = sortedList.stream().filter(geneSet::contains)
+                .mapToDouble(e -> Math.pow(Math.abs(e.significanceScore()), 1.5)).sum();
+        var nh = sortedList.stream().filter(geneSet::contains).count();
+        for (Gene g : sortedList) {
+            if (geneSet.contains(g)) {
+                hitSum = hitSum.add(new BigDecimal(Double.toString(Math.pow(Math.abs(g.significanceScore()), 1.5)))
+                        .divide(BigDecimal.valueOf(nr), 30, RoundingMode.HALF_UP));
+            } else {
+                missSum = missSum.add(new BigDecimal("1")
+                        .divide(new BigDecimal(Double.toString((double) sortedList.size() - nh)), 30, RoundingMode.HALF_EVEN));
+            }
+            lHits.add(hitSum);
+            lMisses.add(missSum);
+        }
+        BigDecimal esBD = new BigDecimal("0");
+        for (int i = 0; i < lHits.size(); i++) {
+            esBD = esBD.abs().compareTo(lHits.get(i).subtract(lMisses.get(i)).abs()) > 0 ? esBD : lHits.get(i).subtract(lMisses.get(i));
+        }
+        return esBD.setScale(5, RoundingMode.HALF_UP).doubleValue();
+    }
+
+    @Test
+    void kernelAgreesWithReference() {
+        SplittableRandom random = new SplittableRandom(42);
+        int exact = 0;
+        int cases = 0;
+        for (int size : new int[]{20, 200, 2000}) {
+            List<Gene> sortedList = rankedList(size, random);
+            for (int setSize : new int[]{1, 5, 15, 50}) {
+                for (int trial = 0; trial < 25; trial++) {
+                    Set<Gene> geneSet = random.ints(setSize, 0, size).mapToObj(sortedList::get).collect(Collectors.toSet());
+                    List<Gene> permuted = new ArrayList<>(sortedList);
+                    if (trial > 0)
+                        Collections.shuffle(permuted, new Random(trial));
+                    double expected = reference(geneSet, permuted);
+                    double actual = kernel(permuted, geneSet);
+                    // both round to 5 decimals, floating sums may only fall on the other side of a rounding boundary
+                    assertEquals(expected, actual, 1.000001e-5, "size " + size + ", set size " + setSize);
+                    if (expected == actual)
+                        exact++;
+                    cases++;
+                }
+            }
+        }
+        assertTrue(exact >= cases * 0.99, exact + " exact matches out of " + cases);
+    }
+
+    @Test
+    void rankedListMatchesSortedGenes() {
+        SplittableRandom random = new SplittableRandom(7);
+        List<Gene> genes = rankedList(500, random);
+        // ties keep the input order
+        genes.add(new Gene("RANKED_TIE", "-", genes.get(10).getPvalue(), genes.get(10).getFoldChange()));
+        Collections.shuffle(genes, new Random(7));
+        List<Gene> sortedList = genes.stream()
+                .sorted(Comparator.comparingDouble(Gene::significanceScore).reversed())
+                .collect(Collectors.toList());
+        RankedList rankedList = new RankedList(genes);
+        assertEquals(sortedList.size(), rankedList.size());
+        assertArrayEquals(weights(sortedList), rankedList.getWeights());
+        for (int i = 0; i < sortedList.size(); i++) {
+            assertSame(sortedList.get(i), rankedList.getGene(i));
+        }
+        Set<Gene> geneSet = Set.of(sortedList.get(3), sortedList.get(250));
+        assertArrayEquals(hits(sortedList, geneSet), rankedList.hits(geneSet));
+    }
+
+    @Test
+    void permutationsAreReproducible() {
+        PermutationMatrix permutations = new PermutationMatrix(300, 50, 42);
+        PermutationMatrix same = new PermutationMatrix(300, 50, 42);
+        for (int p = 0; p < permutations.count(); p++) {
+            int[] row = new int[permutations.size()];
+            for (int i = 0; i < row.length; i++) {
+                row[i] = permutations.get(p, i);
+                assertEquals(row[i], same.get(p, i));
+            }
+            Arrays.sort(row);
+            for (int i = 0; i < row.length; i++) {
+                assertEquals(i, row[i]);
+            }
+        }
+        List<Gene> genes = rankedList(300, new SplittableRandom(3));
+        RankedList rankedList = new RankedList(genes);
+        List<Gene> geneSet = genes.subList(0, 40).stream().filter(g -> g.getFoldChange() > 0).collect(Collectors.toList());
+        GSEA gsea = new GSEA();
+        double pvalue = gsea.run(geneSet, rankedList, permutations);
+        double score = gsea.getNormalizedScore();
+        GSEA again = new GSEA();
+        assertEquals(pvalue, again.run(geneSet, rankedList, same));
+        assertEquals(score, again.getNormalizedScore());
+    }
+
+    @Test
+    void generatedPermutationsAreReproducible() {
+        PermutationMatrix permutations = new PermutationMatrix(100, 10, 42);
+        int[] row = new int[100];
+        int[] same = new int[100];
+        permutations.generate(10, row);
+        new PermutationMatrix(100, 5, 42).generate(10, same);
+        assertArrayEquals(row, same);
+        permutations.generate(11, same);
+        assertFalse(Arrays.equals(row, same));
+        Arrays.sort(row);
+        assertArrayEquals(IntStream.range(0, 100).toArray(), row);
+        assertThrows(IllegalArgumentException.class, () -> permutations.generate(9, same));
+    }
+
+    @Test
+    void permutationsStopEarlyOnlyForNonSignificantSets() {
+        List<Gene> genes = rankedList(1000, new SplittableRandom(11));
+        RankedList rankedList = new RankedList(genes);
+        PermutationMatrix permutations = new PermutationMatrix(1000, 1000, 42);
+        // top ranked genes: significant, permuted up to the cap
+        GSEA gsea = new GSEA(0.05, 5000);
+        double pvalue = gsea.run(genes.subList(0, 30), rankedList, permutations);
+        assertTrue(pvalue < 0.001, "p-value " + pvalue);
+        assertEquals(5000, gsea.getPermutationCount());
+        // genes spread over the list: stops early
+        List<Gene> spread = IntStream.range(0, 30).mapToObj(i -> genes.get(i * 33 + 16)).collect(Collectors.toList());
+        pvalue = gsea.run(spread, rankedList, permutations);
+        assertTrue(pvalue > 0.05, "p-value " + pvalue);
+        assertTrue(gsea.getPermutationCount() < 1000, gsea.getPermutationCount() + " permutations");
+        assertTrue(gsea.getPermutationCount() >= GSEA.MIN_PERMUTATIONS);
+        // fixed number of permutations
+        GSEA fixed = new GSEA();
+        fixed.run(spread, rankedList, permutations);
+        assertEquals(GSEA.PERMUTATIONS, fixed.getPermutationCount());
+    }
+
+    @Test
+    void sparseScoreMatchesKernel() {
+        SplittableRandom random = new SplittableRandom(13);
+        double[] weights = weights(rankedList(500, random));
+        for (int setSize : new int[]{1, 5, 40}) {
+            for (int trial = 0; trial < 50; trial++) {
+                int[] ranks = random.ints(0, 500).distinct().limit(setSize).toArray();
+                double[] hitWeights = new double[setSize];
+                boolean[] hits = new boolean[500];
+                double[] permutedWeights = new double[500];
+                SplittableRandom others = random.split();
+                for (int i = 0; i < 500; i++) {
+                    permutedWeights[i] = weights[others.nextInt(500)];
+                }
+                double hitWeight = 0;
+                for (int g = 0; g < setSize; g++) {
+                    hitWeights[g] = weights[g * 7];
+                    hits[ranks[g]] = true;
+                    permutedWeights[ranks[g]] = hitWeights[g];
+                    hitWeight += hitWeights[g];
+                }
+                MultilevelSplitting splitting = new MultilevelSplitting(hitWeights, 500, 1);
+                assertEquals(Math.abs(GSEA.enrichmentScore(permutedWeights, hits, hitWeight, setSize)),
+                        splitting.score(ranks), 1.000001e-5);
+            }
+        }
+    }
+
+    @Test
+    void multilevelAgreesWithPermutations() {
+        List<Gene> genes = rankedList(1000, new SplittableRandom(17));
+        RankedList rankedList = new RankedList(genes);
+        PermutationMatrix permutations = new PermutationMatrix(1000, 1000, 42);
+        // p-value around 0.01, resolved by 20000 permutations
+        List<Gene> geneSet = IntStream.range(0, 20).mapToObj(i -> genes.get(i * 40)).collect(Collectors.toList());
+        GSEA exact = new GSEA(-1, 20_000);
+        double pvalue = exact.run(geneSet, rankedList, permutations);
+        assertTrue(pvalue > 0.001 && pvalue < 0.05, "p-value " + pvalue);
+        double[] weights = rankedList.weights();
+        boolean[] hits = rankedList.hits(geneSet);
+        double[] hitWeights = IntStream.range(0, 1000).filter(i -> hits[i]).mapToDouble(i -> weights[i]).toArray();
+        double observed = Math.abs(GSEA.enrichmentScore(weights, hits, Arrays.stream(hitWeights).sum(), hitWeights.length));
+        double estimate = new MultilevelSplitting(hitWeights, 1000, 42).pvalue(observed);
+        assertTrue(estimate > pvalue / 2 && estimate < pvalue * 2, "estimate " + estimate + ", permutations " + pvalue);
+    }
+
+    @Test
+    void multilevelResolvesSmallPvalues() {
+        List<Gene> genes = rankedList(1000, new SplittableRandom(11));
+        RankedList rankedList = new RankedList(genes);
+        PermutationMatrix permutations = new PermutationMatrix(1000, 1000, 42);
+        List<Gene> geneSet = genes.subList(0, 30);
+        GSEA permutation = new GSEA(0.05, 1000);
+        assertEquals(0, permutation.run(geneSet, rankedList, permutations));
+        GSEA multilevel = new GSEA(0.05, 1000, GSEAMethod.MULTILEVEL);
+        double pvalue = multilevel.run(geneSet, rankedList, permutations);
+        assertTrue(pvalue > 0 && pvalue < 1e-4, "p-value " + pvalue);
+        assertEquals(permutation.getNormalizedScore(), multilevel.getNormalizedScore());
+        // same seed, same estimate
+        assertEquals(pvalue, new GSEA(0.05, 1000, GSEAMethod.MULTILEVEL).run(geneSet, rankedList, permutations));
+        // resolved p-values are left to the permutations
+        List<Gene> spread = IntStream.range(0, 30).mapToObj(i -> genes.get(i * 33 + 16)).collect(Collectors.toList());
+        assertEquals(permutation.run(spread, rankedList, permutations), multilevel.run(spread, rankedList, permutations));
+    }
+
+    @Test
+    void nullDistributionScoresRandomSets() {
+        List<Gene> genes = rankedList(300, new SplittableRandom(19));
+        RankedList rankedList = new RankedList(genes);
+        PermutationMatrix permutations = new PermutationMatrix(300, 50, 42);
+        NullDistributionCache nullDistributions = new NullDistributionCache(rankedList, permutations, 10, 80);
+        NullDistribution nullDistribution = nullDistributions.get(12);
+        assertEquals(15, nullDistribution.getSetSize());
+        assertSame(nullDistribution, nullDistributions.get(20));
+        assertNotSame(nullDistribution, nullDistributions.get(21));
+        // same scores from the dense kernel, over stored and generated permutations
+        double[] weights = weights(genes);
+        double[] scores = new double[80];
+        int[] buffer = new int[300];
+        for (int p = 0; p < 80; p++) {
+            if (p >= permutations.count())
+                permutations.generate(p, buffer);
+            Set<Gene> randomSet = new HashSet<>();
+            for (int i = 0; i < 15; i++) {
+                randomSet.add(genes.get(p < permutations.count() ? permutations.get(p, i) : buffer[i]));
+            }
+            scores[p] = kernel(genes, randomSet);
+        }
+        for (double score : scores) {
+            assertEquals(Arrays.stream(scores).filter(e -> Math.abs(e) >= Math.abs(score)).count(),
+                    nullDistribution.exceedances(score));
+        }
+        double positiveMean = Arrays.stream(scores).filter(e -> e >= 0).average().orElseThrow();
+        assertEquals(0.5 / positiveMean, nullDistribution.normalize(0.5), 1e-4);
+    }
+
+    @Test
+    void nullDistributionsRankSets() {
+        List<Gene> genes = rankedList(1000, new SplittableRandom(11));
+        RankedList rankedList = new RankedList(genes);
+        PermutationMatrix permutations = new PermutationMatrix(1000, 1000, 42);
+        NullDistributionCache nullDistributions = new NullDistributionCache(rankedList, permutations, 5, 1000);
+        GSEA gsea = new GSEA();
+        assertEquals(0, gsea.run(genes.subList(0, 30), rankedList, nullDistributions));
+        assertTrue(gsea.getNormalizedScore() > 1);
+        List<Gene> spread = IntStream.range(0, 30).mapToObj(i -> genes.get(i * 33 + 16)).collect(Collectors.toList());
+        assertTrue(gsea.run(spread, rankedList, nullDistributions) > 0.05);
+        assertEquals(1, nullDistributions.size());
+        assertEquals(1, gsea.run(List.of(new Gene("ABSENT", "-", 0.01, 2)), rankedList, nullDistributions));
+    }
+
+    @Test
+    void equalSetsAreComputedOnce() throws InterruptedException, ExecutionException {
+        List<Gene> genes = rankedList(500, new SplittableRandom(23));
+        GSEACache cache = new GSEACache(genes, 42, 0.05, 200);
+        List<GeneSet> sets = new ArrayList<>();
+        for (int s = 0; s < 4; s++) {
+            List<Gene> setGenes = new ArrayList<>(genes.subList(s * 50, s * 50 + 20));
+            sets.add(new GeneSet("set" + s, "set" + s, setGenes));
+            // same genes in another order, under another name
+            Collections.reverse(setGenes);
+            sets.add(new GeneSet("copy" + s, "copy" + s, new ArrayList<>(setGenes)));
+        }
+        ExecutorService service = Executors.newFixedThreadPool(8);
+        List<Future<GSEACache.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 40; i++) {
+            GeneSet set = sets.get(i % sets.size());
+            futures.add(service.submit(() -> cache.run(set)));
+        }
+        Map<String, GSEACache.Result> results = new HashMap<>();
+        for (int i = 0; i < 40; i++) {
+            GSEACache.Result result = futures.get(i).get();
+            String name = sets.get(i % sets.size()).getIdentifier().replace("copy", "set");
+            GSEACache.Result previous = results.putIfAbsent(name, result);
+            if (previous != null)
+                assertSame(previous, result);
+        }
+        service.shutdown();
+        assertEquals(4, results.size());
+        assertEquals(40, cache.getRequestCount());
+        assertEquals(4, cache.getComputationCount());
+    }
+
+    @Test
+    void concurrentCallersWaitForTheComputation() throws Exception {
+        List<Gene> genes = rankedList(100, new SplittableRandom(29));
+        GSEACache cache = new GSEACache(genes, 42, 0.05, 100);
+        GeneSet set = new GeneSet("set", "set", genes.subList(0, 10));
+        AtomicInteger computations = new AtomicInteger();
+        CountDownLatch release = new CountDownLatch(1);
+        ExecutorService service = Executors.newFixedThreadPool(4);
+        List<Future<GSEACache.Result>> futures = new ArrayList<>();
+        for (int i = 0; i < 4; i++) {
+            futures.add(service.submit(() -> cache.run(set, s -> {
+                computations.incrementAndGet();
+                try {
+                    release.await(10, TimeUnit.SECONDS);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                throw new IllegalStateException("computation failed");
+            })));
+        }
+        // every caller is in, while the first computation is still running
+        while (cache.getRequestCount() < 4) {
+            Thread.sleep(1);
+        }
+        Thread.sleep(50);
+        release.countDown();
+        for (Future<GSEACache.Result> future : futures) {
+            ExecutionException e = assertThrows(ExecutionException.class, future::get);
+            Throwable cause = e.getCause() instanceof CompletionException ? e.getCause().getCause() : e.getCause();
+            assertTrue(cause instanceof IllegalStateException, String.valueOf(cause));
+        }
+        service.shutdown();
+        assertEquals(1, computations.get());
+        assertEquals(1, cache.getComputationCount());
+        assertEquals(4, cache.getRequestCount());
+    }
+
+    @Test
+    void stoppingRule() {
+        assertFalse(GSEA.isClearlyAbove(9, 100, 0.05));
+        assertFalse(GSEA.isClearlyAbove(50, 99, 0.05));
+        assertTrue(GSEA.isClearlyAbove(50, 100, 0.05));
+        // 0.06 is too close to the threshold
+        assertFalse(GSEA.isClearlyAbove(60, 1000, 0.05));
+        assertFalse(GSEA.isClearlyAbove(500, 1000, -1));
+    }
+
+    @Test
+    void permutedKernelMatchesPermutedArrays() {
+        List<Gene> sortedList = rankedList(200, new SplittableRandom(5));
+        Set<Gene> geneSet = new HashSet<>(sortedList.subList(50, 70));
+        double[] weights = weights(sortedList);
+        boolean[] hits = hits(sortedList, geneSet);
+        double hitWeight = 0;
+        for (int i = 0; i < hits.length; i++) {
+            hitWeight += hits[i] ? weights[i] : 0;
+        }
+        PermutationMatrix permutations = new PermutationMatrix(200, 10, 1);
+        for (int p = 0; p < permutations.count(); p++) {
+            double[] permutedWeights = new double[200];
+            boolean[] permutedHits = new boolean[200];
+            for (int i = 0; i < 200; i++) {
+                permutedWeights[i] = weights[permutations.get(p, i)];
+                permutedHits[i] = hits[permutations.get(p, i)];
+            }
+            assertEquals(GSEA.enrichmentScore(permutedWeights, permutedHits, hitWeight, geneSet.size()),
+                    GSEA.enrichmentScore(weights, hits, hitWeight, geneSet.size(), permutations.rows(), p * 200));
+        }
+    }
+
+    @Test
+    void tiesKeepTheLastDeviation() {
+        // equal weights: running sum 0.5, 0, -0.5, 0
+        List<Gene> sortedList = List.of(new Gene("TIE1", "1", 0.01, 2), new Gene("TIE2", "2", 0.01, 2),
+                new Gene("TIE3", "3", 0.01, 2), new Gene("TIE4", "4", 0.01, 2));
+        Set<Gene> geneSet = Set.of(sortedList.get(0), sortedList.get(3));
+        assertEquals(-0.5, reference(geneSet, sortedList));
+        assertEquals(-0.5, kernel(sortedList, geneSet));
+    }
+
+    @Test
+    void roundingIsHalfUp() {
+        assertEquals(0.12346, GSEA.round(0.123455, 5));
+        assertEquals(-0.12346, GSEA.round(-0.123455, 5));
+        assertEquals(0.1, GSEA.round(0.1, 5));
+        assertEquals(0, GSEA.round(0, 5));
+    }
+}
@@ -0,0 +1,69 @@
+package org.pmoi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.math.MathContext;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ORATest {
+
+    private static BigInteger binomial(int n, int k) {
+        BigInteger result = BigInteger.ONE;
+        for (int i = 0; i < k; i++) {
+            result = result.multiply(BigInteger.valueOf(n - i)).divide(BigInteger.valueOf(i + 1));
+        }
+        return result;
+    }
+
+    /**
+     * Exact upper tail of the hypergeometric distribution
+     */
+    static double reference(int hits, int pathwaySize, int selected, int universe) {
+        BigInteger tail = BigInteger.ZERO;
+        for (int i = hits; i <= Math.min(pathwaySize, selected); i++) {
+            tail = tail.add(binomial(pathwaySize, i).multiply(binomial(universe - pathwaySize, selected - i)));
+        }
+        return new BigDecimal(tail).divide(new BigDecimal(binomial(universe, selected)), MathContext.DECIMAL64)
+                .doubleValue();
+    }
+
+    @Test
+    void pvalueMatchesExactTail() {
+        for (int[] c : new int[][]{{20, 5, 10}, {200, 15, 40}, {2000, 120, 300}}) {
+            int universe = c[0];
+            int pathwaySize = c[1];
+            int selected = c[2];
+            ORA ora = new ORA(universe, selected);
+            for (int hits = 0; hits <= Math.min(pathwaySize, selected); hits++) {
+                double expected = reference(hits, pathwaySize, selected, universe);
+                assertEquals(expected, ora.pvalue(hits, pathwaySize), expected * 1e-9,
+                        hits + " hits out of " + pathwaySize);
+            }
+        }
+    }
+
+    @Test
+    void smallPvaluesDontUnderflow() {
+        ORA ora = new ORA(20_000, 1000);
+        double pvalue = ora.pvalue(150, 200);
+        assertTrue(pvalue > 0 && pvalue < 1e-100, "p-value " + pvalue);
+        assertEquals(reference(150, 200, 1000, 20_000), pvalue, pvalue * 1e-9);
+    }
+
+    @Test
+    void edgeCases() {
+        ORA ora = new ORA(100, 10);
+        assertEquals(1, ora.pvalue(0, 20));
+        // more hits than the pathway size: the pathway counts at least the hits
+        assertEquals(ora.pvalue(5, 5), ora.pvalue(5, 3));
+        assertEquals(0, ora.pvalue(11, 50));
+        // every gene selected, the pathway is always fully hit
+        assertEquals(1, new ORA(100, 100).pvalue(20, 20));
+        assertEquals(2.0, ora.foldEnrichment(4, 20));
+        assertEquals(0, ora.foldEnrichment(0, 20));
+        assertThrows(IllegalArgumentException.class, () -> new ORA(10, 11));
+    }
+}
@@ -0,0 +1,112 @@
+package org.pmoi.util;
+
+import com.sun.net.httpserver.HttpServer;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.InetSocketAddress;
+import java.net.URL;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.time.Duration;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class ReplayServerTest {
+
+    @TempDir
+    Path archiveDir;
+
+    private HttpServer origin;
+    private final AtomicInteger originRequests = new AtomicInteger();
+
+    @BeforeEach
+    void start() throws IOException {
+        origin = HttpServer.create(new InetSocketAddress(InetAddress.getLoopbackAddress(), 0), 0);
+        origin.createContext("/list", exchange -> {
+            originRequests.incrementAndGet();
+            byte[] body = ("pathway list " + exchange.getRequestURI().getRawQuery()).getBytes(StandardCharsets.UTF_8);
+            exchange.sendResponseHeaders(200, body.length);
+            try (OutputStream out = exchange.getResponseBody()) {
+                out.write(body);
+            }
+        });
+        origin.start();
+        // no throttling, retry nor circuit breaking, to count requests
+        RequestScheduler.register(origin.getAddress().getHostString(), new RequestScheduler.Builder()
+                .withPermitsPerSecond(1000).withMaxRetries(0).withCircuitBreaker(Integer.MAX_VALUE, Duration.ZERO).build());
+    }
+
+    @AfterEach
+    void stop() {
+        origin.stop(0);
+        HttpConnector.setTransport(new HttpClientTransport());
+    }
+
+    private URL url(String query) throws IOException {
+        InetSocketAddress address = origin.getAddress();
+        return new URL("http://" + address.getHostString() + ":" + address.getPort() + "/list?q=" + query);
+    }
+
+    @Test
+    void recordedResponsesAreReplayed() throws IOException {
+        HttpConnector.setTransport(new RecordingTransport(new HttpClientTransport(), HttpArchive.open(archiveDir)));
+        HttpConnector connector = new HttpConnector();
+        assertEquals("pathway list q=hsa%20a", connector.getContent(url("hsa%20a")));
+        assertEquals("pathway list q=hsa", connector.getContent(url("hsa")));
+        assertEquals(2, originRequests.get());
+
+        try (ReplayServer server = new ReplayServer(HttpArchive.open(archiveDir), Duration.ZERO, 0, 42)) {
+            HttpConnector.setTransport(new HttpClientTransport(server.getURI()));
+            assertEquals("pathway list q=hsa%20a", connector.getContent(url("hsa%20a")));
+            assertEquals("pathway list q=hsa", connector.getContent(url("hsa")));
+            assertThrows(HttpException.class, () -> connector.getContent(url("mmu")));
+            assertEquals(3, server.getRequestCount());
+        }
+        assertEquals(2, originRequests.get());
+    }
+
+    @Test
+    void errorsAndLatencyAreInjected() throws IOException {
+        HttpConnector.setTransport(new RecordingTransport(new HttpClientTransport(), HttpArchive.open(archiveDir)));
+        HttpConnector connector = new HttpConnector();
+        connector.getContent(url("hsa"));
+
+        try (ReplayServer server = new ReplayServer(HttpArchive.open(archiveDir), Duration.ofMillis(50), 0.5, 42)) {
+            HttpConnector.setTransport(new HttpClientTransport(server.getURI()));
+            int failures = 0;
+            long start = System.nanoTime();
+            for (int i = 0; i < 20; i++) {
+                try {
+                    assertEquals("pathway list q=hsa", connector.getContent(url("hsa")));
+                } catch (HttpException e) {
+                    assertEquals(503, e.getStatusCode());
+                    failures++;
+                }
+            }
+            assertTrue(System.nanoTime() - start >= Duration.ofMillis(20 * 50).toNanos());
+            assertEquals(server.getErrorCount(), failures);
+            assertTrue(failures > 0 && failures < 20);
+        }
+    }
+
+    @Test
+    void notFoundIsReplayed() throws IOException {
+        HttpConnector.setTransport(new RecordingTransport(new HttpClientTransport(), HttpArchive.open(archiveDir)));
+        HttpConnector connector = new HttpConnector();
+        URL missing = new URL(url("hsa").toString().replace("/list", "/get"));
+        assertThrows(FileNotFoundException.class, () -> connector.getContent(missing));
+
+        try (ReplayServer server = new ReplayServer(HttpArchive.open(archiveDir), Duration.ZERO, 0, 42)) {
+            HttpConnector.setTransport(new HttpClientTransport(server.getURI()));
+            assertThrows(FileNotFoundException.class, () -> connector.getContent(missing));
+        }
+    }
+}
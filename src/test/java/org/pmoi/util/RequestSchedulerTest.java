@@ -0,0 +1,229 @@
+package org.pmoi.util;
+
+import org.junit.jupiter.api.Test;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import static org.junit.jupiter.api.Assertions.*;
+
+class RequestSchedulerTest {
+
+    /**
+     * Clock whose time only moves when the scheduler sleeps, or when the test advances it
+     */
+    private static class FakeClock implements RequestScheduler.Clock {
+        private long now = 1_000_000_000L;
+        private final List<Long> sleeps = new ArrayList<>();
+
+        @Override
+        public synchronized long nanoTime() {
+            return now;
+        }
+
+        @Override
+        public synchronized void sleep(long nanos) {
+            if (nanos <= 0)
+                return;
+            sleeps.add(nanos);
+            now += nanos;
+        }
+
+        synchronized void advance(Duration duration) {
+            now += duration.toNanos();
+        }
+    }
+
+    @Test
+    void permitsPerSecond() throws IOException {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(4).withClock(clock).build();
+        List<Long> starts = new ArrayList<>();
+        for (int i = 0; i < 9; i++) {
+            scheduler.execute(() -> starts.add(clock.nanoTime()));
+        }
+        for (int i = 1; i < starts.size(); i++) {
+            assertEquals(TimeUnit.MILLISECONDS.toNanos(250), starts.get(i) - starts.get(i - 1));
+        }
+        // permits are not saved up while the host is idle
+        clock.advance(Duration.ofSeconds(10));
+        long idle = clock.nanoTime();
+        scheduler.execute(() -> starts.add(clock.nanoTime()));
+        scheduler.execute(() -> starts.add(clock.nanoTime()));
+        assertEquals(idle, starts.get(9));
+        assertEquals(idle + TimeUnit.MILLISECONDS.toNanos(250), starts.get(10));
+    }
+
+    @Test
+    void concurrencyCap() throws InterruptedException, ExecutionException {
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000)
+                .withMaxConcurrency(2).build();
+        AtomicInteger running = new AtomicInteger();
+        AtomicInteger maxRunning = new AtomicInteger();
+        ExecutorService service = Executors.newFixedThreadPool(6);
+        List<Future<Integer>> futures = new ArrayList<>();
+        for (int i = 0; i < 12; i++) {
+            futures.add(service.submit(() -> scheduler.execute(() -> {
+                int current = running.incrementAndGet();
+                maxRunning.accumulateAndGet(current, Math::max);
+                try {
+                    Thread.sleep(20);
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+                return running.decrementAndGet();
+            })));
+        }
+        for (Future<Integer> future : futures) {
+            future.get();
+        }
+        service.shutdown();
+        assertEquals(2, maxRunning.get());
+    }
+
+    @Test
+    void backoffBounds() {
+        RequestScheduler scheduler = new RequestScheduler.Builder()
+                .withBackoff(Duration.ofMillis(100), Duration.ofMillis(1000)).build();
+        long[] bounds = {100, 200, 400, 800, 1000, 1000, 1000};
+        for (int attempt = 1; attempt <= bounds.length; attempt++) {
+            long max = 0;
+            for (int i = 0; i < 2000; i++) {
+                long delay = scheduler.backoff(attempt);
+                assertTrue(delay >= 0 && delay <= bounds[attempt - 1], "attempt " + attempt + ": " + delay);
+                max = Math.max(max, delay);
+            }
+            assertTrue(max > bounds[attempt - 1] * 9 / 10, "attempt " + attempt + " never backs off long: " + max);
+        }
+        // no overflow of the shift on many attempts
+        assertTrue(scheduler.backoff(100) <= 1000);
+    }
+
+    @Test
+    void retriesTransientErrors() {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000_000)
+                .withMaxRetries(3).withBackoff(Duration.ofMillis(100), Duration.ofSeconds(1)).withClock(clock).build();
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(HttpException.class, () -> scheduler.execute(() -> {
+            calls.incrementAndGet();
+            throw new HttpException("unavailable", 503);
+        }));
+        assertEquals(4, calls.get());
+        // other HTTP errors are not retried
+        calls.set(0);
+        assertThrows(HttpException.class, () -> scheduler.execute(() -> {
+            calls.incrementAndGet();
+            throw new HttpException("not found", 404);
+        }));
+        assertEquals(1, calls.get());
+        long slept = clock.sleeps.stream().mapToLong(Long::longValue).sum();
+        assertTrue(slept <= TimeUnit.MILLISECONDS.toNanos(100 + 200 + 400) + 10, "slept " + slept);
+    }
+
+    @Test
+    void circuitBreaker() throws IOException {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000_000)
+                .withMaxRetries(0).withClock(clock).build();
+        AtomicInteger calls = new AtomicInteger();
+        RequestScheduler.Request<String> failing = () -> {
+            calls.incrementAndGet();
+            throw new HttpException("unavailable", 503);
+        };
+        for (int i = 0; i < 10; i++) {
+            assertThrows(HttpException.class, () -> scheduler.execute(failing));
+        }
+        assertEquals(10, calls.get());
+        // open: requests fail fast without reaching the host
+        assertThrows(CircuitOpenException.class, () -> scheduler.execute(failing));
+        clock.advance(Duration.ofSeconds(59));
+        assertThrows(CircuitOpenException.class, () -> scheduler.execute(failing));
+        assertEquals(10, calls.get());
+        // half open after one minute: a failed trial opens the circuit for another minute
+        clock.advance(Duration.ofSeconds(1));
+        assertThrows(HttpException.class, () -> scheduler.execute(failing));
+        assertEquals(11, calls.get());
+        assertThrows(CircuitOpenException.class, () -> scheduler.execute(failing));
+        clock.advance(Duration.ofMinutes(1));
+        // a successful trial closes it
+        assertEquals("ok", scheduler.execute(() -> "ok"));
+        for (int i = 0; i < 9; i++) {
+            assertThrows(HttpException.class, () -> scheduler.execute(failing));
+        }
+        assertEquals("ok", scheduler.execute(() -> "ok"));
+        assertEquals(20, calls.get());
+    }
+
+    @Test
+    void failedTrialWithRuntimeException() throws IOException {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000_000)
+                .withMaxRetries(0).withClock(clock).build();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(HttpException.class, () -> scheduler.execute(() -> {
+                throw new HttpException("unavailable", 503);
+            }));
+        }
+        clock.advance(Duration.ofMinutes(1));
+        // the trial request fails while parsing its response
+        AtomicInteger calls = new AtomicInteger();
+        assertThrows(NumberFormatException.class, () -> scheduler.execute(() -> {
+            calls.incrementAndGet();
+            return Integer.parseInt("not a number");
+        }));
+        assertEquals(1, calls.get());
+        assertThrows(CircuitOpenException.class, () -> scheduler.execute(() -> "ok"));
+        clock.advance(Duration.ofMinutes(1));
+        assertEquals("ok", scheduler.execute(() -> "ok"));
+        assertEquals("ok", scheduler.execute(() -> "ok"));
+    }
+
+    @Test
+    void runtimeExceptionsCountAsFailures() {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000_000)
+                .withMaxRetries(3).withClock(clock).build();
+        AtomicInteger calls = new AtomicInteger();
+        for (int i = 0; i < 10; i++) {
+            assertThrows(IllegalStateException.class, () -> scheduler.execute(() -> {
+                calls.incrementAndGet();
+                throw new IllegalStateException("unexpected response");
+            }));
+        }
+        // not retried
+        assertEquals(10, calls.get());
+        assertThrows(CircuitOpenException.class, () -> scheduler.execute(() -> "ok"));
+    }
+
+    @Test
+    void successResetsFailures() throws IOException {
+        FakeClock clock = new FakeClock();
+        RequestScheduler scheduler = new RequestScheduler.Builder().withPermitsPerSecond(1_000_000_000)
+                .withMaxRetries(0).withClock(clock).build();
+        for (int i = 0; i < 30; i++) {
+            if (i % 5 == 4) {
+                assertEquals("ok", scheduler.execute(() -> "ok"));
+            } else {
+                assertThrows(HttpException.class, () -> scheduler.execute(() -> {
+                    throw new HttpException("unavailable", 503);
+                }));
+            }
+        }
+    }
+
+    @Test
+    void configure() throws IOException {
+        RequestScheduler.configure("limits.example.org=2/1");
+        assertNotNull(RequestScheduler.forHost("LIMITS.example.org"));
+        assertEquals("ok", RequestScheduler.forHost("limits.example.org").execute(() -> "ok"));
+        assertThrows(IllegalArgumentException.class, () -> RequestScheduler.configure("limits.example.org"));
+        assertThrows(IllegalArgumentException.class, () -> RequestScheduler.configure("limits.example.org=fast"));
+        assertThrows(IllegalArgumentException.class, () -> RequestScheduler.configure("limits.example.org=0"));
+        assertThrows(IllegalArgumentException.class, () -> RequestScheduler.configure("limits.example.org=2/0"));
+    }
+}